@@ -0,0 +1,229 @@
+package com.example.cafefidelidaqrdemo.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifica con EXPLAIN QUERY PLAN que las consultas filtradas de
+ * {@link CafeFidelidadDB} usan índices y no recorren la tabla completa.
+ * Se revisa el SQL que la base ejecuta de verdad: las consultas con cursor se
+ * capturan con una fábrica de cursores y las sentencias compiladas se leen de
+ * su caché. La base queda en memoria para no tocar la del dispositivo.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CafeFidelidadDBQueryPlanTest {
+
+    // "SCAN visitas" / "SCAN TABLE visitas" sin "USING ... INDEX" = recorrido completo
+    private static final Pattern FULL_SCAN = Pattern.compile("^SCAN (TABLE )?\\w+$");
+    // SQLiteQuery.toString() antepone este prefijo al SQL
+    private static final String PREFIJO_CONSULTA = "SQLiteQuery: ";
+
+    private static final long FECHA = 1700000000000L;
+    private static final long DIA = 19675;
+
+    private final List<String> consultas = Collections.synchronizedList(new ArrayList<>());
+    private CafeFidelidadDB database;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = new CafeFidelidadDB(context, null, (db, driver, tabla, consulta) -> {
+            String sql = consulta.toString();
+            consultas.add(sql.startsWith(PREFIJO_CONSULTA) ? sql.substring(PREFIJO_CONSULTA.length()) : sql);
+            return new SQLiteCursor(driver, tabla, consulta);
+        });
+        // Crea el esquema antes de empezar a capturar
+        database.getWritableDatabase();
+        consultas.clear();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void consultasPorCliente_usanIndice() {
+        database.obtenerVisitasPorCliente(1);
+        database.obtenerCanjesPorCliente(1);
+        database.obtenerSellosCliente(1);
+        assertConsultasUsanIndice();
+        // SQLiteDatabase.delete no pasa por la fábrica de cursores: este es el
+        // SQL que arma reiniciarVisitasCliente
+        assertUsaIndice("DELETE FROM visitas WHERE cliente_id = ?", "1");
+    }
+
+    @Test
+    public void consultasPorEstado_usanIndice() {
+        database.obtenerProductosPorCategoria("Bebidas Calientes");
+        database.obtenerProductosDisponibles();
+        database.obtenerClientesActivos();
+        database.obtenerSucursalesActivas();
+        database.obtenerBeneficiosActivos();
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void sucursalesEnCaja_usanIndice() {
+        database.obtenerSucursalesEnCaja(-33.5, -33.3, -70.7, -70.5);
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void consultasDeResenas_usanIndice() {
+        database.obtenerPaginaResenasProducto(1, null, 20);
+        database.obtenerPaginaResenasSucursal(1, null, 20);
+        database.obtenerPromedioCalificacionProducto(1);
+        database.obtenerPromedioCalificacionSucursal(1);
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void consultasPaginadas_usanIndice() {
+        String tokenFecha = "10:" + FECHA;
+        database.obtenerPaginaVisitas(null, 50);
+        database.obtenerPaginaVisitas(tokenFecha, 50);
+        database.obtenerPaginaCanjes(tokenFecha, 50);
+        database.obtenerPaginaClientes(null, 50);
+        database.obtenerPaginaClientes("10:Juan", 50);
+        database.obtenerPaginaResenasProducto(1, tokenFecha, 20);
+        database.obtenerPaginaResenasSucursal(1, tokenFecha, 20);
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void consultasPorDiaYRango_usanIndice() {
+        database.contarVisitasDia(DIA);
+        database.contarVisitasDias(DIA - 5, DIA + 2);
+        database.contarVisitasSucursalDias(1, DIA - 5, DIA + 2);
+        database.contarVisitasPorDia(DIA - 5, DIA + 2);
+        database.obtenerVisitasDelDia(DIA);
+        database.obtenerVisitasSucursalEntre(1, FECHA, FECHA + 86400000L);
+        database.obtenerVisitasEntre(FECHA, FECHA + 86400000L);
+        database.obtenerCanjesEntre(FECHA, FECHA + 86400000L);
+        database.contarCanjesDias(DIA - 5, DIA + 2);
+        database.contarVisitasACompactar(DIA);
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void consultasPorId_usanClavePrimaria() {
+        database.obtenerClientePorId(1);
+        database.obtenerProductoPorId(1);
+        database.obtenerSucursalPorId(1);
+        database.obtenerBeneficioPorId(1);
+        database.obtenerVisitaPorId(1);
+        database.obtenerCanjePorId(1);
+        database.obtenerClientePorEmail("juan@email.com");
+        database.obtenerNombresClientes(Arrays.asList(1, 2, 3));
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void estadisticasDashboard_usanIndice() {
+        database.obtenerEstadisticasDashboard(DIA);
+        // Los totales sin filtro cuentan sobre un índice cubriente, no sobre la tabla
+        assertConsultasUsanIndice();
+    }
+
+    @Test
+    public void busquedaTelefono_usaIndicesDeDigitos() {
+        // Datos de ejemplo: "Juan Pérez", teléfono 123456789
+        assertEquals(1, database.buscarClientes("123", 50).size());
+        assertEquals(1, database.buscarClientes("6789", 50).size());
+        assertEquals(0, database.buscarClientes("4567", 50).size());
+        assertTrue(consultas.contains(CafeFidelidadDB.SQL_BUSCAR_CLIENTES_TELEFONO));
+        assertConsultasUsanIndice();
+        assertUsaIndice(CafeFidelidadDB.SQL_BUSCAR_CLIENTES_TELEFONO,
+                CafeFidelidadDB.argsBusquedaTelefono("6789", 50));
+    }
+
+    @Test
+    public void busquedaFts_ignoraTildesYUsaPrefijos() {
+        // Datos de ejemplo: "Juan Pérez"
+        assertEquals(1, database.buscarClientes("juan per", 50).size());
+        assertFalse(consultas.contains(CafeFidelidadDB.SQL_BUSCAR_CLIENTES_TELEFONO));
+        assertConsultasUsanIndice();
+        // Al actualizar la fila, el trigger reemplaza las palabras indexadas
+        database.getWritableDatabase().execSQL("UPDATE clientes SET nombre = 'José Núñez' WHERE email = 'juan@email.com'");
+        assertEquals(1, database.buscarClientes("nunez", 50).size());
+        assertEquals(0, database.buscarClientes("perez", 50).size());
+    }
+
+    @Test
+    public void resumenResenas_seMantieneConTriggers() {
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.execSQL("INSERT INTO resenas_productos (producto_id, usuario_id, calificacion, fecha_creacion, fecha_actualizacion) VALUES (1, 1, 5, 0, 0)");
+        db.execSQL("INSERT INTO resenas_productos (producto_id, usuario_id, calificacion, fecha_creacion, fecha_actualizacion) VALUES (1, 2, 3, 0, 0)");
+        db.execSQL("UPDATE resenas_productos SET calificacion = 1 WHERE usuario_id = 2");
+        assertResumen(2, 6, 1, 1);
+        db.execSQL("DELETE FROM resenas_productos WHERE usuario_id = 1");
+        assertResumen(1, 1, 1, 0);
+        database.obtenerPromedioCalificacionProducto(1);
+        assertConsultasUsanIndice();
+    }
+
+    private void assertResumen(int cantidad, int suma, int unaEstrella, int cincoEstrellas) {
+        String sql = "SELECT cantidad, suma, estrellas_1, estrellas_5 FROM resumen_resenas_productos WHERE producto_id = ?";
+        try (Cursor cursor = database.getReadableDatabase().rawQuery(sql, new String[]{"1"})) {
+            cursor.moveToFirst();
+            assertEquals(cantidad, cursor.getInt(0));
+            assertEquals(suma, cursor.getInt(1));
+            assertEquals(unaEstrella, cursor.getInt(2));
+            assertEquals(cincoEstrellas, cursor.getInt(3));
+        }
+    }
+
+    // Revisa todo lo que ejecutó la base desde la última revisión. Los
+    // parámetros quedan sin enlazar: el plan no depende de sus valores.
+    private void assertConsultasUsanIndice() {
+        List<String> ejecutadas;
+        synchronized (consultas) {
+            ejecutadas = new ArrayList<>(consultas);
+            consultas.clear();
+        }
+        ejecutadas.addAll(database.sqlSentenciasCompiladas());
+        assertFalse("No se capturó ninguna consulta", ejecutadas.isEmpty());
+        for (String sql : ejecutadas) {
+            assertUsaIndice(sql);
+        }
+        // Los EXPLAIN de arriba también pasan por la fábrica
+        consultas.clear();
+    }
+
+    private void assertUsaIndice(String sql, String... args) {
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        }
+        for (String paso : plan) {
+            if (FULL_SCAN.matcher(paso).matches()) {
+                fail("Recorrido completo de tabla en: " + sql + "\nPlan: " + plan);
+            }
+        }
+    }
+}
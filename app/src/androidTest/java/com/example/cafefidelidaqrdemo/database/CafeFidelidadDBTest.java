@@ -0,0 +1,321 @@
+package com.example.cafefidelidaqrdemo.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.cafefidelidaqrdemo.models.Cliente;
+import com.example.cafefidelidaqrdemo.models.Producto;
+import com.example.cafefidelidaqrdemo.models.Visita;
+import com.example.cafefidelidaqrdemo.utils.DiaEpoch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Comportamiento de las escrituras de {@link CafeFidelidadDB} sobre una base
+ * en memoria creada para cada test (incluye los datos de ejemplo de onCreate).
+ * La prueba de concurrencia usa una base en archivo con WAL, porque la de
+ * memoria tiene una sola conexión y ordenaría los hilos por sí misma.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CafeFidelidadDBTest {
+
+    private static final long FECHA = 1_700_000_000_000L;
+
+    private Context context;
+    private CafeFidelidadDB database;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = new CafeFidelidadDB(context, null);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    // ========== LOTES ==========
+
+    @Test
+    public void insertarVisitas_conFilasInvalidas_insertaSoloLasValidas() {
+        int visitasAntes = database.obtenerConteoVisitas();
+        int sellosAntes = database.obtenerSellosCliente(1);
+
+        // Sin cliente viola el NOT NULL de cliente_id
+        long[] ids = database.insertarVisitas(Arrays.asList(
+                visita("1"), visita(null), visita("1"), visita(null)));
+
+        assertEquals(4, ids.length);
+        assertTrue(ids[0] > 0);
+        assertEquals(-1, ids[1]);
+        assertTrue(ids[2] > ids[0]);
+        assertEquals(-1, ids[3]);
+        assertEquals(visitasAntes + 2, database.obtenerConteoVisitas());
+        assertEquals(sellosAntes + 2, database.obtenerSellosCliente(1));
+    }
+
+    @Test
+    public void upsertProductos_conFilasInvalidas_escribeSoloLasValidas() {
+        int productosAntes = database.obtenerConteoProductos();
+        long idNuevo = database.upsertProductos(Arrays.asList(producto(null, "Latte")))[0];
+        assertTrue(idNuevo > 0);
+
+        // Una inserción válida, una sin nombre, una actualización y una actualización sin nombre
+        long[] ids = database.upsertProductos(Arrays.asList(
+                producto(null, "Mocha"),
+                producto(null, null),
+                producto(String.valueOf(idNuevo), "Latte grande"),
+                producto(String.valueOf(idNuevo), null)));
+
+        assertTrue(ids[0] > idNuevo);
+        assertEquals(-1, ids[1]);
+        assertEquals(idNuevo, ids[2]);
+        assertEquals(-1, ids[3]);
+        assertEquals(productosAntes + 2, database.obtenerConteoProductos());
+        assertEquals("Latte grande", database.obtenerProductoPorId((int) idNuevo).getNombre());
+    }
+
+    @Test
+    public void loteSinFilasValidas_noInvalidaLasTablas() {
+        RastreadorInvalidaciones invalidaciones = database.getInvalidaciones();
+        long versionVisitas = invalidaciones.version(RastreadorInvalidaciones.VISITAS);
+        long versionProductos = invalidaciones.version(RastreadorInvalidaciones.PRODUCTOS);
+
+        long[] visitas = database.insertarVisitas(Arrays.asList(visita(null), visita(null)));
+        long[] productos = database.upsertProductos(Arrays.asList(producto(null, null)));
+
+        assertEquals(-1, visitas[0]);
+        assertEquals(-1, visitas[1]);
+        assertEquals(-1, productos[0]);
+        assertEquals(versionVisitas, invalidaciones.version(RastreadorInvalidaciones.VISITAS));
+        assertEquals(versionProductos, invalidaciones.version(RastreadorInvalidaciones.PRODUCTOS));
+
+        database.insertarVisitas(Arrays.asList(visita(null), visita("1")));
+        assertTrue(invalidaciones.version(RastreadorInvalidaciones.VISITAS) > versionVisitas);
+    }
+
+    // ========== CANJE DE SELLOS ==========
+
+    private static final int CLIENTE_CANJE = 50;
+    private static final String BASE_CONCURRENCIA = "test_canjes_concurrentes.db";
+
+    @Test
+    public void canjearSellos_saldoInsuficiente_noRegistraCanje() {
+        darSellos(CLIENTE_CANJE, 4);
+
+        int resultado = database.canjearSellos(CLIENTE_CANJE, 1, 5);
+
+        assertEquals(CafeFidelidadDB.SELLOS_INSUFICIENTES, resultado);
+        assertEquals(4, database.obtenerSellosCliente(CLIENTE_CANJE));
+        assertTrue(database.obtenerCanjesPorCliente(CLIENTE_CANJE).isEmpty());
+    }
+
+    @Test
+    public void canjearSellos_saldoJusto_dejaSaldoCero() {
+        darSellos(CLIENTE_CANJE, 5);
+
+        int resultado = database.canjearSellos(CLIENTE_CANJE, 1, 5);
+
+        assertEquals(0, resultado);
+        assertEquals(0, database.obtenerSellosCliente(CLIENTE_CANJE));
+        assertEquals(1, database.obtenerCanjesPorCliente(CLIENTE_CANJE).size());
+    }
+
+    @Test
+    public void canjearSellos_sellosNoPositivos_seRechazaSinEscribir() {
+        darSellos(CLIENTE_CANJE, 3);
+
+        for (int sellos : new int[]{0, -5}) {
+            try {
+                database.canjearSellos(CLIENTE_CANJE, 1, sellos);
+                fail("Se aceptó un canje de " + sellos + " sellos");
+            } catch (IllegalArgumentException esperada) {
+                // Se rechaza antes de abrir la transacción
+            }
+        }
+
+        assertEquals(3, database.obtenerSellosCliente(CLIENTE_CANJE));
+        assertTrue(database.obtenerCanjesPorCliente(CLIENTE_CANJE).isEmpty());
+    }
+
+    @Test
+    public void canjearSellos_dosConexionesConSaldoParaUno_registraUnSoloCanje() throws InterruptedException {
+        // Base en archivo con WAL y un helper por hilo: cada uno tiene su propia
+        // conexión, así que solo la transacción de canjearSellos los ordena
+        context.deleteDatabase(BASE_CONCURRENCIA);
+        CafeFidelidadDB primera = new CafeFidelidadDB(context, BASE_CONCURRENCIA);
+        CafeFidelidadDB segunda = new CafeFidelidadDB(context, BASE_CONCURRENCIA);
+        try {
+            darSellos(primera, CLIENTE_CANJE, 7);
+            assertTrue(primera.getWritableDatabase().isWriteAheadLoggingEnabled());
+
+            CafeFidelidadDB[] conexiones = {primera, segunda};
+            CountDownLatch largada = new CountDownLatch(1);
+            AtomicIntegerArray resultados = new AtomicIntegerArray(2);
+            Thread[] hilos = new Thread[2];
+            for (int i = 0; i < hilos.length; i++) {
+                final int indice = i;
+                hilos[i] = new Thread(() -> {
+                    try {
+                        largada.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    resultados.set(indice, conexiones[indice].canjearSellos(CLIENTE_CANJE, 1, 5));
+                });
+                hilos[i].start();
+            }
+            largada.countDown();
+            for (Thread hilo : hilos) {
+                hilo.join(10_000);
+            }
+
+            // Uno deja saldo 2 y el otro encuentra el saldo ya descontado
+            int exitosos = 0;
+            int rechazados = 0;
+            for (int i = 0; i < hilos.length; i++) {
+                if (resultados.get(i) == 2) {
+                    exitosos++;
+                } else if (resultados.get(i) == CafeFidelidadDB.SELLOS_INSUFICIENTES) {
+                    rechazados++;
+                }
+            }
+            assertEquals(1, exitosos);
+            assertEquals(1, rechazados);
+            assertEquals(2, segunda.obtenerSellosCliente(CLIENTE_CANJE));
+            assertEquals(1, segunda.obtenerCanjesPorCliente(CLIENTE_CANJE).size());
+        } finally {
+            primera.close();
+            segunda.close();
+            context.deleteDatabase(BASE_CONCURRENCIA);
+        }
+    }
+
+    // ========== BÚSQUEDA ==========
+
+    @Test
+    public void buscarClientes_porDigitos_encuentraComienzoYFinalDelTelefono() {
+        Cliente cliente = new Cliente(null, "Ana Rojas", "ana@email.com", "+56 9 1234-5678", "activo");
+        cliente.setPassword("secreta");
+        assertTrue(database.insertarCliente(cliente) > 0);
+
+        assertEquals(1, contarNombre(database.buscarClientes("56912", 20), "Ana Rojas"));
+        assertEquals(1, contarNombre(database.buscarClientes("5678", 20), "Ana Rojas"));
+        // Solo comienzo o final: el medio del número no se busca
+        assertEquals(0, contarNombre(database.buscarClientes("1234", 20), "Ana Rojas"));
+
+        cliente = database.obtenerClientePorEmail("ana@email.com");
+        cliente.setTelefono("+56 2 2987 6543");
+        database.actualizarCliente(cliente);
+        assertEquals(0, contarNombre(database.buscarClientes("5678", 20), "Ana Rojas"));
+        assertEquals(1, contarNombre(database.buscarClientes("6543", 20), "Ana Rojas"));
+    }
+
+    // ========== COMPACTACIÓN ==========
+
+    @Test
+    public void compactarVisitas_noCambiaSellosNiConteos() {
+        long hoy = DiaEpoch.hoy();
+        long horizonte = hoy - 3;
+        // Dos clientes en dos sucursales, varias visitas por día, de hace 6 días a hoy
+        List<Visita> visitas = new ArrayList<>();
+        for (long dia = hoy - 6; dia <= hoy; dia++) {
+            long mediodia = DiaEpoch.inicioEnMillis(dia) + 12 * 60 * 60 * 1000L;
+            for (int i = 0; i < 3; i++) {
+                visitas.add(visita("1", "1", mediodia + i * 60_000L));
+                visitas.add(visita("2", i == 0 ? "1" : "2", mediodia + i * 60_000L));
+            }
+        }
+        database.insertarVisitas(visitas);
+
+        int sellos1 = database.obtenerSellosCliente(1);
+        int sellos2 = database.obtenerSellosCliente(2);
+        int total = database.obtenerConteoVisitas();
+        Map<Long, Integer> porDia = database.contarVisitasPorDia(hoy - 10, hoy + 1);
+        int diaCompactado = database.contarVisitasDia(hoy - 5);
+        int sucursalDiaCompactado = database.contarVisitasSucursalDia(2, hoy - 5);
+        int semana = database.contarVisitasDias(hoy - 6, hoy + 1);
+        int hoyDashboard = database.obtenerEstadisticasDashboard(hoy).visitasHoy;
+        int compactadoDashboard = database.obtenerEstadisticasDashboard(hoy - 4).visitasHoy;
+
+        int aCompactar = database.contarVisitasACompactar(horizonte);
+        assertTrue(aCompactar > 0);
+        // Lote chico: el resumen de un mismo día se arma en varias pasadas
+        int compactadas = 0;
+        int lote;
+        while ((lote = database.compactarLoteVisitas(horizonte, 4)) > 0) {
+            assertTrue(lote <= 4);
+            compactadas += lote;
+        }
+
+        assertEquals(aCompactar, compactadas);
+        assertEquals(0, database.contarVisitasACompactar(horizonte));
+        assertEquals(sellos1, database.obtenerSellosCliente(1));
+        assertEquals(sellos2, database.obtenerSellosCliente(2));
+        assertEquals(total, database.obtenerConteoVisitas());
+        assertEquals(porDia, database.contarVisitasPorDia(hoy - 10, hoy + 1));
+        assertEquals(diaCompactado, database.contarVisitasDia(hoy - 5));
+        assertEquals(sucursalDiaCompactado, database.contarVisitasSucursalDia(2, hoy - 5));
+        assertEquals(semana, database.contarVisitasDias(hoy - 6, hoy + 1));
+        assertEquals(hoyDashboard, database.obtenerEstadisticasDashboard(hoy).visitasHoy);
+        assertEquals(compactadoDashboard, database.obtenerEstadisticasDashboard(hoy - 4).visitasHoy);
+        // Los listados solo ven lo que no se compactó
+        assertTrue(database.obtenerVisitasDelDia(hoy - 5).isEmpty());
+        assertEquals(6, database.obtenerVisitasDelDia(hoy).size());
+    }
+
+    // ========== UTILIDADES ==========
+
+    private void darSellos(int clienteId, int sellos) {
+        darSellos(database, clienteId, sellos);
+    }
+
+    private static void darSellos(CafeFidelidadDB base, int clienteId, int sellos) {
+        List<Visita> visitas = new ArrayList<>();
+        for (int i = 0; i < sellos; i++) {
+            visitas.add(visita(String.valueOf(clienteId), "1", FECHA + i));
+        }
+        base.insertarVisitas(visitas);
+        assertEquals(sellos, base.obtenerSellosCliente(clienteId));
+    }
+
+    private static Visita visita(String clienteId) {
+        return visita(clienteId, "1", FECHA);
+    }
+
+    private static Visita visita(String clienteId, String sucursalId, long fecha) {
+        return new Visita(null, clienteId, sucursalId, "", fecha, 0, 1, null, null, null);
+    }
+
+    private static int contarNombre(List<Cliente> clientes, String nombre) {
+        int cantidad = 0;
+        for (Cliente cliente : clientes) {
+            if (nombre.equals(cliente.getNombre())) {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+
+    private static Producto producto(String id, String nombre) {
+        return new Producto(id, nombre, "", 2500, "Bebidas Calientes", null, true);
+    }
+}
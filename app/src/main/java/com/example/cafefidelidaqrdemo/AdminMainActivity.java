@@ -13,6 +13,7 @@ import com.example.cafefidelidaqrdemo.databinding.ActivityAdminMainBinding;
 import com.example.cafefidelidaqrdemo.viewmodels.MainViewModel;
 import com.example.cafefidelidaqrdemo.ui.admin.FragmentAdminDashboard;
 import com.example.cafefidelidaqrdemo.repository.AuthRepository;
+import com.example.cafefidelidaqrdemo.workers.CompactacionVisitasWorker;
 // Imports simplificados - PerformanceMonitor y OfflineManager removidos
 
 public class AdminMainActivity extends AppCompatActivity {
@@ -47,6 +48,9 @@ public class AdminMainActivity extends AppCompatActivity {
         // Configurar interfaz de administrador
         setupAdminInterface();
         
+        // Compactación semanal de visitas antiguas (no reprograma si ya existe)
+        CompactacionVisitasWorker.programar(this, CompactacionVisitasWorker.DIAS_RETENCION_POR_DEFECTO);
+        
         // Configurar botón de logout
         binding.btnLogout.setOnClickListener(v -> logout());
         
@@ -64,7 +64,7 @@ public class DetalleSucursalActivity extends AppCompatActivity {
         initViews();
         setupToolbar();
 
-        sucursalRepository = new SucursalRepository(getApplicationContext());
+        sucursalRepository = SucursalRepository.getInstance(getApplicationContext());
         resenasRepository = ResenasSucursalRepository.getInstance(getApplicationContext());
         authRepository = AuthRepository.getInstance();
         authRepository.setContext(getApplicationContext());
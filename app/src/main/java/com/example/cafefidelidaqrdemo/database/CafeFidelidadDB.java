@@ -3,29 +3,50 @@ package com.example.cafefidelidaqrdemo.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.example.cafefidelidaqrdemo.models.Beneficio;
 import com.example.cafefidelidaqrdemo.models.Canje;
 import com.example.cafefidelidaqrdemo.models.Cliente;
+import com.example.cafefidelidaqrdemo.models.DashboardStats;
+import com.example.cafefidelidaqrdemo.models.Pagina;
 import com.example.cafefidelidaqrdemo.models.Producto;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
 import com.example.cafefidelidaqrdemo.models.Visita;
 import com.example.cafefidelidaqrdemo.models.ResenaProducto;
 import com.example.cafefidelidaqrdemo.models.ResenaSucursal;
 import com.example.cafefidelidaqrdemo.models.PromedioCalificacion;
+import com.example.cafefidelidaqrdemo.utils.DiaEpoch;
+import com.example.cafefidelidaqrdemo.utils.TextoBusqueda;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CafeFidelidadDB extends SQLiteOpenHelper {
     private static final String TAG = "CafeFidelidadDB";
     
     // Información de la base de datos
     private static final String DATABASE_NAME = "cafe_fidelidad.db";
-    private static final int DATABASE_VERSION = 5;
+    public static final int DATABASE_VERSION = 15;
+    
+    // Resultado de canjearSellos cuando el cliente no tiene saldo suficiente
+    public static final int SELLOS_INSUFICIENTES = -1;
+    // Resultado de canjearSellos cuando no se pudo registrar el canje (no se descuenta nada)
+    public static final int CANJE_FALLIDO = -2;
+    
+    // Parámetros por sentencia en consultas IN (...): SQLite antiguo admite hasta 999
+    private static final int MAX_PARAMETROS_IN = 900;
     
     // Nombres de las tablas
     private static final String TABLE_CLIENTES = "clientes";
@@ -37,6 +58,17 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
     // Tablas de reseñas
     private static final String TABLE_RESENAS_PRODUCTOS = "resenas_productos";
     private static final String TABLE_RESENAS_SUCURSALES = "resenas_sucursales";
+    // Contador desnormalizado de sellos por cliente
+    private static final String TABLE_SELLOS_CLIENTES = "sellos_clientes";
+    // Índices de texto completo (FTS4 con contenido externo)
+    private static final String TABLE_PRODUCTOS_FTS = "productos_fts";
+    private static final String TABLE_SUCURSALES_FTS = "sucursales_fts";
+    private static final String TABLE_CLIENTES_FTS = "clientes_fts";
+    // Visitas antiguas compactadas por cliente, sucursal y día
+    private static final String TABLE_VISITAS_RESUMEN_DIARIO = "visitas_resumen_diario";
+    // Resúmenes de calificaciones mantenidos por triggers
+    private static final String TABLE_RESUMEN_RESENAS_PRODUCTOS = "resumen_resenas_productos";
+    private static final String TABLE_RESUMEN_RESENAS_SUCURSALES = "resumen_resenas_sucursales";
     
     // Columnas comunes
     private static final String COLUMN_ID = "id";
@@ -48,6 +80,10 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
     private static final String COLUMN_CLIENTE_PASSWORD = "password";
     private static final String COLUMN_CLIENTE_PUNTOS = "puntos_acumulados";
     private static final String COLUMN_CLIENTE_ACTIVO = "activo";
+    // Solo los dígitos del teléfono, al derecho y al revés: la búsqueda numérica
+    // hace prefijo sobre ambas (comienzo o final del número) con índice
+    private static final String COLUMN_CLIENTE_TELEFONO_DIGITOS = "telefono_digitos";
+    private static final String COLUMN_CLIENTE_TELEFONO_INVERTIDO = "telefono_digitos_invertido";
     
     // Columnas tabla productos
     private static final String COLUMN_PRODUCTO_NOMBRE = "nombre";
@@ -81,6 +117,7 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
     private static final String COLUMN_VISITA_SUCURSAL_ID = "sucursal_id";
     private static final String COLUMN_VISITA_FECHA = "fecha_visita";
     private static final String COLUMN_VISITA_PUNTOS_GANADOS = "puntos_ganados";
+    private static final String COLUMN_VISITA_DIA = "epoch_day";
     
     // Columnas tabla canjes
     private static final String COLUMN_CANJE_CLIENTE_ID = "cliente_id";
@@ -88,6 +125,11 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
     private static final String COLUMN_CANJE_FECHA = "fecha_canje";
     private static final String COLUMN_CANJE_PUNTOS_UTILIZADOS = "puntos_utilizados";
     private static final String COLUMN_CANJE_ESTADO = "estado";
+    private static final String COLUMN_CANJE_DIA = "epoch_day";
+    
+    // Columnas del resumen diario de visitas (además de cliente_id, sucursal_id y epoch_day)
+    private static final String COLUMN_RESUMEN_VISITAS = "visitas";
+    private static final String COLUMN_RESUMEN_PUNTOS = "puntos";
     
     // Columnas tablas reseñas
     private static final String COLUMN_RESENA_PRODUCTO_ID = "producto_id";
@@ -98,6 +140,15 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
     private static final String COLUMN_RESENA_FECHA_CREACION = "fecha_creacion";
     private static final String COLUMN_RESENA_FECHA_ACTUALIZACION = "fecha_actualizacion";
     
+    // Columnas de los resúmenes de reseñas (la clave es producto_id / sucursal_id)
+    private static final String COLUMN_RESUMEN_CANTIDAD = "cantidad";
+    private static final String COLUMN_RESUMEN_SUMA = "suma";
+    private static final String COLUMN_RESUMEN_ESTRELLAS = "estrellas_"; // estrellas_1 .. estrellas_5
+    
+    // Columnas tabla sellos_clientes
+    private static final String COLUMN_SELLOS_CLIENTE_ID = "cliente_id";
+    private static final String COLUMN_SELLOS_CANTIDAD = "sellos";
+    
     // Sentencias SQL para crear las tablas
     private static final String CREATE_TABLE_CLIENTES = "CREATE TABLE " + TABLE_CLIENTES + " (" +
             COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -141,12 +192,14 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             COLUMN_BENEFICIO_ACTIVO + " INTEGER DEFAULT 1" +
             ");";
     
+    // fecha_visita: milisegundos epoch; epoch_day: día local de esa fecha (ver DiaEpoch)
     private static final String CREATE_TABLE_VISITAS = "CREATE TABLE " + TABLE_VISITAS + " (" +
             COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
             COLUMN_VISITA_CLIENTE_ID + " INTEGER NOT NULL, " +
             COLUMN_VISITA_SUCURSAL_ID + " INTEGER NOT NULL, " +
-            COLUMN_VISITA_FECHA + " TEXT NOT NULL, " +
+            COLUMN_VISITA_FECHA + " INTEGER NOT NULL, " +
             COLUMN_VISITA_PUNTOS_GANADOS + " INTEGER DEFAULT 0, " +
+            COLUMN_VISITA_DIA + " INTEGER NOT NULL, " +
             "FOREIGN KEY(" + COLUMN_VISITA_CLIENTE_ID + ") REFERENCES " + TABLE_CLIENTES + "(" + COLUMN_ID + "), " +
             "FOREIGN KEY(" + COLUMN_VISITA_SUCURSAL_ID + ") REFERENCES " + TABLE_SUCURSALES + "(" + COLUMN_ID + ")" +
             ");";
@@ -155,13 +208,25 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
             COLUMN_CANJE_CLIENTE_ID + " INTEGER NOT NULL, " +
             COLUMN_CANJE_BENEFICIO_ID + " INTEGER NOT NULL, " +
-            COLUMN_CANJE_FECHA + " TEXT NOT NULL, " +
+            COLUMN_CANJE_FECHA + " INTEGER NOT NULL, " +
             COLUMN_CANJE_PUNTOS_UTILIZADOS + " INTEGER NOT NULL, " +
             COLUMN_CANJE_ESTADO + " TEXT DEFAULT 'activo', " +
+            COLUMN_CANJE_DIA + " INTEGER NOT NULL, " +
             "FOREIGN KEY(" + COLUMN_CANJE_CLIENTE_ID + ") REFERENCES " + TABLE_CLIENTES + "(" + COLUMN_ID + "), " +
             "FOREIGN KEY(" + COLUMN_CANJE_BENEFICIO_ID + ") REFERENCES " + TABLE_BENEFICIOS + "(" + COLUMN_ID + ")" +
             ");";
 
+    // Una fila por cliente, sucursal y día con las visitas que la compactación
+    // quitó de la tabla visitas; los conteos suman ambas tablas
+    private static final String CREATE_TABLE_VISITAS_RESUMEN_DIARIO = "CREATE TABLE IF NOT EXISTS " + TABLE_VISITAS_RESUMEN_DIARIO + " (" +
+            COLUMN_VISITA_CLIENTE_ID + " INTEGER NOT NULL, " +
+            COLUMN_VISITA_SUCURSAL_ID + " INTEGER NOT NULL, " +
+            COLUMN_VISITA_DIA + " INTEGER NOT NULL, " +
+            COLUMN_RESUMEN_VISITAS + " INTEGER NOT NULL DEFAULT 0, " +
+            COLUMN_RESUMEN_PUNTOS + " INTEGER NOT NULL DEFAULT 0, " +
+            "PRIMARY KEY(" + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_DIA + ")" +
+            ");";
+
     // Sentencias SQL para crear tablas de reseñas
     private static final String CREATE_TABLE_RESENAS_PRODUCTOS = "CREATE TABLE IF NOT EXISTS " + TABLE_RESENAS_PRODUCTOS + " (" +
             COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -185,8 +250,133 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             "FOREIGN KEY(" + COLUMN_RESENA_SUCURSAL_ID + ") REFERENCES " + TABLE_SUCURSALES + "(" + COLUMN_ID + ")" +
             ");";
     
+    // Saldo de sellos vigente por cliente. Cada visita insertada suma un sello
+    // (trigger); los canjes y reinicios lo descuentan explícitamente, de modo
+    // que borrar historial antiguo no altera el saldo.
+    private static final String CREATE_TABLE_SELLOS_CLIENTES = "CREATE TABLE IF NOT EXISTS " + TABLE_SELLOS_CLIENTES + " (" +
+            COLUMN_SELLOS_CLIENTE_ID + " INTEGER PRIMARY KEY, " +
+            COLUMN_SELLOS_CANTIDAD + " INTEGER NOT NULL DEFAULT 0" +
+            ");";
+    
+    private static final String CREATE_TRIGGER_SELLOS_INSERT = "CREATE TRIGGER IF NOT EXISTS trg_visitas_sellos_insert " +
+            "AFTER INSERT ON " + TABLE_VISITAS + " BEGIN " +
+            "INSERT OR IGNORE INTO " + TABLE_SELLOS_CLIENTES + " (" + COLUMN_SELLOS_CLIENTE_ID + ", " + COLUMN_SELLOS_CANTIDAD + ") " +
+            "VALUES (NEW." + COLUMN_VISITA_CLIENTE_ID + ", 0); " +
+            "UPDATE " + TABLE_SELLOS_CLIENTES + " SET " + COLUMN_SELLOS_CANTIDAD + " = " + COLUMN_SELLOS_CANTIDAD + " + 1 " +
+            "WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = NEW." + COLUMN_VISITA_CLIENTE_ID + "; " +
+            "END";
+    
+    // Si una visita se reasigna a otro cliente, el sello se mueve con ella
+    private static final String CREATE_TRIGGER_SELLOS_UPDATE = "CREATE TRIGGER IF NOT EXISTS trg_visitas_sellos_update " +
+            "AFTER UPDATE OF " + COLUMN_VISITA_CLIENTE_ID + " ON " + TABLE_VISITAS + " " +
+            "WHEN OLD." + COLUMN_VISITA_CLIENTE_ID + " <> NEW." + COLUMN_VISITA_CLIENTE_ID + " BEGIN " +
+            "UPDATE " + TABLE_SELLOS_CLIENTES + " SET " + COLUMN_SELLOS_CANTIDAD + " = MAX(" + COLUMN_SELLOS_CANTIDAD + " - 1, 0) " +
+            "WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = OLD." + COLUMN_VISITA_CLIENTE_ID + "; " +
+            "INSERT OR IGNORE INTO " + TABLE_SELLOS_CLIENTES + " (" + COLUMN_SELLOS_CLIENTE_ID + ", " + COLUMN_SELLOS_CANTIDAD + ") " +
+            "VALUES (NEW." + COLUMN_VISITA_CLIENTE_ID + ", 0); " +
+            "UPDATE " + TABLE_SELLOS_CLIENTES + " SET " + COLUMN_SELLOS_CANTIDAD + " = " + COLUMN_SELLOS_CANTIDAD + " + 1 " +
+            "WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = NEW." + COLUMN_VISITA_CLIENTE_ID + "; " +
+            "END";
+    
+    private static final String SQL_SELLOS_CLIENTE = "SELECT IFNULL((SELECT " + COLUMN_SELLOS_CANTIDAD +
+            " FROM " + TABLE_SELLOS_CLIENTES + " WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = ?), 0)";
+    
+    // Columnas indexadas por cada tabla FTS
+    private static final String[] COLUMNAS_FTS_PRODUCTOS = {COLUMN_PRODUCTO_NOMBRE, COLUMN_PRODUCTO_DESCRIPCION};
+    private static final String[] COLUMNAS_FTS_SUCURSALES = {COLUMN_SUCURSAL_NOMBRE, COLUMN_SUCURSAL_DIRECCION};
+    private static final String[] COLUMNAS_FTS_CLIENTES = {COLUMN_CLIENTE_NOMBRE, COLUMN_CLIENTE_EMAIL, COLUMN_CLIENTE_TELEFONO};
+    
+    // Sentencias precompiladas de alta frecuencia
+    private static final String SQL_INSERT_VISITA = "INSERT INTO " + TABLE_VISITAS + " (" +
+            COLUMN_VISITA_CLIENTE_ID + ", " +
+            COLUMN_VISITA_SUCURSAL_ID + ", " +
+            COLUMN_VISITA_FECHA + ", " +
+            COLUMN_VISITA_PUNTOS_GANADOS + ", " +
+            COLUMN_VISITA_DIA +
+            ") VALUES (?, ?, ?, ?, ?)";
+    
+    private static final String SQL_INSERT_CANJE = "INSERT INTO " + TABLE_CANJES + " (" +
+            COLUMN_CANJE_CLIENTE_ID + ", " +
+            COLUMN_CANJE_BENEFICIO_ID + ", " +
+            COLUMN_CANJE_FECHA + ", " +
+            COLUMN_CANJE_PUNTOS_UTILIZADOS + ", " +
+            COLUMN_CANJE_ESTADO + ", " +
+            COLUMN_CANJE_DIA +
+            ") VALUES (?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_INSERT_PRODUCTO = "INSERT INTO " + TABLE_PRODUCTOS + " (" +
+            COLUMN_PRODUCTO_NOMBRE + ", " +
+            COLUMN_PRODUCTO_DESCRIPCION + ", " +
+            COLUMN_PRODUCTO_PRECIO + ", " +
+            COLUMN_PRODUCTO_CATEGORIA + ", " +
+            COLUMN_PRODUCTO_DISPONIBLE + ", " +
+            COLUMN_PRODUCTO_IMAGEN_URL + ", " +
+            COLUMN_ID +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_UPDATE_PRODUCTO = "UPDATE " + TABLE_PRODUCTOS + " SET " +
+            COLUMN_PRODUCTO_NOMBRE + " = ?, " +
+            COLUMN_PRODUCTO_DESCRIPCION + " = ?, " +
+            COLUMN_PRODUCTO_PRECIO + " = ?, " +
+            COLUMN_PRODUCTO_CATEGORIA + " = ?, " +
+            COLUMN_PRODUCTO_DISPONIBLE + " = ?, " +
+            COLUMN_PRODUCTO_IMAGEN_URL + " = ? " +
+            "WHERE " + COLUMN_ID + " = ?";
+    
+    private static final String SQL_INSERT_SUCURSAL = "INSERT INTO " + TABLE_SUCURSALES + " (" +
+            COLUMN_SUCURSAL_NOMBRE + ", " +
+            COLUMN_SUCURSAL_DIRECCION + ", " +
+            COLUMN_SUCURSAL_TELEFONO + ", " +
+            COLUMN_SUCURSAL_HORARIO_APERTURA + ", " +
+            COLUMN_SUCURSAL_HORARIO_CIERRE + ", " +
+            COLUMN_SUCURSAL_LATITUD + ", " +
+            COLUMN_SUCURSAL_LONGITUD + ", " +
+            COLUMN_SUCURSAL_IMAGEN_URL + ", " +
+            COLUMN_ID + ", " +
+            COLUMN_SUCURSAL_ESTADO +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    // Igual que actualizarSucursal, la actualización no modifica el estado
+    private static final String SQL_UPDATE_SUCURSAL = "UPDATE " + TABLE_SUCURSALES + " SET " +
+            COLUMN_SUCURSAL_NOMBRE + " = ?, " +
+            COLUMN_SUCURSAL_DIRECCION + " = ?, " +
+            COLUMN_SUCURSAL_TELEFONO + " = ?, " +
+            COLUMN_SUCURSAL_HORARIO_APERTURA + " = ?, " +
+            COLUMN_SUCURSAL_HORARIO_CIERRE + " = ?, " +
+            COLUMN_SUCURSAL_LATITUD + " = ?, " +
+            COLUMN_SUCURSAL_LONGITUD + " = ?, " +
+            COLUMN_SUCURSAL_IMAGEN_URL + " = ? " +
+            "WHERE " + COLUMN_ID + " = ?";
+    
+    // Prefijo sobre los dígitos o sobre su reverso (= sufijo del número); cada
+    // rango [p, p + ':') cubre lo que empieza con p porque ':' sigue al '9'.
+    // Visible para el test de planes de consulta.
+    static final String SQL_BUSCAR_CLIENTES_TELEFONO = "SELECT * FROM " + TABLE_CLIENTES + " WHERE (" +
+            COLUMN_CLIENTE_TELEFONO_DIGITOS + " >= ? AND " + COLUMN_CLIENTE_TELEFONO_DIGITOS + " < ?) OR (" +
+            COLUMN_CLIENTE_TELEFONO_INVERTIDO + " >= ? AND " + COLUMN_CLIENTE_TELEFONO_INVERTIDO + " < ?) " +
+            "ORDER BY " + COLUMN_CLIENTE_NOMBRE + " LIMIT ?";
+    
+    private static final int MIN_DIGITOS_TELEFONO = 3;
+    
+    static String[] argsBusquedaTelefono(String digitos, int limite) {
+        String invertidos = invertir(digitos);
+        return new String[]{digitos, digitos + ":", invertidos, invertidos + ":", String.valueOf(limite)};
+    }
+    
     private static CafeFidelidadDB instance;
     
+    // Caché de sentencias compiladas, indexada por SQL. Cada SQLiteStatement se
+    // usa bajo su propio monitor porque los bindings no son seguros entre hilos.
+    private final Map<String, SQLiteStatement> sentencias = new HashMap<>();
+    
+    // Avisa a los repositorios qué tablas cambiaron tras cada escritura
+    private final RastreadorInvalidaciones invalidaciones = new RastreadorInvalidaciones();
+    
+    /**
+     * Devuelve la instancia única del helper. La conexión subyacente se mantiene
+     * abierta durante toda la vida del proceso: los métodos CRUD no deben cerrar
+     * la base de datos, ya que el handle es compartido entre todos los hilos.
+     */
     public static synchronized CafeFidelidadDB getInstance(Context context) {
         if (instance == null) {
             instance = new CafeFidelidadDB(context.getApplicationContext());
@@ -195,7 +385,28 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
     }
     
     private CafeFidelidadDB(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+    
+    // Para tests: con nombre null la base queda en memoria y no toca la del dispositivo
+    CafeFidelidadDB(Context context, String nombre) {
+        this(context, nombre, null);
+    }
+    
+    // Para tests: la fábrica recibe cada consulta con cursor, para revisar su plan
+    CafeFidelidadDB(Context context, String nombre, SQLiteDatabase.CursorFactory fabricaCursores) {
+        super(context, nombre, fabricaCursores, DATABASE_VERSION);
+        // WAL: los lectores no bloquean al escritor y se habilita el pool de conexiones
+        setWriteAheadLoggingEnabled(true);
+    }
+    
+    /**
+     * Rastreador de cambios por tabla. Los métodos de escritura de esta clase
+     * lo notifican después de confirmar; las escrituras hechas por fuera (SQL
+     * directo sobre el handle) no se ven.
+     */
+    public RastreadorInvalidaciones getInvalidaciones() {
+        return invalidaciones;
     }
     
     @Override
@@ -216,6 +427,17 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         db.execSQL("CREATE INDEX IF NOT EXISTS idx_resenas_productos_usuario ON " + TABLE_RESENAS_PRODUCTOS + "(" + COLUMN_RESENA_USUARIO_ID + ")");
         db.execSQL("CREATE INDEX IF NOT EXISTS idx_resenas_sucursales_sucursal ON " + TABLE_RESENAS_SUCURSALES + "(" + COLUMN_RESENA_SUCURSAL_ID + ")");
         db.execSQL("CREATE INDEX IF NOT EXISTS idx_resenas_sucursales_usuario ON " + TABLE_RESENAS_SUCURSALES + "(" + COLUMN_RESENA_USUARIO_ID + ")");
+        crearIndicesConsultas(db);
+        crearIndicesPorDia(db);
+        // Contador de sellos
+        db.execSQL(CREATE_TABLE_SELLOS_CLIENTES);
+        db.execSQL(CREATE_TRIGGER_SELLOS_INSERT);
+        db.execSQL(CREATE_TRIGGER_SELLOS_UPDATE);
+        crearBusquedaTextoCompleto(db);
+        crearBusquedaTelefono(db);
+        crearResumenResenas(db, TABLE_RESENAS_PRODUCTOS, COLUMN_RESENA_PRODUCTO_ID, TABLE_RESUMEN_RESENAS_PRODUCTOS);
+        crearResumenResenas(db, TABLE_RESENAS_SUCURSALES, COLUMN_RESENA_SUCURSAL_ID, TABLE_RESUMEN_RESENAS_SUCURSALES);
+        crearResumenVisitas(db);
         
         Log.d(TAG, "Base de datos creada exitosamente");
         
@@ -276,6 +498,291 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
                 Log.e(TAG, "Error en migración v5 (sucursales.imagen_url): " + e.getMessage());
             }
         }
+        if (oldVersion < 6) {
+            // Migración v6: índices para las consultas filtradas (no altera datos)
+            crearIndicesConsultas(db);
+            Log.d(TAG, "Migración v6: índices de consultas creados");
+        }
+        if (oldVersion < 7) {
+            // Migración v7: contador de sellos por cliente, inicializado con las visitas actuales
+            db.execSQL(CREATE_TABLE_SELLOS_CLIENTES);
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_SELLOS_CLIENTES + " (" + COLUMN_SELLOS_CLIENTE_ID + ", " + COLUMN_SELLOS_CANTIDAD + ") " +
+                    "SELECT " + COLUMN_VISITA_CLIENTE_ID + ", COUNT(*) FROM " + TABLE_VISITAS + " GROUP BY " + COLUMN_VISITA_CLIENTE_ID);
+            db.execSQL(CREATE_TRIGGER_SELLOS_INSERT);
+            db.execSQL(CREATE_TRIGGER_SELLOS_UPDATE);
+            Log.d(TAG, "Migración v7: contador de sellos creado");
+        }
+        if (oldVersion < 8) {
+            // Migración v8: índices para paginación por (fecha, id) y (nombre, id)
+            crearIndicesConsultas(db);
+            Log.d(TAG, "Migración v8: índices de paginación creados");
+        }
+        if (oldVersion < 9) {
+            // Migración v9: índices para paginar reseñas por (fecha_creacion, id)
+            crearIndicesConsultas(db);
+            Log.d(TAG, "Migración v9: índices de paginación de reseñas creados");
+        }
+        if (oldVersion < 10) {
+            // Migración v10: índices FTS para búsqueda, poblados con los datos existentes
+            crearBusquedaTextoCompleto(db);
+            db.execSQL("INSERT INTO " + TABLE_PRODUCTOS_FTS + "(" + TABLE_PRODUCTOS_FTS + ") VALUES('rebuild')");
+            db.execSQL("INSERT INTO " + TABLE_SUCURSALES_FTS + "(" + TABLE_SUCURSALES_FTS + ") VALUES('rebuild')");
+            db.execSQL("INSERT INTO " + TABLE_CLIENTES_FTS + "(" + TABLE_CLIENTES_FTS + ") VALUES('rebuild')");
+            Log.d(TAG, "Migración v10: índices de texto completo creados");
+        }
+        if (oldVersion < 11) {
+            // Migración v11: resúmenes de calificaciones, inicializados con las reseñas actuales
+            crearResumenResenas(db, TABLE_RESENAS_PRODUCTOS, COLUMN_RESENA_PRODUCTO_ID, TABLE_RESUMEN_RESENAS_PRODUCTOS);
+            crearResumenResenas(db, TABLE_RESENAS_SUCURSALES, COLUMN_RESENA_SUCURSAL_ID, TABLE_RESUMEN_RESENAS_SUCURSALES);
+            poblarResumenResenas(db, TABLE_RESENAS_PRODUCTOS, COLUMN_RESENA_PRODUCTO_ID, TABLE_RESUMEN_RESENAS_PRODUCTOS);
+            poblarResumenResenas(db, TABLE_RESENAS_SUCURSALES, COLUMN_RESENA_SUCURSAL_ID, TABLE_RESUMEN_RESENAS_SUCURSALES);
+            Log.d(TAG, "Migración v11: resúmenes de calificaciones creados");
+        }
+        if (oldVersion < 12) {
+            // Migración v12: fechas de visitas y canjes como INTEGER más columna epoch_day.
+            // SQLite no cambia el tipo de una columna, así que ambas tablas se reconstruyen;
+            // al borrar visitas se van sus triggers de sellos y se vuelven a crear.
+            String diaLocal = "CAST(julianday(CAST(%s AS INTEGER) / 1000, 'unixepoch', 'localtime') - 2440587.5 AS INTEGER)";
+            db.execSQL(CREATE_TABLE_VISITAS.replace("CREATE TABLE " + TABLE_VISITAS + " (", "CREATE TABLE visitas_v12 ("));
+            db.execSQL("INSERT INTO visitas_v12 (" + COLUMN_ID + ", " + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_SUCURSAL_ID + ", " +
+                    COLUMN_VISITA_FECHA + ", " + COLUMN_VISITA_PUNTOS_GANADOS + ", " + COLUMN_VISITA_DIA + ") " +
+                    "SELECT " + COLUMN_ID + ", " + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_SUCURSAL_ID + ", " +
+                    "CAST(" + COLUMN_VISITA_FECHA + " AS INTEGER), " + COLUMN_VISITA_PUNTOS_GANADOS + ", " +
+                    String.format(diaLocal, COLUMN_VISITA_FECHA) + " FROM " + TABLE_VISITAS);
+            db.execSQL("DROP TABLE " + TABLE_VISITAS);
+            db.execSQL("ALTER TABLE visitas_v12 RENAME TO " + TABLE_VISITAS);
+            
+            db.execSQL(CREATE_TABLE_CANJES.replace("CREATE TABLE " + TABLE_CANJES + " (", "CREATE TABLE canjes_v12 ("));
+            db.execSQL("INSERT INTO canjes_v12 (" + COLUMN_ID + ", " + COLUMN_CANJE_CLIENTE_ID + ", " + COLUMN_CANJE_BENEFICIO_ID + ", " +
+                    COLUMN_CANJE_FECHA + ", " + COLUMN_CANJE_PUNTOS_UTILIZADOS + ", " + COLUMN_CANJE_ESTADO + ", " + COLUMN_CANJE_DIA + ") " +
+                    "SELECT " + COLUMN_ID + ", " + COLUMN_CANJE_CLIENTE_ID + ", " + COLUMN_CANJE_BENEFICIO_ID + ", " +
+                    "CAST(" + COLUMN_CANJE_FECHA + " AS INTEGER), " + COLUMN_CANJE_PUNTOS_UTILIZADOS + ", " + COLUMN_CANJE_ESTADO + ", " +
+                    String.format(diaLocal, COLUMN_CANJE_FECHA) + " FROM " + TABLE_CANJES);
+            db.execSQL("DROP TABLE " + TABLE_CANJES);
+            db.execSQL("ALTER TABLE canjes_v12 RENAME TO " + TABLE_CANJES);
+            
+            db.execSQL(CREATE_TRIGGER_SELLOS_INSERT);
+            db.execSQL(CREATE_TRIGGER_SELLOS_UPDATE);
+            crearIndicesConsultas(db);
+            crearIndicesPorDia(db);
+            Log.d(TAG, "Migración v12: fechas de visitas y canjes migradas a INTEGER con epoch_day");
+        }
+        if (oldVersion < 13) {
+            // Migración v13: resumen diario para la compactación de visitas antiguas
+            crearResumenVisitas(db);
+            Log.d(TAG, "Migración v13: resumen diario de visitas creado");
+        }
+        if (oldVersion < 14) {
+            // Migración v14: índice por coordenadas para buscar sucursales cercanas
+            crearIndicesConsultas(db);
+            Log.d(TAG, "Migración v14: índice de latitud/longitud en sucursales");
+        }
+        if (oldVersion < 15) {
+            // Migración v15: dígitos del teléfono indexados, poblados con los clientes actuales
+            crearBusquedaTelefono(db);
+            poblarBusquedaTelefono(db);
+            Log.d(TAG, "Migración v15: búsqueda de clientes por teléfono con índice");
+        }
+    }
+    
+    /**
+     * Índices que cubren los filtros y ordenamientos de las consultas por
+     * cliente, categoría y estado. Idempotente: se usa en onCreate y onUpgrade.
+     */
+    private void crearIndicesConsultas(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_cliente_fecha ON " + TABLE_VISITAS + "(" + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_FECHA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_canjes_cliente_fecha ON " + TABLE_CANJES + "(" + COLUMN_CANJE_CLIENTE_ID + ", " + COLUMN_CANJE_FECHA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_productos_categoria_disponible ON " + TABLE_PRODUCTOS + "(" + COLUMN_PRODUCTO_CATEGORIA + ", " + COLUMN_PRODUCTO_DISPONIBLE + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_productos_disponible_nombre ON " + TABLE_PRODUCTOS + "(" + COLUMN_PRODUCTO_DISPONIBLE + ", " + COLUMN_PRODUCTO_NOMBRE + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_clientes_activo_nombre ON " + TABLE_CLIENTES + "(" + COLUMN_CLIENTE_ACTIVO + ", " + COLUMN_CLIENTE_NOMBRE + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_sucursales_estado_nombre ON " + TABLE_SUCURSALES + "(" + COLUMN_SUCURSAL_ESTADO + ", " + COLUMN_SUCURSAL_NOMBRE + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_beneficios_activo_nombre ON " + TABLE_BENEFICIOS + "(" + COLUMN_BENEFICIO_ACTIVO + ", " + COLUMN_BENEFICIO_NOMBRE + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_sucursales_latitud_longitud ON " + TABLE_SUCURSALES + "(" + COLUMN_SUCURSAL_LATITUD + ", " + COLUMN_SUCURSAL_LONGITUD + ")");
+        // Paginación por clave: el rowid (id) queda implícito al final de cada índice
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_fecha ON " + TABLE_VISITAS + "(" + COLUMN_VISITA_FECHA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_canjes_fecha ON " + TABLE_CANJES + "(" + COLUMN_CANJE_FECHA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_clientes_nombre ON " + TABLE_CLIENTES + "(" + COLUMN_CLIENTE_NOMBRE + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_resenas_productos_producto_fecha ON " + TABLE_RESENAS_PRODUCTOS + "(" + COLUMN_RESENA_PRODUCTO_ID + ", " + COLUMN_RESENA_FECHA_CREACION + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_resenas_sucursales_sucursal_fecha ON " + TABLE_RESENAS_SUCURSALES + "(" + COLUMN_RESENA_SUCURSAL_ID + ", " + COLUMN_RESENA_FECHA_CREACION + ")");
+    }
+    
+    private void crearResumenVisitas(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_VISITAS_RESUMEN_DIARIO);
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_resumen_dia ON " + TABLE_VISITAS_RESUMEN_DIARIO + "(" + COLUMN_VISITA_DIA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_resumen_sucursal_dia ON " + TABLE_VISITAS_RESUMEN_DIARIO + "(" + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_DIA + ")");
+    }
+    
+    /**
+     * Índices de rango por fecha y por día (epoch_day), globales y por sucursal.
+     * Aparte de crearIndicesConsultas porque epoch_day recién existe desde la v12.
+     */
+    private void crearIndicesPorDia(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_dia ON " + TABLE_VISITAS + "(" + COLUMN_VISITA_DIA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_sucursal_fecha ON " + TABLE_VISITAS + "(" + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_FECHA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_visitas_sucursal_dia ON " + TABLE_VISITAS + "(" + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_DIA + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_canjes_dia ON " + TABLE_CANJES + "(" + COLUMN_CANJE_DIA + ")");
+    }
+    
+    /**
+     * Columnas con los dígitos del teléfono (y su reverso) más sus índices. Las
+     * llena la app al escribir clientes ({@link #ponerTelefono}); SQLite no tiene
+     * funciones para quitar caracteres arbitrarios ni invertir textos.
+     */
+    private static void crearBusquedaTelefono(SQLiteDatabase db) {
+        for (String columna : new String[]{COLUMN_CLIENTE_TELEFONO_DIGITOS, COLUMN_CLIENTE_TELEFONO_INVERTIDO}) {
+            if (!tieneColumna(db, TABLE_CLIENTES, columna)) {
+                db.execSQL("ALTER TABLE " + TABLE_CLIENTES + " ADD COLUMN " + columna + " TEXT");
+            }
+        }
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_clientes_telefono_digitos ON " + TABLE_CLIENTES + "(" + COLUMN_CLIENTE_TELEFONO_DIGITOS + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_clientes_telefono_invertido ON " + TABLE_CLIENTES + "(" + COLUMN_CLIENTE_TELEFONO_INVERTIDO + ")");
+    }
+    
+    private static void poblarBusquedaTelefono(SQLiteDatabase db) {
+        SQLiteStatement actualizar = db.compileStatement("UPDATE " + TABLE_CLIENTES + " SET " +
+                COLUMN_CLIENTE_TELEFONO_DIGITOS + " = ?, " + COLUMN_CLIENTE_TELEFONO_INVERTIDO + " = ? WHERE " + COLUMN_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_CLIENTE_TELEFONO + " FROM " + TABLE_CLIENTES +
+                " WHERE " + COLUMN_CLIENTE_TELEFONO + " IS NOT NULL", null);
+        try {
+            while (cursor.moveToNext()) {
+                String digitos = digitosTelefono(cursor.getString(1));
+                bindStringOrNull(actualizar, 1, digitos);
+                bindStringOrNull(actualizar, 2, invertir(digitos));
+                actualizar.bindLong(3, cursor.getLong(0));
+                actualizar.executeUpdateDelete();
+                actualizar.clearBindings();
+            }
+        } finally {
+            cursor.close();
+            actualizar.close();
+        }
+    }
+    
+    private static boolean tieneColumna(SQLiteDatabase db, String tabla, String columna) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tabla + ")", null);
+        try {
+            int nombre = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (columna.equals(cursor.getString(nombre))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    // Agrega el teléfono y sus columnas de búsqueda; usar en toda escritura de clientes
+    private static void ponerTelefono(ContentValues values, String telefono) {
+        String digitos = digitosTelefono(telefono);
+        values.put(COLUMN_CLIENTE_TELEFONO, telefono);
+        values.put(COLUMN_CLIENTE_TELEFONO_DIGITOS, digitos);
+        values.put(COLUMN_CLIENTE_TELEFONO_INVERTIDO, invertir(digitos));
+    }
+    
+    // Null si el teléfono no tiene dígitos
+    private static String digitosTelefono(String telefono) {
+        if (telefono == null) {
+            return null;
+        }
+        StringBuilder digitos = new StringBuilder(telefono.length());
+        for (int i = 0; i < telefono.length(); i++) {
+            char c = telefono.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitos.append(c);
+            }
+        }
+        return digitos.length() > 0 ? digitos.toString() : null;
+    }
+    
+    private static String invertir(String texto) {
+        return texto != null ? new StringBuilder(texto).reverse().toString() : null;
+    }
+    
+    private void crearBusquedaTextoCompleto(SQLiteDatabase db) {
+        crearIndiceFts(db, TABLE_PRODUCTOS, TABLE_PRODUCTOS_FTS, COLUMNAS_FTS_PRODUCTOS);
+        crearIndiceFts(db, TABLE_SUCURSALES, TABLE_SUCURSALES_FTS, COLUMNAS_FTS_SUCURSALES);
+        crearIndiceFts(db, TABLE_CLIENTES, TABLE_CLIENTES_FTS, COLUMNAS_FTS_CLIENTES);
+    }
+    
+    /**
+     * Tabla FTS4 de contenido externo sobre {@code tabla} (docid = id), con
+     * unicode61 para ignorar mayúsculas y tildes. Los triggers la mantienen al día:
+     * la fila vieja se quita antes de modificar la tabla y la nueva se agrega después,
+     * que es lo que exige el contenido externo.
+     */
+    private static void crearIndiceFts(SQLiteDatabase db, String tabla, String fts, String[] columnas) {
+        String listaColumnas = TextUtils.join(", ", columnas);
+        StringBuilder valoresNuevos = new StringBuilder("new." + COLUMN_ID);
+        for (String columna : columnas) {
+            valoresNuevos.append(", new.").append(columna);
+        }
+        String insertarNueva = "INSERT INTO " + fts + "(docid, " + listaColumnas + ") VALUES (" + valoresNuevos + "); ";
+        String quitarVieja = "DELETE FROM " + fts + " WHERE docid = old." + COLUMN_ID + "; ";
+        
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + fts + " USING fts4(content=\"" + tabla + "\", " +
+                listaColumnas + ", tokenize=unicode61 \"remove_diacritics=1\")");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_bu BEFORE UPDATE ON " + tabla + " BEGIN " + quitarVieja + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_bd BEFORE DELETE ON " + tabla + " BEGIN " + quitarVieja + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_au AFTER UPDATE ON " + tabla + " BEGIN " + insertarNueva + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + fts + "_ai AFTER INSERT ON " + tabla + " BEGIN " + insertarNueva + "END");
+    }
+    
+    /**
+     * Tabla con cantidad, suma e histograma de 1 a 5 estrellas por producto o
+     * sucursal. Los triggers la ajustan en cada alta, baja o cambio de reseña, así
+     * el promedio se lee por clave primaria en lugar de agregar todas las reseñas.
+     */
+    private static void crearResumenResenas(SQLiteDatabase db, String tablaResenas, String columnaEntidad, String tablaResumen) {
+        StringBuilder columnas = new StringBuilder();
+        for (int estrellas = 1; estrellas <= 5; estrellas++) {
+            columnas.append(", ").append(COLUMN_RESUMEN_ESTRELLAS).append(estrellas).append(" INTEGER NOT NULL DEFAULT 0");
+        }
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + tablaResumen + " (" +
+                columnaEntidad + " INTEGER PRIMARY KEY, " +
+                COLUMN_RESUMEN_CANTIDAD + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_RESUMEN_SUMA + " INTEGER NOT NULL DEFAULT 0" + columnas + ")");
+        
+        String asegurarFila = "INSERT OR IGNORE INTO " + tablaResumen + " (" + columnaEntidad + ") VALUES (NEW." + columnaEntidad + "); ";
+        String sumarNueva = ajusteResumen(tablaResumen, columnaEntidad, "NEW", "+");
+        String restarVieja = ajusteResumen(tablaResumen, columnaEntidad, "OLD", "-");
+        
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_" + tablaResenas + "_resumen_insert AFTER INSERT ON " + tablaResenas +
+                " BEGIN " + asegurarFila + sumarNueva + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_" + tablaResenas + "_resumen_delete AFTER DELETE ON " + tablaResenas +
+                " BEGIN " + restarVieja + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_" + tablaResenas + "_resumen_update AFTER UPDATE OF " +
+                COLUMN_RESENA_CALIFICACION + ", " + columnaEntidad + " ON " + tablaResenas +
+                " BEGIN " + restarVieja + asegurarFila + sumarNueva + "END");
+    }
+    
+    // UPDATE que suma o resta la reseña NEW/OLD del resumen de su producto o sucursal
+    private static String ajusteResumen(String tablaResumen, String columnaEntidad, String fila, String signo) {
+        String calificacion = fila + "." + COLUMN_RESENA_CALIFICACION;
+        StringBuilder sql = new StringBuilder("UPDATE " + tablaResumen + " SET " +
+                COLUMN_RESUMEN_CANTIDAD + " = " + COLUMN_RESUMEN_CANTIDAD + " " + signo + " 1, " +
+                COLUMN_RESUMEN_SUMA + " = " + COLUMN_RESUMEN_SUMA + " " + signo + " " + calificacion);
+        for (int estrellas = 1; estrellas <= 5; estrellas++) {
+            String columna = COLUMN_RESUMEN_ESTRELLAS + estrellas;
+            sql.append(", ").append(columna).append(" = ").append(columna).append(" ").append(signo)
+                    .append(" (").append(calificacion).append(" = ").append(estrellas).append(")");
+        }
+        sql.append(" WHERE ").append(columnaEntidad).append(" = ").append(fila).append(".").append(columnaEntidad).append("; ");
+        return sql.toString();
+    }
+    
+    private static void poblarResumenResenas(SQLiteDatabase db, String tablaResenas, String columnaEntidad, String tablaResumen) {
+        StringBuilder columnas = new StringBuilder();
+        StringBuilder conteos = new StringBuilder();
+        for (int estrellas = 1; estrellas <= 5; estrellas++) {
+            columnas.append(", ").append(COLUMN_RESUMEN_ESTRELLAS).append(estrellas);
+            conteos.append(", SUM(").append(COLUMN_RESENA_CALIFICACION).append(" = ").append(estrellas).append(")");
+        }
+        db.execSQL("INSERT OR REPLACE INTO " + tablaResumen + " (" + columnaEntidad + ", " +
+                COLUMN_RESUMEN_CANTIDAD + ", " + COLUMN_RESUMEN_SUMA + columnas + ") " +
+                "SELECT " + columnaEntidad + ", COUNT(*), SUM(" + COLUMN_RESENA_CALIFICACION + ")" + conteos +
+                " FROM " + tablaResenas + " GROUP BY " + columnaEntidad);
     }
     
     private void insertarDatosEjemplo(SQLiteDatabase db) {
@@ -285,7 +792,7 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         ContentValues clienteValues = new ContentValues();
         clienteValues.put(COLUMN_CLIENTE_NOMBRE, "Juan Pérez");
         clienteValues.put(COLUMN_CLIENTE_EMAIL, "juan@email.com");
-        clienteValues.put(COLUMN_CLIENTE_TELEFONO, "123456789");
+        ponerTelefono(clienteValues, "123456789");
         clienteValues.put(COLUMN_CLIENTE_PASSWORD, "123456");
         clienteValues.put(COLUMN_CLIENTE_PUNTOS, 100);
         clienteValues.put(COLUMN_CLIENTE_ACTIVO, 1);
@@ -326,6 +833,123 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         Log.d(TAG, "Datos de ejemplo insertados");
     }
     
+    // SENTENCIAS PRECOMPILADAS
+    
+    /**
+     * Devuelve la sentencia compilada para el SQL indicado, compilándola solo
+     * la primera vez. El llamador debe sincronizar sobre la sentencia mientras
+     * la enlaza y ejecuta.
+     */
+    private SQLiteStatement obtenerSentencia(String sql) {
+        synchronized (sentencias) {
+            SQLiteStatement stmt = sentencias.get(sql);
+            if (stmt == null) {
+                stmt = getWritableDatabase().compileStatement(sql);
+                sentencias.put(sql, stmt);
+            }
+            return stmt;
+        }
+    }
+    
+    // Para tests: SQL de las sentencias compiladas hasta ahora
+    List<String> sqlSentenciasCompiladas() {
+        synchronized (sentencias) {
+            return new ArrayList<>(sentencias.keySet());
+        }
+    }
+    
+    private int contarFilas(String tabla) {
+        SQLiteStatement stmt = obtenerSentencia("SELECT COUNT(*) FROM " + tabla);
+        synchronized (stmt) {
+            return (int) stmt.simpleQueryForLong();
+        }
+    }
+    
+    // Igual que SQLiteDatabase.insert: devuelve -1 ante violaciones de constraints
+    private long ejecutarInsert(SQLiteStatement stmt) {
+        try {
+            return stmt.executeInsert();
+        } catch (SQLException e) {
+            Log.e(TAG, "Error al ejecutar inserción: " + e.getMessage());
+            return -1;
+        } finally {
+            stmt.clearBindings();
+        }
+    }
+    
+    // Ejecuta UPDATE y, si no existe la fila, INSERT con el mismo ID (o uno nuevo
+    // si el modelo no trae ID). Ambas sentencias comparten los primeros
+    // 'columnas' bindings; el ID va en la posición columnas + 1.
+    private long ejecutarUpsert(SQLiteStatement update, SQLiteStatement insert, int columnas, String idTexto) {
+        Long id = parseId(idTexto);
+        try {
+            if (id != null) {
+                update.bindLong(columnas + 1, id);
+                if (update.executeUpdateDelete() > 0) {
+                    return id;
+                }
+                insert.bindLong(columnas + 1, id);
+            } else {
+                insert.bindNull(columnas + 1);
+            }
+            return insert.executeInsert();
+        } catch (SQLException e) {
+            Log.e(TAG, "Error en upsert: " + e.getMessage());
+            return -1;
+        } finally {
+            update.clearBindings();
+            insert.clearBindings();
+        }
+    }
+    
+    // Notifica las tablas solo si la escritura afectó alguna fila (o devolvió un ID válido)
+    private void notificarSi(long filas, String... tablas) {
+        if (filas > 0) {
+            invalidaciones.notificarCambio(tablas);
+        }
+    }
+    
+    // Filas de un lote que sí se escribieron (las fallidas vienen en -1)
+    private static int contarExitosas(long[] ids) {
+        int exitosas = 0;
+        for (long id : ids) {
+            if (id > 0) {
+                exitosas++;
+            }
+        }
+        return exitosas;
+    }
+    
+    private static Long parseId(String id) {
+        if (id == null || id.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(id.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static void bindStringOrNull(SQLiteStatement stmt, int index, String value) {
+        if (value == null) {
+            stmt.bindNull(index);
+        } else {
+            stmt.bindString(index, value);
+        }
+    }
+    
+    @Override
+    public synchronized void close() {
+        synchronized (sentencias) {
+            for (SQLiteStatement stmt : sentencias.values()) {
+                stmt.close();
+            }
+            sentencias.clear();
+        }
+        super.close();
+    }
+    
     // MÉTODOS CRUD PARA CLIENTES
     
     public long insertarCliente(Cliente cliente) {
@@ -335,7 +959,7 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         values.put(COLUMN_CLIENTE_NOMBRE, cliente.getNombre());
         values.put(COLUMN_CLIENTE_EMAIL, cliente.getEmail());
-        values.put(COLUMN_CLIENTE_TELEFONO, cliente.getTelefono());
+        ponerTelefono(values, cliente.getTelefono());
         values.put(COLUMN_CLIENTE_PASSWORD, cliente.getPassword());
         values.put(COLUMN_CLIENTE_PUNTOS, cliente.getPuntosAcumulados());
         values.put(COLUMN_CLIENTE_ACTIVO, cliente.isActivo() ? 1 : 0);
@@ -353,10 +977,9 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             Log.e(TAG, "Error al insertar cliente en la base de datos");
         } else {
             Log.d(TAG, "Cliente insertado exitosamente con ID: " + id);
+            invalidaciones.notificarCambio(TABLE_CLIENTES);
         }
         
-        db.close();
-        
         return id;
     }
     
@@ -379,7 +1002,6 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return cliente;
     }
     
@@ -402,59 +1024,55 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return cliente;
     }
     
+    /**
+     * Nombres de varios clientes con una consulta {@code IN (...)} por cada
+     * {@link #MAX_PARAMETROS_IN} ids. Los ids que no existen no aparecen en el mapa.
+     */
+    public Map<Integer, String> obtenerNombresClientes(Collection<Integer> ids) {
+        Map<Integer, String> nombres = new HashMap<>();
+        if (ids.isEmpty()) {
+            return nombres;
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<Integer> pendientes = new ArrayList<>(ids);
+        for (int desde = 0; desde < pendientes.size(); desde += MAX_PARAMETROS_IN) {
+            List<Integer> lote = pendientes.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, pendientes.size()));
+            String[] args = new String[lote.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = String.valueOf(lote.get(i));
+            }
+            String marcadores = TextUtils.join(", ", Collections.nCopies(args.length, "?"));
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_CLIENTE_NOMBRE + " FROM " + TABLE_CLIENTES +
+                    " WHERE " + COLUMN_ID + " IN (" + marcadores + ")", args);
+            try {
+                while (cursor.moveToNext()) {
+                    nombres.put(cursor.getInt(0), cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return nombres;
+    }
+    
     public List<Cliente> obtenerTodosLosClientes() {
-        List<Cliente> clientes = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_CLIENTES, null, null, null, null, null, COLUMN_CLIENTE_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Cliente cliente = new Cliente();
-                cliente.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                cliente.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_NOMBRE)));
-                cliente.setEmail(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_EMAIL)));
-                cliente.setTelefono(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_TELEFONO)));
-                cliente.setPassword(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_PASSWORD)));
-                cliente.setPuntosAcumulados(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_PUNTOS)));
-                cliente.setActivo(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_ACTIVO)) == 1);
-                clientes.add(cliente);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return clientes;
+        return leerTodas(cursor, LECTOR_CLIENTE);
     }
 
     public List<Cliente> obtenerClientesActivos() {
-        List<Cliente> clientes = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_CLIENTES, null, COLUMN_CLIENTE_ACTIVO + "=?", 
                 new String[]{"1"}, null, null, COLUMN_CLIENTE_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Cliente cliente = new Cliente();
-                cliente.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                cliente.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_NOMBRE)));
-                cliente.setEmail(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_EMAIL)));
-                cliente.setTelefono(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_TELEFONO)));
-                cliente.setPassword(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_PASSWORD)));
-                cliente.setPuntosAcumulados(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_PUNTOS)));
-                cliente.setActivo(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_ACTIVO)) == 1);
-                clientes.add(cliente);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return clientes;
+        return leerTodas(cursor, LECTOR_CLIENTE);
     }
 
     public int actualizarCliente(Cliente cliente) {
@@ -463,39 +1081,40 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         values.put(COLUMN_CLIENTE_NOMBRE, cliente.getNombre());
         values.put(COLUMN_CLIENTE_EMAIL, cliente.getEmail());
-        values.put(COLUMN_CLIENTE_TELEFONO, cliente.getTelefono());
+        ponerTelefono(values, cliente.getTelefono());
         values.put(COLUMN_CLIENTE_PASSWORD, cliente.getPassword());
         values.put(COLUMN_CLIENTE_PUNTOS, cliente.getPuntosAcumulados());
         values.put(COLUMN_CLIENTE_ACTIVO, cliente.isActivo() ? 1 : 0);
         
         int rowsAffected = db.update(TABLE_CLIENTES, values, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(cliente.getId())});
-        db.close();
         
         Log.d(TAG, "Cliente actualizado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_CLIENTES);
         return rowsAffected;
     }
     
     public int eliminarCliente(int id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        int rowsAffected = db.delete(TABLE_CLIENTES, COLUMN_ID + "=?", 
-                new String[]{String.valueOf(id)});
-        db.close();
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            rowsAffected = db.delete(TABLE_CLIENTES, COLUMN_ID + "=?", 
+                    new String[]{String.valueOf(id)});
+            db.delete(TABLE_SELLOS_CLIENTES, COLUMN_SELLOS_CLIENTE_ID + "=?", 
+                    new String[]{String.valueOf(id)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         
         Log.d(TAG, "Cliente eliminado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_CLIENTES, TABLE_SELLOS_CLIENTES);
         return rowsAffected;
     }
     
     public int obtenerConteoClientes() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_CLIENTES, null);
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
-            cursor.close();
-        }
-        db.close();
-        return count;
+        return contarFilas(TABLE_CLIENTES);
     }
     
     //  MÉTODOS CRUD PARA BENEFICIOS
@@ -511,9 +1130,9 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_BENEFICIO_ACTIVO, beneficio.isActivo() ? 1 : 0);
         
         long id = db.insert(TABLE_BENEFICIOS, null, values);
-        db.close();
         
         Log.d(TAG, "Beneficio insertado con ID: " + id);
+        notificarSi(id, TABLE_BENEFICIOS);
         return id;
     }
     
@@ -535,57 +1154,24 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return beneficio;
     }
     
     public List<Beneficio> obtenerTodosLosBeneficios() {
-        List<Beneficio> beneficios = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_BENEFICIOS, null, null, null, null, null, COLUMN_BENEFICIO_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Beneficio beneficio = new Beneficio();
-                beneficio.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                beneficio.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_NOMBRE)));
-                beneficio.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_DESCRIPCION)));
-                beneficio.setVisitasRequeridas(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_PUNTOS_REQUERIDOS)));
-                beneficio.setTipo(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_TIPO)));
-                beneficio.setActivo(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_ACTIVO)) == 1);
-                beneficios.add(beneficio);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return beneficios;
+        return leerTodas(cursor, LECTOR_BENEFICIO);
     }
     
     public List<Beneficio> obtenerBeneficiosActivos() {
-        List<Beneficio> beneficios = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_BENEFICIOS, null, COLUMN_BENEFICIO_ACTIVO + "=?", 
                 new String[]{"1"}, null, null, COLUMN_BENEFICIO_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Beneficio beneficio = new Beneficio();
-                beneficio.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                beneficio.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_NOMBRE)));
-                beneficio.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_DESCRIPCION)));
-                beneficio.setVisitasRequeridas(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_PUNTOS_REQUERIDOS)));
-                beneficio.setTipo(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_TIPO)));
-                beneficio.setActivo(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_ACTIVO)) == 1);
-                beneficios.add(beneficio);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return beneficios;
+        return leerTodas(cursor, LECTOR_BENEFICIO);
     }
     
     public int actualizarBeneficio(Beneficio beneficio) {
@@ -600,9 +1186,9 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         int rowsAffected = db.update(TABLE_BENEFICIOS, values, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(beneficio.getId())});
-        db.close();
         
         Log.d(TAG, "Beneficio actualizado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_BENEFICIOS);
         return rowsAffected;
     }
     
@@ -610,42 +1196,68 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_BENEFICIOS, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(id)});
-        db.close();
         
         Log.d(TAG, "Beneficio eliminado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_BENEFICIOS);
         return rowsAffected;
     }
     
     public int obtenerConteoBeneficios() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_BENEFICIOS, null);
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
-            cursor.close();
-        }
-        db.close();
-        return count;
+        return contarFilas(TABLE_BENEFICIOS);
     }
     
     // MÉTODOS CRUD PARA VISITAS
     
     public long insertarVisita(Visita visita) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        
-        values.put(COLUMN_VISITA_CLIENTE_ID, visita.getUserId());
-        values.put(COLUMN_VISITA_SUCURSAL_ID, visita.getSucursal());
-        values.put(COLUMN_VISITA_FECHA, visita.getFechaVisita());
-        values.put(COLUMN_VISITA_PUNTOS_GANADOS, visita.getPuntosGanados());
-        
-        long id = db.insert(TABLE_VISITAS, null, values);
-        db.close();
+        SQLiteStatement stmt = obtenerSentencia(SQL_INSERT_VISITA);
+        long id;
+        synchronized (stmt) {
+            bindVisita(stmt, visita);
+            id = ejecutarInsert(stmt);
+        }
         
         Log.d(TAG, "Visita insertada con ID: " + id);
+        notificarSi(id, TABLE_VISITAS, TABLE_SELLOS_CLIENTES);
         return id;
     }
     
+    /**
+     * Inserta un lote de visitas en una sola transacción reutilizando la misma
+     * sentencia compilada. Devuelve el ID generado por cada visita, en el mismo
+     * orden de la lista, o -1 para las filas que no pudieron insertarse.
+     */
+    public long[] insertarVisitas(List<Visita> visitas) {
+        long[] ids = new long[visitas.size()];
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        // Sentencia propia del lote: las cacheadas no deben usarse dentro de una
+        // transacción porque su monitor podría estar tomado por otro hilo
+        SQLiteStatement stmt = db.compileStatement(SQL_INSERT_VISITA);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                bindVisita(stmt, visitas.get(i));
+                ids[i] = ejecutarInsert(stmt);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            stmt.close();
+            db.endTransaction();
+        }
+        
+        int exitosas = contarExitosas(ids);
+        Log.d(TAG, "Lote de visitas insertado: " + exitosas + " de " + ids.length + " filas");
+        notificarSi(exitosas, TABLE_VISITAS, TABLE_SELLOS_CLIENTES);
+        return ids;
+    }
+    
+    private static void bindVisita(SQLiteStatement stmt, Visita visita) {
+        bindStringOrNull(stmt, 1, visita.getUserId());
+        bindStringOrNull(stmt, 2, visita.getSucursal());
+        stmt.bindLong(3, visita.getFechaVisita());
+        stmt.bindLong(4, visita.getPuntosGanados());
+        stmt.bindLong(5, DiaEpoch.deMillis(visita.getFechaVisita()));
+    }
+    
     public Visita obtenerVisitaPorId(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
         Visita visita = null;
@@ -663,55 +1275,33 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return visita;
     }
     
     public List<Visita> obtenerTodasLasVisitas() {
-        List<Visita> visitas = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_VISITAS, null, null, null, null, null, COLUMN_VISITA_FECHA + " DESC");
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Visita visita = new Visita();
-                visita.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                visita.setUserId(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VISITA_CLIENTE_ID)));
-                visita.setSucursal(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VISITA_SUCURSAL_ID)));
-                visita.setFechaVisita(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_VISITA_FECHA)));
-                visita.setPuntosGanados(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_VISITA_PUNTOS_GANADOS)));
-                visitas.add(visita);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return visitas;
+        return leerTodas(cursor, LECTOR_VISITA);
     }
     
     public List<Visita> obtenerVisitasPorCliente(int clienteId) {
-        List<Visita> visitas = new ArrayList<>();
+        return obtenerVisitasPorCliente(clienteId, null);
+    }
+    
+    /**
+     * Igual que {@link #obtenerVisitasPorCliente(int)}, pero la lectura se
+     * interrumpe con {@link android.os.OperationCanceledException} si se
+     * cancela la señal.
+     */
+    public List<Visita> obtenerVisitasPorCliente(int clienteId, CancellationSignal senal) {
         SQLiteDatabase db = this.getReadableDatabase();
         
-        Cursor cursor = db.query(TABLE_VISITAS, null, COLUMN_VISITA_CLIENTE_ID + "=?", 
-                new String[]{String.valueOf(clienteId)}, null, null, COLUMN_VISITA_FECHA + " DESC");
-        
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Visita visita = new Visita();
-                visita.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                visita.setUserId(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VISITA_CLIENTE_ID)));
-                visita.setSucursal(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VISITA_SUCURSAL_ID)));
-                visita.setFechaVisita(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_VISITA_FECHA)));
-                visita.setPuntosGanados(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_VISITA_PUNTOS_GANADOS)));
-                visitas.add(visita);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
+        Cursor cursor = db.query(false, TABLE_VISITAS, null, COLUMN_VISITA_CLIENTE_ID + "=?", 
+                new String[]{String.valueOf(clienteId)}, null, null, COLUMN_VISITA_FECHA + " DESC", null, senal);
         
-        db.close();
-        return visitas;
+        return leerTodas(cursor, LECTOR_VISITA);
     }
     
     public int actualizarVisita(Visita visita) {
@@ -722,60 +1312,353 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_VISITA_SUCURSAL_ID, visita.getSucursal());
         values.put(COLUMN_VISITA_FECHA, visita.getFechaVisita());
         values.put(COLUMN_VISITA_PUNTOS_GANADOS, visita.getPuntosGanados());
+        values.put(COLUMN_VISITA_DIA, DiaEpoch.deMillis(visita.getFechaVisita()));
         
         int rowsAffected = db.update(TABLE_VISITAS, values, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(visita.getId())});
-        db.close();
         
         Log.d(TAG, "Visita actualizada. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_VISITAS, TABLE_SELLOS_CLIENTES);
         return rowsAffected;
     }
     
     public int eliminarVisita(int id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        int rowsAffected = db.delete(TABLE_VISITAS, COLUMN_ID + "=?", 
-                new String[]{String.valueOf(id)});
-        db.close();
+        String[] args = new String[]{String.valueOf(id)};
+        int rowsAffected;
+        db.beginTransaction();
+        try {
+            // Una visita eliminada (corrección) descuenta el sello que otorgó
+            db.execSQL("UPDATE " + TABLE_SELLOS_CLIENTES + " SET " + COLUMN_SELLOS_CANTIDAD + " = MAX(" + COLUMN_SELLOS_CANTIDAD + " - 1, 0) " +
+                    "WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = (SELECT " + COLUMN_VISITA_CLIENTE_ID + " FROM " + TABLE_VISITAS + " WHERE " + COLUMN_ID + " = ?)", args);
+            rowsAffected = db.delete(TABLE_VISITAS, COLUMN_ID + "=?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         
         Log.d(TAG, "Visita eliminada. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_VISITAS, TABLE_SELLOS_CLIENTES);
         return rowsAffected;
     }
     
-    public int obtenerConteoVisitas() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_VISITAS, null);
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
-            cursor.close();
+    /**
+     * Canjea un beneficio por sellos en una única transacción: descuenta los
+     * sellos solo si el saldo alcanza (UPDATE condicional), registra el canje y
+     * devuelve el nuevo saldo. Si el saldo no alcanza no se escribe nada y se
+     * devuelve {@link #SELLOS_INSUFICIENTES}; si falla el registro del canje se
+     * revierte el descuento y se devuelve {@link #CANJE_FALLIDO}. Dos escáneres
+     * concurrentes no pueden canjear la misma tarjeta dos veces, porque el
+     * descuento y la verificación ocurren en la misma sentencia bajo el lock de
+     * escritura.
+     *
+     * @throws IllegalArgumentException si {@code sellosRequeridos} no es positivo
+     *         (un descuento negativo sumaría sellos)
+     */
+    public int canjearSellos(int clienteId, int beneficioId, int sellosRequeridos) {
+        if (sellosRequeridos <= 0) {
+            throw new IllegalArgumentException("Sellos requeridos inválidos: " + sellosRequeridos);
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement descontar = db.compileStatement("UPDATE " + TABLE_SELLOS_CLIENTES +
+                " SET " + COLUMN_SELLOS_CANTIDAD + " = " + COLUMN_SELLOS_CANTIDAD + " - ?" +
+                " WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = ? AND " + COLUMN_SELLOS_CANTIDAD + " >= ?");
+        SQLiteStatement insertar = db.compileStatement(SQL_INSERT_CANJE);
+        SQLiteStatement saldo = db.compileStatement(SQL_SELLOS_CLIENTE);
+        int nuevoSaldo;
+        try {
+            descontar.bindLong(1, sellosRequeridos);
+            descontar.bindLong(2, clienteId);
+            descontar.bindLong(3, sellosRequeridos);
+            if (descontar.executeUpdateDelete() == 0) {
+                Log.d(TAG, "Sellos insuficientes para canje. Cliente ID: " + clienteId);
+                return SELLOS_INSUFICIENTES;
+            }
+            
+            Canje canje = new Canje();
+            canje.setClienteId(clienteId);
+            canje.setBeneficioId(beneficioId);
+            canje.setFechaCanje(System.currentTimeMillis());
+            canje.setPuntosUtilizados(sellosRequeridos);
+            canje.setEstado("completado");
+            bindCanje(insertar, canje);
+            long canjeId = ejecutarInsert(insertar);
+            if (canjeId == -1) {
+                // Sin setTransactionSuccessful: endTransaction devuelve los sellos
+                Log.e(TAG, "No se pudo registrar el canje. Cliente ID: " + clienteId);
+                return CANJE_FALLIDO;
+            }
+            
+            saldo.bindLong(1, clienteId);
+            nuevoSaldo = (int) saldo.simpleQueryForLong();
+            db.setTransactionSuccessful();
+            
+            Log.d(TAG, "Canje por sellos registrado con ID: " + canjeId + ". Saldo restante: " + nuevoSaldo);
+        } finally {
+            descontar.close();
+            insertar.close();
+            saldo.close();
+            db.endTransaction();
         }
-        db.close();
-        return count;
+        invalidaciones.notificarCambio(TABLE_CANJES, TABLE_SELLOS_CLIENTES);
+        return nuevoSaldo;
     }
     
-    // MÉTODOS CRUD PARA CANJES
+    /**
+     * Devuelve el saldo de sellos vigente del cliente con una sola lectura por
+     * clave primaria, independiente del largo de su historial de visitas.
+     */
+    public int obtenerSellosCliente(int clienteId) {
+        SQLiteStatement stmt = obtenerSentencia(SQL_SELLOS_CLIENTE);
+        synchronized (stmt) {
+            stmt.bindLong(1, clienteId);
+            try {
+                return (int) stmt.simpleQueryForLong();
+            } finally {
+                stmt.clearBindings();
+            }
+        }
+    }
     
-    public long insertarCanje(Canje canje) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        
-        values.put(COLUMN_CANJE_CLIENTE_ID, canje.getClienteId());
-        values.put(COLUMN_CANJE_BENEFICIO_ID, canje.getBeneficioId());
-        values.put(COLUMN_CANJE_FECHA, canje.getFechaCanje());
-        values.put(COLUMN_CANJE_PUNTOS_UTILIZADOS, canje.getPuntosUtilizados());
-        values.put(COLUMN_CANJE_ESTADO, canje.getEstado());
-        
-        long id = db.insert(TABLE_CANJES, null, values);
-        db.close();
-        
-        Log.d(TAG, "Canje insertado con ID: " + id);
-        return id;
+    /**
+     * Total de visitas, incluidas las ya compactadas en el resumen diario.
+     */
+    public int obtenerConteoVisitas() {
+        return contarFilas(TABLE_VISITAS) + contarConsulta("SELECT IFNULL(SUM(" + COLUMN_RESUMEN_VISITAS + "), 0) FROM " + TABLE_VISITAS_RESUMEN_DIARIO);
     }
     
-    public Canje obtenerCanjePorId(int id) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Canje canje = null;
-        
+    // CONSULTAS POR RANGO DE FECHAS
+    // Los rangos son semiabiertos [desde, hasta) en milisegundos y los días son
+    // días locales (DiaEpoch); todas se resuelven con un recorrido de rango de índice.
+    // Los listados solo ven visitas sin compactar; los conteos por día suman
+    // además el resumen diario, así que no cambian al compactar.
+    
+    public List<Visita> obtenerVisitasEntre(long desde, long hasta) {
+        return consultarVisitas(COLUMN_VISITA_FECHA + " >= ? AND " + COLUMN_VISITA_FECHA + " < ?",
+                String.valueOf(desde), String.valueOf(hasta));
+    }
+    
+    public List<Visita> obtenerVisitasSucursalEntre(int sucursalId, long desde, long hasta) {
+        return consultarVisitas(COLUMN_VISITA_SUCURSAL_ID + " = ? AND " + COLUMN_VISITA_FECHA + " >= ? AND " + COLUMN_VISITA_FECHA + " < ?",
+                String.valueOf(sucursalId), String.valueOf(desde), String.valueOf(hasta));
+    }
+    
+    public List<Visita> obtenerVisitasDelDia(long dia) {
+        return consultarVisitas(COLUMN_VISITA_DIA + " = ?", String.valueOf(dia));
+    }
+    
+    public int contarVisitasDia(long dia) {
+        return contarVisitasDias(dia, dia + 1);
+    }
+    
+    public int contarVisitasSucursalDia(int sucursalId, long dia) {
+        return contarVisitasSucursalDias(sucursalId, dia, dia + 1);
+    }
+    
+    /**
+     * Visitas en los días [diaDesde, diaHasta), p. ej. la semana o el mes en curso.
+     */
+    public int contarVisitasDias(long diaDesde, long diaHasta) {
+        String rango = " WHERE " + COLUMN_VISITA_DIA + " >= ? AND " + COLUMN_VISITA_DIA + " < ?";
+        return contarConsulta("SELECT (SELECT COUNT(*) FROM " + TABLE_VISITAS + rango + ") + " +
+                "(SELECT IFNULL(SUM(" + COLUMN_RESUMEN_VISITAS + "), 0) FROM " + TABLE_VISITAS_RESUMEN_DIARIO + rango + ")",
+                String.valueOf(diaDesde), String.valueOf(diaHasta), String.valueOf(diaDesde), String.valueOf(diaHasta));
+    }
+    
+    public int contarVisitasSucursalDias(int sucursalId, long diaDesde, long diaHasta) {
+        String rango = " WHERE " + COLUMN_VISITA_SUCURSAL_ID + " = ? AND " + COLUMN_VISITA_DIA + " >= ? AND " + COLUMN_VISITA_DIA + " < ?";
+        String sucursal = String.valueOf(sucursalId);
+        return contarConsulta("SELECT (SELECT COUNT(*) FROM " + TABLE_VISITAS + rango + ") + " +
+                "(SELECT IFNULL(SUM(" + COLUMN_RESUMEN_VISITAS + "), 0) FROM " + TABLE_VISITAS_RESUMEN_DIARIO + rango + ")",
+                sucursal, String.valueOf(diaDesde), String.valueOf(diaHasta),
+                sucursal, String.valueOf(diaDesde), String.valueOf(diaHasta));
+    }
+    
+    /**
+     * Visitas por día en [diaDesde, diaHasta), para gráficos de un período. Los
+     * días sin visitas no aparecen en el mapa.
+     */
+    public Map<Long, Integer> contarVisitasPorDia(long diaDesde, long diaHasta) {
+        Map<Long, Integer> conteos = new HashMap<>();
+        String rango = " WHERE " + COLUMN_VISITA_DIA + " >= ? AND " + COLUMN_VISITA_DIA + " < ?";
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT " + COLUMN_VISITA_DIA + ", COUNT(*) FROM " + TABLE_VISITAS + rango + " GROUP BY " + COLUMN_VISITA_DIA +
+                " UNION ALL " +
+                "SELECT " + COLUMN_VISITA_DIA + ", SUM(" + COLUMN_RESUMEN_VISITAS + ") FROM " + TABLE_VISITAS_RESUMEN_DIARIO + rango + " GROUP BY " + COLUMN_VISITA_DIA,
+                new String[]{String.valueOf(diaDesde), String.valueOf(diaHasta), String.valueOf(diaDesde), String.valueOf(diaHasta)});
+        try {
+            while (cursor.moveToNext()) {
+                Integer previo = conteos.get(cursor.getLong(0));
+                conteos.put(cursor.getLong(0), cursor.getInt(1) + (previo != null ? previo : 0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return conteos;
+    }
+    
+    public List<Canje> obtenerCanjesEntre(long desde, long hasta) {
+        Cursor cursor = getReadableDatabase().query(TABLE_CANJES, null,
+                COLUMN_CANJE_FECHA + " >= ? AND " + COLUMN_CANJE_FECHA + " < ?",
+                new String[]{String.valueOf(desde), String.valueOf(hasta)}, null, null, COLUMN_CANJE_FECHA + " DESC");
+        return leerTodas(cursor, LECTOR_CANJE);
+    }
+    
+    public int contarCanjesDias(long diaDesde, long diaHasta) {
+        return contarConsulta("SELECT COUNT(*) FROM " + TABLE_CANJES +
+                " WHERE " + COLUMN_CANJE_DIA + " >= ? AND " + COLUMN_CANJE_DIA + " < ?",
+                String.valueOf(diaDesde), String.valueOf(diaHasta));
+    }
+    
+    // COMPACTACIÓN DE VISITAS ANTIGUAS
+    
+    /**
+     * Visitas sin compactar anteriores al día indicado (para informar progreso).
+     */
+    public int contarVisitasACompactar(long diaLimite) {
+        return contarConsulta("SELECT COUNT(*) FROM " + TABLE_VISITAS + " WHERE " + COLUMN_VISITA_DIA + " < ?",
+                String.valueOf(diaLimite));
+    }
+    
+    /**
+     * Mueve al resumen diario un lote de hasta {@code tamanoLote} visitas anteriores
+     * a {@code diaLimite} y las borra, todo en una transacción: si falla, el lote
+     * queda intacto. El saldo de sellos no cambia porque no depende de las filas
+     * de visitas (no hay trigger de borrado). Devuelve las visitas compactadas;
+     * 0 significa que no queda nada por compactar.
+     */
+    public int compactarLoteVisitas(long diaLimite, int tamanoLote) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        String limite = String.valueOf(diaLimite);
+        db.beginTransaction();
+        SQLiteStatement asegurarFila = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_VISITAS_RESUMEN_DIARIO +
+                " (" + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_DIA + ") VALUES (?, ?, ?)");
+        SQLiteStatement acumular = db.compileStatement("UPDATE " + TABLE_VISITAS_RESUMEN_DIARIO + " SET " +
+                COLUMN_RESUMEN_VISITAS + " = " + COLUMN_RESUMEN_VISITAS + " + ?, " +
+                COLUMN_RESUMEN_PUNTOS + " = " + COLUMN_RESUMEN_PUNTOS + " + ? " +
+                "WHERE " + COLUMN_VISITA_CLIENTE_ID + " = ? AND " + COLUMN_VISITA_SUCURSAL_ID + " = ? AND " + COLUMN_VISITA_DIA + " = ?");
+        int compactadas;
+        try {
+            // El lote son las visitas antiguas de menor id; idHasta fija el corte para
+            // que el resumen y el borrado vean exactamente las mismas filas
+            long idHasta = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + COLUMN_ID + "), -1) FROM (SELECT " + COLUMN_ID +
+                    " FROM " + TABLE_VISITAS + " WHERE " + COLUMN_VISITA_DIA + " < ? ORDER BY " + COLUMN_ID + " LIMIT " + Math.max(1, tamanoLote) + ")",
+                    new String[]{limite});
+            if (idHasta < 0) {
+                db.setTransactionSuccessful();
+                return 0;
+            }
+            String lote = " WHERE " + COLUMN_VISITA_DIA + " < ? AND " + COLUMN_ID + " <= ?";
+            String[] args = new String[]{limite, String.valueOf(idHasta)};
+            
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_DIA +
+                    ", COUNT(*), IFNULL(SUM(" + COLUMN_VISITA_PUNTOS_GANADOS + "), 0) FROM " + TABLE_VISITAS + lote +
+                    " GROUP BY " + COLUMN_VISITA_CLIENTE_ID + ", " + COLUMN_VISITA_SUCURSAL_ID + ", " + COLUMN_VISITA_DIA, args);
+            try {
+                while (cursor.moveToNext()) {
+                    long clienteId = cursor.getLong(0);
+                    long sucursalId = cursor.getLong(1);
+                    long dia = cursor.getLong(2);
+                    asegurarFila.bindLong(1, clienteId);
+                    asegurarFila.bindLong(2, sucursalId);
+                    asegurarFila.bindLong(3, dia);
+                    asegurarFila.executeInsert();
+                    acumular.bindLong(1, cursor.getLong(3));
+                    acumular.bindLong(2, cursor.getLong(4));
+                    acumular.bindLong(3, clienteId);
+                    acumular.bindLong(4, sucursalId);
+                    acumular.bindLong(5, dia);
+                    acumular.executeUpdateDelete();
+                }
+            } finally {
+                cursor.close();
+            }
+            
+            compactadas = db.delete(TABLE_VISITAS, COLUMN_VISITA_DIA + " < ? AND " + COLUMN_ID + " <= ?", args);
+            db.setTransactionSuccessful();
+            Log.d(TAG, "Lote de visitas compactado: " + compactadas + " filas");
+        } finally {
+            asegurarFila.close();
+            acumular.close();
+            db.endTransaction();
+        }
+        notificarSi(compactadas, TABLE_VISITAS);
+        return compactadas;
+    }
+    
+    private List<Visita> consultarVisitas(String where, String... args) {
+        Cursor cursor = getReadableDatabase().query(TABLE_VISITAS, null, where, args,
+                null, null, COLUMN_VISITA_FECHA + " DESC");
+        return leerTodas(cursor, LECTOR_VISITA);
+    }
+    
+    private int contarConsulta(String sql, String... args) {
+        SQLiteStatement stmt = obtenerSentencia(sql);
+        synchronized (stmt) {
+            stmt.bindAllArgsAsStrings(args);
+            try {
+                return (int) stmt.simpleQueryForLong();
+            } finally {
+                stmt.clearBindings();
+            }
+        }
+    }
+    
+    // MÉTODOS CRUD PARA CANJES
+    
+    public long insertarCanje(Canje canje) {
+        SQLiteStatement stmt = obtenerSentencia(SQL_INSERT_CANJE);
+        long id;
+        synchronized (stmt) {
+            bindCanje(stmt, canje);
+            id = ejecutarInsert(stmt);
+        }
+        
+        Log.d(TAG, "Canje insertado con ID: " + id);
+        notificarSi(id, TABLE_CANJES);
+        return id;
+    }
+    
+    /**
+     * Inserta un lote de canjes en una sola transacción. Devuelve el ID de cada
+     * canje en el orden recibido, o -1 para las filas rechazadas.
+     */
+    public long[] insertarCanjes(List<Canje> canjes) {
+        long[] ids = new long[canjes.size()];
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement stmt = db.compileStatement(SQL_INSERT_CANJE);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                bindCanje(stmt, canjes.get(i));
+                ids[i] = ejecutarInsert(stmt);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            stmt.close();
+            db.endTransaction();
+        }
+        
+        int exitosas = contarExitosas(ids);
+        Log.d(TAG, "Lote de canjes insertado: " + exitosas + " de " + ids.length + " filas");
+        notificarSi(exitosas, TABLE_CANJES);
+        return ids;
+    }
+    
+    private static void bindCanje(SQLiteStatement stmt, Canje canje) {
+        stmt.bindLong(1, canje.getClienteId());
+        stmt.bindLong(2, canje.getBeneficioId());
+        stmt.bindLong(3, canje.getFechaCanje());
+        stmt.bindLong(4, canje.getPuntosUtilizados());
+        bindStringOrNull(stmt, 5, canje.getEstado());
+        stmt.bindLong(6, DiaEpoch.deMillis(canje.getFechaCanje()));
+    }
+    
+    public Canje obtenerCanjePorId(int id) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Canje canje = null;
+        
         Cursor cursor = db.query(TABLE_CANJES, null, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(id)}, null, null, null);
         
@@ -790,57 +1673,31 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return canje;
     }
     
     public List<Canje> obtenerTodosLosCanjes() {
-        List<Canje> canjes = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_CANJES, null, null, null, null, null, COLUMN_CANJE_FECHA + " DESC");
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Canje canje = new Canje();
-                canje.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                canje.setClienteId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANJE_CLIENTE_ID)));
-                canje.setBeneficioId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANJE_BENEFICIO_ID)));
-                canje.setFechaCanje(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CANJE_FECHA)));
-                canje.setPuntosUtilizados(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANJE_PUNTOS_UTILIZADOS)));
-                canje.setEstado(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CANJE_ESTADO)));
-                canjes.add(canje);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return canjes;
+        return leerTodas(cursor, LECTOR_CANJE);
     }
     
     public List<Canje> obtenerCanjesPorCliente(int clienteId) {
-        List<Canje> canjes = new ArrayList<>();
+        return obtenerCanjesPorCliente(clienteId, null);
+    }
+    
+    /**
+     * Igual que {@link #obtenerCanjesPorCliente(int)}, cancelable con la señal.
+     */
+    public List<Canje> obtenerCanjesPorCliente(int clienteId, CancellationSignal senal) {
         SQLiteDatabase db = this.getReadableDatabase();
         
-        Cursor cursor = db.query(TABLE_CANJES, null, COLUMN_CANJE_CLIENTE_ID + "=?", 
-                new String[]{String.valueOf(clienteId)}, null, null, COLUMN_CANJE_FECHA + " DESC");
+        Cursor cursor = db.query(false, TABLE_CANJES, null, COLUMN_CANJE_CLIENTE_ID + "=?", 
+                new String[]{String.valueOf(clienteId)}, null, null, COLUMN_CANJE_FECHA + " DESC", null, senal);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Canje canje = new Canje();
-                canje.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                canje.setClienteId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANJE_CLIENTE_ID)));
-                canje.setBeneficioId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANJE_BENEFICIO_ID)));
-                canje.setFechaCanje(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CANJE_FECHA)));
-                canje.setPuntosUtilizados(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANJE_PUNTOS_UTILIZADOS)));
-                canje.setEstado(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CANJE_ESTADO)));
-                canjes.add(canje);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return canjes;
+        return leerTodas(cursor, LECTOR_CANJE);
     }
     
     public int actualizarCanje(Canje canje) {
@@ -850,14 +1707,15 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_CANJE_CLIENTE_ID, canje.getClienteId());
         values.put(COLUMN_CANJE_BENEFICIO_ID, canje.getBeneficioId());
         values.put(COLUMN_CANJE_FECHA, canje.getFechaCanje());
+        values.put(COLUMN_CANJE_DIA, DiaEpoch.deMillis(canje.getFechaCanje()));
         values.put(COLUMN_CANJE_PUNTOS_UTILIZADOS, canje.getPuntosUtilizados());
         values.put(COLUMN_CANJE_ESTADO, canje.getEstado());
         
         int rowsAffected = db.update(TABLE_CANJES, values, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(canje.getId())});
-        db.close();
         
         Log.d(TAG, "Canje actualizado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_CANJES);
         return rowsAffected;
     }
     
@@ -865,22 +1723,14 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_CANJES, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(id)});
-        db.close();
         
         Log.d(TAG, "Canje eliminado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_CANJES);
         return rowsAffected;
     }
     
     public int obtenerConteoCanjes() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_CANJES, null);
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
-            cursor.close();
-        }
-        db.close();
-        return count;
+        return contarFilas(TABLE_CANJES);
     }
     
     // MÉTODOS CRUD PARA SUCURSALES
@@ -901,12 +1751,55 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_SUCURSAL_ESTADO, sucursal.isActiva() ? "activo" : "inactivo");
         
         long id = db.insert(TABLE_SUCURSALES, null, values);
-        db.close();
         
         Log.d(TAG, "Sucursal insertada con ID: " + id);
+        notificarSi(id, TABLE_SUCURSALES);
         return id;
     }
     
+    /**
+     * Inserta o actualiza un lote de sucursales en una sola transacción, con la
+     * misma semántica que {@link #upsertProductos(List)}.
+     */
+    public long[] upsertSucursales(List<Sucursal> sucursales) {
+        long[] ids = new long[sucursales.size()];
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement update = db.compileStatement(SQL_UPDATE_SUCURSAL);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_SUCURSAL);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Sucursal sucursal = sucursales.get(i);
+                bindSucursal(update, sucursal);
+                bindSucursal(insert, sucursal);
+                // Alinear estado con flag de activa del modelo (solo en inserción)
+                insert.bindString(10, sucursal.isActiva() ? "activo" : "inactivo");
+                ids[i] = ejecutarUpsert(update, insert, 8, sucursal.getId());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            update.close();
+            insert.close();
+            db.endTransaction();
+        }
+        
+        int exitosas = contarExitosas(ids);
+        Log.d(TAG, "Lote de sucursales procesado: " + exitosas + " de " + ids.length + " filas");
+        notificarSi(exitosas, TABLE_SUCURSALES);
+        return ids;
+    }
+    
+    private static void bindSucursal(SQLiteStatement stmt, Sucursal sucursal) {
+        bindStringOrNull(stmt, 1, sucursal.getNombre());
+        bindStringOrNull(stmt, 2, sucursal.getDireccion());
+        bindStringOrNull(stmt, 3, sucursal.getTelefono());
+        bindStringOrNull(stmt, 4, sucursal.getHorarioApertura());
+        bindStringOrNull(stmt, 5, sucursal.getHorarioCierre());
+        stmt.bindDouble(6, sucursal.getLatitud());
+        stmt.bindDouble(7, sucursal.getLongitud());
+        bindStringOrNull(stmt, 8, sucursal.getImagenUrl());
+    }
+    
     public Sucursal obtenerSucursalPorId(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
         Sucursal sucursal = null;
@@ -931,42 +1824,34 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return sucursal;
     }
     
     public List<Sucursal> obtenerTodasLasSucursales() {
-        List<Sucursal> sucursales = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_SUCURSALES, null, null, null, null, null, COLUMN_SUCURSAL_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Sucursal sucursal = new Sucursal();
-                sucursal.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                sucursal.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_NOMBRE)));
-                sucursal.setDireccion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_DIRECCION)));
-                sucursal.setTelefono(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_TELEFONO)));
-                sucursal.setHorarioApertura(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_HORARIO_APERTURA)));
-                sucursal.setHorarioCierre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_HORARIO_CIERRE)));
-                sucursal.setLatitud(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_LATITUD)));
-                sucursal.setLongitud(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_LONGITUD)));
-                sucursal.setImagenUrl(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_IMAGEN_URL)));
-                // Mapear estado a bandera activa
-                String estado = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_ESTADO));
-                sucursal.setActiva("activo".equalsIgnoreCase(estado));
-                sucursales.add(sucursal);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
+        return leerTodas(cursor, LECTOR_SUCURSAL);
+    }
+    
+    /**
+     * Sucursales dentro del rectángulo dado (ver {@code IndiceEspacial.cajaLimite}).
+     * Trae también las esquinas de la caja: la distancia exacta se filtra después.
+     */
+    public List<Sucursal> obtenerSucursalesEnCaja(double latMin, double latMax, double lonMin, double lonMax) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        
+        String selection = COLUMN_SUCURSAL_LATITUD + " BETWEEN ? AND ? AND " + COLUMN_SUCURSAL_LONGITUD + " BETWEEN ? AND ?";
+        String[] selectionArgs = {String.valueOf(latMin), String.valueOf(latMax),
+                String.valueOf(lonMin), String.valueOf(lonMax)};
+        
+        Cursor cursor = db.query(TABLE_SUCURSALES, null, selection, selectionArgs, null, null, null);
         
-        db.close();
-        return sucursales;
+        return leerTodas(cursor, LECTOR_SUCURSAL);
     }
     
     public List<Sucursal> obtenerSucursalesActivas() {
-        List<Sucursal> sucursales = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         // Seleccionar por estado 'activo' para evitar columnas inexistentes
@@ -975,28 +1860,7 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         Cursor cursor = db.query(TABLE_SUCURSALES, null, selection, selectionArgs, null, null, COLUMN_SUCURSAL_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Sucursal sucursal = new Sucursal();
-                sucursal.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                sucursal.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_NOMBRE)));
-                sucursal.setDireccion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_DIRECCION)));
-                sucursal.setTelefono(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_TELEFONO)));
-                sucursal.setHorarioApertura(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_HORARIO_APERTURA)));
-                sucursal.setHorarioCierre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_HORARIO_CIERRE)));
-                sucursal.setLatitud(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_LATITUD)));
-                sucursal.setLongitud(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_LONGITUD)));
-                sucursal.setImagenUrl(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_IMAGEN_URL)));
-                // Mapear estado a bandera activa
-                String estado = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_ESTADO));
-                sucursal.setActiva("activo".equalsIgnoreCase(estado));
-                sucursales.add(sucursal);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return sucursales;
+        return leerTodas(cursor, LECTOR_SUCURSAL);
     }
     
     public int actualizarSucursal(Sucursal sucursal) {
@@ -1014,9 +1878,9 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         int rowsAffected = db.update(TABLE_SUCURSALES, values, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(sucursal.getId())});
-        db.close();
         
         Log.d(TAG, "Sucursal actualizada. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_SUCURSALES);
         return rowsAffected;
     }
     
@@ -1024,22 +1888,14 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_SUCURSALES, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(id)});
-        db.close();
         
         Log.d(TAG, "Sucursal eliminada. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_SUCURSALES);
         return rowsAffected;
     }
     
     public int obtenerConteoSucursales() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_SUCURSALES, null);
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
-            cursor.close();
-        }
-        db.close();
-        return count;
+        return contarFilas(TABLE_SUCURSALES);
     }
     
     // MÉTODOS CRUD PARA PRODUCTOS
@@ -1056,12 +1912,52 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_PRODUCTO_IMAGEN_URL, producto.getImagenUrl());
         
         long id = db.insert(TABLE_PRODUCTOS, null, values);
-        db.close();
         
         Log.d(TAG, "Producto insertado con ID: " + id);
+        notificarSi(id, TABLE_PRODUCTOS);
         return id;
     }
     
+    /**
+     * Inserta o actualiza un lote de productos en una sola transacción. Los
+     * productos con ID existente se actualizan; el resto se inserta. Devuelve
+     * el ID resultante de cada producto, o -1 si la fila falló.
+     */
+    public long[] upsertProductos(List<Producto> productos) {
+        long[] ids = new long[productos.size()];
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement update = db.compileStatement(SQL_UPDATE_PRODUCTO);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_PRODUCTO);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Producto producto = productos.get(i);
+                bindProducto(update, producto);
+                bindProducto(insert, producto);
+                ids[i] = ejecutarUpsert(update, insert, 6, producto.getId());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            update.close();
+            insert.close();
+            db.endTransaction();
+        }
+        
+        int exitosas = contarExitosas(ids);
+        Log.d(TAG, "Lote de productos procesado: " + exitosas + " de " + ids.length + " filas");
+        notificarSi(exitosas, TABLE_PRODUCTOS);
+        return ids;
+    }
+    
+    private static void bindProducto(SQLiteStatement stmt, Producto producto) {
+        bindStringOrNull(stmt, 1, producto.getNombre());
+        bindStringOrNull(stmt, 2, producto.getDescripcion());
+        stmt.bindDouble(3, producto.getPrecio());
+        bindStringOrNull(stmt, 4, producto.getCategoria());
+        stmt.bindLong(5, producto.isDisponible() ? 1 : 0);
+        bindStringOrNull(stmt, 6, producto.getImagenUrl());
+    }
+    
     public Producto obtenerProductoPorId(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
         Producto producto = null;
@@ -1081,37 +1977,18 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
             cursor.close();
         }
         
-        db.close();
         return producto;
     }
     
     public List<Producto> obtenerTodosLosProductos() {
-        List<Producto> productos = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_PRODUCTOS, null, null, null, null, null, COLUMN_PRODUCTO_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Producto producto = new Producto();
-                producto.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                producto.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_NOMBRE)));
-                producto.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DESCRIPCION)));
-                producto.setPrecio(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_PRECIO)));
-                producto.setCategoria(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_CATEGORIA)));
-                producto.setDisponible(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DISPONIBLE)) == 1);
-                producto.setImagenUrl(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_IMAGEN_URL)));
-                productos.add(producto);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return productos;
+        return leerTodas(cursor, LECTOR_PRODUCTO);
     }
     
     public List<Producto> obtenerProductosDisponibles() {
-        List<Producto> productos = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         String selection = COLUMN_PRODUCTO_DISPONIBLE + " = ?";
@@ -1119,49 +1996,16 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         Cursor cursor = db.query(TABLE_PRODUCTOS, null, selection, selectionArgs, null, null, COLUMN_PRODUCTO_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Producto producto = new Producto();
-                producto.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                producto.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_NOMBRE)));
-                producto.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DESCRIPCION)));
-                producto.setPrecio(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_PRECIO)));
-                producto.setCategoria(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_CATEGORIA)));
-                producto.setDisponible(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DISPONIBLE)) == 1);
-                producto.setImagenUrl(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_IMAGEN_URL)));
-                productos.add(producto);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return productos;
+        return leerTodas(cursor, LECTOR_PRODUCTO);
     }
     
     public List<Producto> obtenerProductosPorCategoria(String categoria) {
-        List<Producto> productos = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         Cursor cursor = db.query(TABLE_PRODUCTOS, null, COLUMN_PRODUCTO_CATEGORIA + "=?", 
                 new String[]{categoria}, null, null, COLUMN_PRODUCTO_NOMBRE);
         
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Producto producto = new Producto();
-                producto.setId(String.valueOf(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID))));
-                producto.setNombre(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_NOMBRE)));
-                producto.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DESCRIPCION)));
-                producto.setPrecio(cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_PRECIO)));
-                producto.setCategoria(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_CATEGORIA)));
-                producto.setDisponible(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DISPONIBLE)) == 1);
-                producto.setImagenUrl(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_IMAGEN_URL)));
-                productos.add(producto);
-            } while (cursor.moveToNext());
-            cursor.close();
-        }
-        
-        db.close();
-        return productos;
+        return leerTodas(cursor, LECTOR_PRODUCTO);
     }
     
     public int actualizarProducto(Producto producto) {
@@ -1177,9 +2021,9 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         
         int rowsAffected = db.update(TABLE_PRODUCTOS, values, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(producto.getId())});
-        db.close();
         
         Log.d(TAG, "Producto actualizado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_PRODUCTOS);
         return rowsAffected;
     }
     
@@ -1187,22 +2031,54 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         int rowsAffected = db.delete(TABLE_PRODUCTOS, COLUMN_ID + "=?", 
                 new String[]{String.valueOf(id)});
-        db.close();
         
         Log.d(TAG, "Producto eliminado. Filas afectadas: " + rowsAffected);
+        notificarSi(rowsAffected, TABLE_PRODUCTOS);
         return rowsAffected;
     }
     
     public int obtenerConteoProductos() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_PRODUCTOS, null);
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
+        return contarFilas(TABLE_PRODUCTOS);
+    }
+    
+    /**
+     * Conteos del dashboard en una sola ida a la base: cada subconsulta escalar
+     * se resuelve con el índice de su columna de estado (o el de epoch_day para
+     * las visitas), sin materializar filas.
+     *
+     * @param dia día local de las "visitas de hoy" (ver {@link DiaEpoch})
+     */
+    public DashboardStats obtenerEstadisticasDashboard(long dia) {
+        String sql = "SELECT " +
+                "(SELECT COUNT(*) FROM " + TABLE_PRODUCTOS + " WHERE " + COLUMN_PRODUCTO_DISPONIBLE + " = 1), " +
+                "(SELECT COUNT(*) FROM " + TABLE_PRODUCTOS + "), " +
+                "(SELECT COUNT(*) FROM " + TABLE_SUCURSALES + " WHERE " + COLUMN_SUCURSAL_ESTADO + " = 'activo'), " +
+                "(SELECT COUNT(*) FROM " + TABLE_SUCURSALES + "), " +
+                "(SELECT COUNT(*) FROM " + TABLE_BENEFICIOS + " WHERE " + COLUMN_BENEFICIO_ACTIVO + " = 1), " +
+                "(SELECT COUNT(*) FROM " + TABLE_BENEFICIOS + "), " +
+                "(SELECT COUNT(*) FROM " + TABLE_CLIENTES + " WHERE " + COLUMN_CLIENTE_ACTIVO + " = 1), " +
+                "(SELECT COUNT(*) FROM " + TABLE_CLIENTES + "), " +
+                "(SELECT COUNT(*) FROM " + TABLE_VISITAS + " WHERE " + COLUMN_VISITA_DIA + " = ?) + " +
+                "(SELECT IFNULL(SUM(" + COLUMN_RESUMEN_VISITAS + "), 0) FROM " + TABLE_VISITAS_RESUMEN_DIARIO + " WHERE " + COLUMN_VISITA_DIA + " = ?)";
+        DashboardStats stats = new DashboardStats();
+        Cursor cursor = getReadableDatabase().rawQuery(sql, new String[]{String.valueOf(dia), String.valueOf(dia)});
+        try {
+            if (cursor.moveToFirst()) {
+                stats.productosActivos = cursor.getInt(0);
+                stats.totalProductos = cursor.getInt(1);
+                stats.sucursalesActivas = cursor.getInt(2);
+                stats.totalSucursales = cursor.getInt(3);
+                stats.beneficiosActivos = cursor.getInt(4);
+                stats.totalBeneficios = cursor.getInt(5);
+                stats.clientesActivos = cursor.getInt(6);
+                stats.totalClientes = cursor.getInt(7);
+                stats.visitasHoy = cursor.getInt(8);
+            }
+        } finally {
             cursor.close();
         }
-        db.close();
-        return count;
+        stats.calcularDerivados();
+        return stats;
     }
 
     // =====================
@@ -1218,24 +2094,28 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_RESENA_FECHA_CREACION, resena.getFechaCreacion());
         values.put(COLUMN_RESENA_FECHA_ACTUALIZACION, resena.getFechaActualizacion());
         long id = db.insert(TABLE_RESENAS_PRODUCTOS, null, values);
-        db.close();
+        notificarSi(id, TABLE_RESENAS_PRODUCTOS);
         return id;
     }
 
-    public List<ResenaProducto> obtenerResenasProducto(int productoId, int limit, int offset) {
+    /**
+     * Página de reseñas del producto, de la más reciente a la más antigua,
+     * paginada por (fecha_creacion, id).
+     *
+     * @param token token devuelto por la página anterior, o null para la primera
+     */
+    public Pagina<ResenaProducto> obtenerPaginaResenasProducto(int productoId, String token, int tamano) {
+        tamano = Math.max(1, tamano);
+        Cursor cursor = consultarPagina(TABLE_RESENAS_PRODUCTOS, COLUMN_RESENA_PRODUCTO_ID, String.valueOf(productoId),
+                COLUMN_RESENA_FECHA_CREACION, " DESC", "<", token, tamano);
         List<ResenaProducto> lista = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        // Nota: En algunas versiones de SQLite en Android, los parámetros enlazados no se 
-        // manejan bien en LIMIT/OFFSET. Para asegurar compatibilidad, incrustamos los
-        // valores de paginación directamente en la consulta.
-        String sql = "SELECT * FROM " + TABLE_RESENAS_PRODUCTOS +
-                " WHERE " + COLUMN_RESENA_PRODUCTO_ID + " = ?" +
-                " ORDER BY " + COLUMN_RESENA_FECHA_CREACION + " DESC" +
-                " LIMIT " + Math.max(0, limit) +
-                " OFFSET " + Math.max(0, offset);
-        Cursor cursor = db.rawQuery(sql, new String[]{String.valueOf(productoId)});
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
+        String siguiente = null;
+        try {
+            while (cursor.moveToNext()) {
+                if (lista.size() == tamano) {
+                    siguiente = tokenDesdeUltima(cursor, COLUMN_RESENA_FECHA_CREACION);
+                    break;
+                }
                 ResenaProducto r = new ResenaProducto();
                 r.setId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID)));
                 r.setProductoId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_RESENA_PRODUCTO_ID)));
@@ -1245,11 +2125,11 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
                 r.setFechaCreacion(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_RESENA_FECHA_CREACION)));
                 r.setFechaActualizacion(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_RESENA_FECHA_ACTUALIZACION)));
                 lista.add(r);
-            } while (cursor.moveToNext());
+            }
+        } finally {
             cursor.close();
         }
-        db.close();
-        return lista;
+        return new Pagina<>(lista, siguiente);
     }
 
     public int actualizarResenaProducto(ResenaProducto resena) {
@@ -1259,32 +2139,30 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_RESENA_COMENTARIO, resena.getComentario());
         values.put(COLUMN_RESENA_FECHA_ACTUALIZACION, resena.getFechaActualizacion());
         int rows = db.update(TABLE_RESENAS_PRODUCTOS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(resena.getId())});
-        db.close();
+        notificarSi(rows, TABLE_RESENAS_PRODUCTOS);
         return rows;
     }
 
     public int eliminarResenaProducto(int id) {
         SQLiteDatabase db = this.getWritableDatabase();
         int rows = db.delete(TABLE_RESENAS_PRODUCTOS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
+        notificarSi(rows, TABLE_RESENAS_PRODUCTOS);
         return rows;
     }
 
+    /**
+     * Promedio, cantidad e histograma del producto, leídos del resumen por clave primaria.
+     */
     public PromedioCalificacion obtenerPromedioCalificacionProducto(int productoId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(
-                "SELECT AVG(" + COLUMN_RESENA_CALIFICACION + ") AS promedio, COUNT(*) AS cantidad FROM " + TABLE_RESENAS_PRODUCTOS + " WHERE " + COLUMN_RESENA_PRODUCTO_ID + " = ?",
-                new String[]{String.valueOf(productoId)}
-        );
-        double promedio = 0.0;
-        int cantidad = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            promedio = cursor.getDouble(cursor.getColumnIndexOrThrow("promedio"));
-            cantidad = cursor.getInt(cursor.getColumnIndexOrThrow("cantidad"));
-            cursor.close();
-        }
-        db.close();
-        return new PromedioCalificacion(promedio, cantidad);
+        return leerResumenResenas(TABLE_RESUMEN_RESENAS_PRODUCTOS, COLUMN_RESENA_PRODUCTO_ID, productoId);
+    }
+    
+    /**
+     * Resúmenes de todos los productos con reseñas, para mostrar calificaciones
+     * en un listado con una sola consulta. Los productos sin reseñas no aparecen.
+     */
+    public Map<Integer, PromedioCalificacion> obtenerPromediosCalificacionProductos() {
+        return leerResumenesResenas(TABLE_RESUMEN_RESENAS_PRODUCTOS, COLUMN_RESENA_PRODUCTO_ID);
     }
 
     // =====================
@@ -1300,22 +2178,26 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_RESENA_FECHA_CREACION, resena.getFechaCreacion());
         values.put(COLUMN_RESENA_FECHA_ACTUALIZACION, resena.getFechaActualizacion());
         long id = db.insert(TABLE_RESENAS_SUCURSALES, null, values);
-        db.close();
+        notificarSi(id, TABLE_RESENAS_SUCURSALES);
         return id;
     }
 
-    public List<ResenaSucursal> obtenerResenasSucursal(int sucursalId, int limit, int offset) {
+    /**
+     * Página de reseñas de la sucursal, de la más reciente a la más antigua,
+     * paginada por (fecha_creacion, id).
+     */
+    public Pagina<ResenaSucursal> obtenerPaginaResenasSucursal(int sucursalId, String token, int tamano) {
+        tamano = Math.max(1, tamano);
+        Cursor cursor = consultarPagina(TABLE_RESENAS_SUCURSALES, COLUMN_RESENA_SUCURSAL_ID, String.valueOf(sucursalId),
+                COLUMN_RESENA_FECHA_CREACION, " DESC", "<", token, tamano);
         List<ResenaSucursal> lista = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        // Igual que en productos, evitamos parámetros enlazados para LIMIT/OFFSET
-        String sql = "SELECT * FROM " + TABLE_RESENAS_SUCURSALES +
-                " WHERE " + COLUMN_RESENA_SUCURSAL_ID + " = ?" +
-                " ORDER BY " + COLUMN_RESENA_FECHA_CREACION + " DESC" +
-                " LIMIT " + Math.max(0, limit) +
-                " OFFSET " + Math.max(0, offset);
-        Cursor cursor = db.rawQuery(sql, new String[]{String.valueOf(sucursalId)});
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
+        String siguiente = null;
+        try {
+            while (cursor.moveToNext()) {
+                if (lista.size() == tamano) {
+                    siguiente = tokenDesdeUltima(cursor, COLUMN_RESENA_FECHA_CREACION);
+                    break;
+                }
                 ResenaSucursal r = new ResenaSucursal();
                 r.setId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID)));
                 r.setSucursalId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_RESENA_SUCURSAL_ID)));
@@ -1325,11 +2207,11 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
                 r.setFechaCreacion(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_RESENA_FECHA_CREACION)));
                 r.setFechaActualizacion(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_RESENA_FECHA_ACTUALIZACION)));
                 lista.add(r);
-            } while (cursor.moveToNext());
+            }
+        } finally {
             cursor.close();
         }
-        db.close();
-        return lista;
+        return new Pagina<>(lista, siguiente);
     }
 
     public int actualizarResenaSucursal(ResenaSucursal resena) {
@@ -1339,32 +2221,453 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
         values.put(COLUMN_RESENA_COMENTARIO, resena.getComentario());
         values.put(COLUMN_RESENA_FECHA_ACTUALIZACION, resena.getFechaActualizacion());
         int rows = db.update(TABLE_RESENAS_SUCURSALES, values, COLUMN_ID + " = ?", new String[]{String.valueOf(resena.getId())});
-        db.close();
+        notificarSi(rows, TABLE_RESENAS_SUCURSALES);
         return rows;
     }
 
     public int eliminarResenaSucursal(int id) {
         SQLiteDatabase db = this.getWritableDatabase();
         int rows = db.delete(TABLE_RESENAS_SUCURSALES, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
+        notificarSi(rows, TABLE_RESENAS_SUCURSALES);
         return rows;
     }
 
+    /**
+     * Promedio, cantidad e histograma de la sucursal, leídos del resumen por clave primaria.
+     */
     public PromedioCalificacion obtenerPromedioCalificacionSucursal(int sucursalId) {
+        return leerResumenResenas(TABLE_RESUMEN_RESENAS_SUCURSALES, COLUMN_RESENA_SUCURSAL_ID, sucursalId);
+    }
+    
+    public Map<Integer, PromedioCalificacion> obtenerPromediosCalificacionSucursales() {
+        return leerResumenesResenas(TABLE_RESUMEN_RESENAS_SUCURSALES, COLUMN_RESENA_SUCURSAL_ID);
+    }
+    
+    private PromedioCalificacion leerResumenResenas(String tablaResumen, String columnaEntidad, int id) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + tablaResumen +
+                " WHERE " + columnaEntidad + " = ?", new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? filaAPromedio(cursor) : new PromedioCalificacion(0.0, 0);
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    private Map<Integer, PromedioCalificacion> leerResumenesResenas(String tablaResumen, String columnaEntidad) {
+        Map<Integer, PromedioCalificacion> resumenes = new HashMap<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + tablaResumen +
+                " WHERE " + COLUMN_RESUMEN_CANTIDAD + " > 0", null);
+        try {
+            int columnaId = cursor.getColumnIndexOrThrow(columnaEntidad);
+            while (cursor.moveToNext()) {
+                resumenes.put(cursor.getInt(columnaId), filaAPromedio(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return resumenes;
+    }
+    
+    private static PromedioCalificacion filaAPromedio(Cursor cursor) {
+        int cantidad = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_RESUMEN_CANTIDAD));
+        long suma = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_RESUMEN_SUMA));
+        int[] histograma = new int[5];
+        for (int estrellas = 1; estrellas <= 5; estrellas++) {
+            histograma[estrellas - 1] = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_RESUMEN_ESTRELLAS + estrellas));
+        }
+        double promedio = cantidad > 0 ? (double) suma / cantidad : 0.0;
+        return new PromedioCalificacion(promedio, cantidad, histograma);
+    }
+
+    // =====================
+    // Paginación por clave
+    // =====================
+    // Cada página se pide con el token de la anterior, de modo que SQLite salta
+    // directo a la posición por índice en lugar de recorrer un OFFSET creciente.
+    
+    /**
+     * Página de visitas ordenadas por (fecha, id) descendente.
+     *
+     * @param token token devuelto por la página anterior, o null para la primera
+     */
+    public Pagina<Visita> obtenerPaginaVisitas(String token, int tamano) {
+        tamano = Math.max(1, tamano);
+        Cursor cursor = consultarPagina(TABLE_VISITAS, COLUMN_VISITA_FECHA, " DESC", "<", token, tamano);
+        List<Visita> visitas = new ArrayList<>();
+        String siguiente = null;
+        LectorFilas<Visita> lector = LECTOR_VISITA.para(cursor);
+        try {
+            while (cursor.moveToNext()) {
+                if (visitas.size() == tamano) {
+                    siguiente = tokenDesdeUltima(cursor, COLUMN_VISITA_FECHA);
+                    break;
+                }
+                visitas.add(lector.leer(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new Pagina<>(visitas, siguiente);
+    }
+    
+    /**
+     * Página de canjes ordenados por (fecha, id) descendente.
+     */
+    public Pagina<Canje> obtenerPaginaCanjes(String token, int tamano) {
+        tamano = Math.max(1, tamano);
+        Cursor cursor = consultarPagina(TABLE_CANJES, COLUMN_CANJE_FECHA, " DESC", "<", token, tamano);
+        List<Canje> canjes = new ArrayList<>();
+        String siguiente = null;
+        LectorFilas<Canje> lector = LECTOR_CANJE.para(cursor);
+        try {
+            while (cursor.moveToNext()) {
+                if (canjes.size() == tamano) {
+                    siguiente = tokenDesdeUltima(cursor, COLUMN_CANJE_FECHA);
+                    break;
+                }
+                canjes.add(lector.leer(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new Pagina<>(canjes, siguiente);
+    }
+    
+    /**
+     * Página de clientes ordenados por (nombre, id) ascendente.
+     */
+    public Pagina<Cliente> obtenerPaginaClientes(String token, int tamano) {
+        tamano = Math.max(1, tamano);
+        Cursor cursor = consultarPagina(TABLE_CLIENTES, COLUMN_CLIENTE_NOMBRE, "", ">", token, tamano);
+        List<Cliente> clientes = new ArrayList<>();
+        String siguiente = null;
+        LectorFilas<Cliente> lector = LECTOR_CLIENTE.para(cursor);
+        try {
+            while (cursor.moveToNext()) {
+                if (clientes.size() == tamano) {
+                    siguiente = tokenDesdeUltima(cursor, COLUMN_CLIENTE_NOMBRE);
+                    break;
+                }
+                clientes.add(lector.leer(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new Pagina<>(clientes, siguiente);
+    }
+    
+    private Cursor consultarPagina(String tabla, String columnaOrden, String direccion,
+                                   String comparador, String token, int tamano) {
+        return consultarPagina(tabla, null, null, columnaOrden, direccion, comparador, token, tamano);
+    }
+    
+    // Pide tamano + 1 filas: la fila extra solo indica si existe una página más
+    // y aporta la clave de continuación. columnaFiltro es opcional (igualdad).
+    private Cursor consultarPagina(String tabla, String columnaFiltro, String valorFiltro,
+                                   String columnaOrden, String direccion,
+                                   String comparador, String token, int tamano) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(
-                "SELECT AVG(" + COLUMN_RESENA_CALIFICACION + ") AS promedio, COUNT(*) AS cantidad FROM " + TABLE_RESENAS_SUCURSALES + " WHERE " + COLUMN_RESENA_SUCURSAL_ID + " = ?",
-                new String[]{String.valueOf(sucursalId)}
-        );
-        double promedio = 0.0;
-        int cantidad = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            promedio = cursor.getDouble(cursor.getColumnIndexOrThrow("promedio"));
-            cantidad = cursor.getInt(cursor.getColumnIndexOrThrow("cantidad"));
+        List<String> condiciones = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        if (columnaFiltro != null) {
+            condiciones.add(columnaFiltro + " = ?");
+            args.add(valorFiltro);
+        }
+        if (token != null) {
+            // Formato del token: "<id>:<valor de orden>" (el id es numérico, así que
+            // el primer ':' siempre separa ambos campos aunque el valor contenga ':')
+            int separador = token.indexOf(':');
+            condiciones.add("(" + columnaOrden + ", " + COLUMN_ID + ") " + comparador + " (?, ?)");
+            args.add(token.substring(separador + 1));
+            args.add(token.substring(0, separador));
+        }
+        String where = condiciones.isEmpty() ? "" : " WHERE " + TextUtils.join(" AND ", condiciones);
+        String orden = " ORDER BY " + columnaOrden + direccion + ", " + COLUMN_ID + direccion +
+                " LIMIT " + (tamano + 1);
+        return db.rawQuery("SELECT * FROM " + tabla + where + orden, args.toArray(new String[0]));
+    }
+    
+    // El token apunta a la última fila entregada, no a la fila extra
+    private static String tokenDesdeUltima(Cursor cursor, String columnaOrden) {
+        cursor.moveToPrevious();
+        return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)) + ":" +
+                cursor.getString(cursor.getColumnIndexOrThrow(columnaOrden));
+    }
+
+    // =====================
+    // Lectura por streaming
+    // =====================
+    // Para exportar, sincronizar o analizar historiales grandes sin armar una
+    // lista completa: las filas se mapean de a una y el cursor solo retiene su
+    // ventana actual. Orden ascendente por (fecha, id), el natural de un export.
+    
+    /**
+     * Iterador sobre todas las visitas sin compactar. Cerrarlo con try-with-resources.
+     */
+    public IteradorFilas<Visita> iterarVisitas() {
+        return new IteradorFilas<>(getReadableDatabase().query(TABLE_VISITAS, null, null, null, null, null,
+                COLUMN_VISITA_FECHA + ", " + COLUMN_ID), LECTOR_VISITA);
+    }
+    
+    public IteradorFilas<Visita> iterarVisitasEntre(long desde, long hasta) {
+        return new IteradorFilas<>(getReadableDatabase().query(TABLE_VISITAS, null,
+                COLUMN_VISITA_FECHA + " >= ? AND " + COLUMN_VISITA_FECHA + " < ?",
+                new String[]{String.valueOf(desde), String.valueOf(hasta)}, null, null,
+                COLUMN_VISITA_FECHA + ", " + COLUMN_ID), LECTOR_VISITA);
+    }
+    
+    public IteradorFilas<Canje> iterarCanjesEntre(long desde, long hasta) {
+        return new IteradorFilas<>(getReadableDatabase().query(TABLE_CANJES, null,
+                COLUMN_CANJE_FECHA + " >= ? AND " + COLUMN_CANJE_FECHA + " < ?",
+                new String[]{String.valueOf(desde), String.valueOf(hasta)}, null, null,
+                COLUMN_CANJE_FECHA + ", " + COLUMN_ID), LECTOR_CANJE);
+    }
+    
+    public IteradorFilas<Cliente> iterarClientes() {
+        return new IteradorFilas<>(getReadableDatabase().query(TABLE_CLIENTES, null, null, null, null, null,
+                COLUMN_ID), LECTOR_CLIENTE);
+    }
+    
+    /**
+     * Pasa cada visita sin compactar al visitante hasta que devuelva false.
+     *
+     * @return cantidad de visitas entregadas
+     */
+    public int recorrerVisitas(VisitanteFilas<Visita> visitante) {
+        return recorrer(iterarVisitas(), visitante);
+    }
+    
+    public int recorrerVisitasEntre(long desde, long hasta, VisitanteFilas<Visita> visitante) {
+        return recorrer(iterarVisitasEntre(desde, hasta), visitante);
+    }
+    
+    private static <T> int recorrer(IteradorFilas<T> filas, VisitanteFilas<T> visitante) {
+        int entregadas = 0;
+        try {
+            while (filas.hasNext()) {
+                entregadas++;
+                if (!visitante.visitar(filas.next())) {
+                    break;
+                }
+            }
+        } finally {
+            filas.close();
+        }
+        return entregadas;
+    }
+    
+    // Lee todas las filas y cierra el cursor
+    private static <T> List<T> leerTodas(Cursor cursor, LectorFilas.Fabrica<T> fabrica) {
+        List<T> filas = new ArrayList<>(Math.max(0, cursor.getCount()));
+        try {
+            LectorFilas<T> lector = fabrica.para(cursor);
+            while (cursor.moveToNext()) {
+                filas.add(lector.leer(cursor));
+            }
+        } finally {
             cursor.close();
         }
-        db.close();
-        return new PromedioCalificacion(promedio, cantidad);
+        return filas;
+    }
+    
+    // Mapeadores por tabla: los índices de columna se resuelven una vez por cursor
+    
+    private static final LectorFilas.Fabrica<Visita> LECTOR_VISITA = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int clienteId = cursor.getColumnIndexOrThrow(COLUMN_VISITA_CLIENTE_ID);
+        int sucursalId = cursor.getColumnIndexOrThrow(COLUMN_VISITA_SUCURSAL_ID);
+        int fecha = cursor.getColumnIndexOrThrow(COLUMN_VISITA_FECHA);
+        int puntos = cursor.getColumnIndexOrThrow(COLUMN_VISITA_PUNTOS_GANADOS);
+        return c -> {
+            Visita visita = new Visita();
+            visita.setId(String.valueOf(c.getInt(id)));
+            visita.setUserId(c.getString(clienteId));
+            visita.setSucursal(c.getString(sucursalId));
+            visita.setFechaVisita(c.getLong(fecha));
+            visita.setPuntosGanados(c.getInt(puntos));
+            return visita;
+        };
+    };
+    
+    private static final LectorFilas.Fabrica<Canje> LECTOR_CANJE = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int clienteId = cursor.getColumnIndexOrThrow(COLUMN_CANJE_CLIENTE_ID);
+        int beneficioId = cursor.getColumnIndexOrThrow(COLUMN_CANJE_BENEFICIO_ID);
+        int fecha = cursor.getColumnIndexOrThrow(COLUMN_CANJE_FECHA);
+        int puntos = cursor.getColumnIndexOrThrow(COLUMN_CANJE_PUNTOS_UTILIZADOS);
+        int estado = cursor.getColumnIndexOrThrow(COLUMN_CANJE_ESTADO);
+        return c -> {
+            Canje canje = new Canje();
+            canje.setId(String.valueOf(c.getInt(id)));
+            canje.setClienteId(c.getInt(clienteId));
+            canje.setBeneficioId(c.getInt(beneficioId));
+            canje.setFechaCanje(c.getLong(fecha));
+            canje.setPuntosUtilizados(c.getInt(puntos));
+            canje.setEstado(c.getString(estado));
+            return canje;
+        };
+    };
+    
+    private static final LectorFilas.Fabrica<Cliente> LECTOR_CLIENTE = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int nombre = cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_NOMBRE);
+        int email = cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_EMAIL);
+        int telefono = cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_TELEFONO);
+        int password = cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_PASSWORD);
+        int puntos = cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_PUNTOS);
+        int activo = cursor.getColumnIndexOrThrow(COLUMN_CLIENTE_ACTIVO);
+        return c -> {
+            Cliente cliente = new Cliente();
+            cliente.setId(String.valueOf(c.getInt(id)));
+            cliente.setNombre(c.getString(nombre));
+            cliente.setEmail(c.getString(email));
+            cliente.setTelefono(c.getString(telefono));
+            cliente.setPassword(c.getString(password));
+            cliente.setPuntosAcumulados(c.getInt(puntos));
+            cliente.setActivo(c.getInt(activo) == 1);
+            return cliente;
+        };
+    };
+    
+    private static final LectorFilas.Fabrica<Beneficio> LECTOR_BENEFICIO = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int nombre = cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_NOMBRE);
+        int descripcion = cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_DESCRIPCION);
+        int puntosRequeridos = cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_PUNTOS_REQUERIDOS);
+        int tipo = cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_TIPO);
+        int activo = cursor.getColumnIndexOrThrow(COLUMN_BENEFICIO_ACTIVO);
+        return c -> {
+            Beneficio beneficio = new Beneficio();
+            beneficio.setId(String.valueOf(c.getInt(id)));
+            beneficio.setNombre(c.getString(nombre));
+            beneficio.setDescripcion(c.getString(descripcion));
+            beneficio.setVisitasRequeridas(c.getInt(puntosRequeridos));
+            beneficio.setTipo(c.getString(tipo));
+            beneficio.setActivo(c.getInt(activo) == 1);
+            return beneficio;
+        };
+    };
+    
+    private static final LectorFilas.Fabrica<Producto> LECTOR_PRODUCTO = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int nombre = cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_NOMBRE);
+        int descripcion = cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DESCRIPCION);
+        int precio = cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_PRECIO);
+        int categoria = cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_CATEGORIA);
+        int disponible = cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_DISPONIBLE);
+        int imagenUrl = cursor.getColumnIndexOrThrow(COLUMN_PRODUCTO_IMAGEN_URL);
+        return c -> {
+            Producto producto = new Producto();
+            producto.setId(String.valueOf(c.getInt(id)));
+            producto.setNombre(c.getString(nombre));
+            producto.setDescripcion(c.getString(descripcion));
+            producto.setPrecio(c.getDouble(precio));
+            producto.setCategoria(c.getString(categoria));
+            producto.setDisponible(c.getInt(disponible) == 1);
+            producto.setImagenUrl(c.getString(imagenUrl));
+            return producto;
+        };
+    };
+    
+    private static final LectorFilas.Fabrica<Sucursal> LECTOR_SUCURSAL = cursor -> {
+        int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        int nombre = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_NOMBRE);
+        int direccion = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_DIRECCION);
+        int telefono = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_TELEFONO);
+        int apertura = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_HORARIO_APERTURA);
+        int cierre = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_HORARIO_CIERRE);
+        int latitud = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_LATITUD);
+        int longitud = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_LONGITUD);
+        int imagenUrl = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_IMAGEN_URL);
+        int estado = cursor.getColumnIndexOrThrow(COLUMN_SUCURSAL_ESTADO);
+        return c -> {
+            Sucursal sucursal = new Sucursal();
+            sucursal.setId(String.valueOf(c.getInt(id)));
+            sucursal.setNombre(c.getString(nombre));
+            sucursal.setDireccion(c.getString(direccion));
+            sucursal.setTelefono(c.getString(telefono));
+            sucursal.setHorarioApertura(c.getString(apertura));
+            sucursal.setHorarioCierre(c.getString(cierre));
+            sucursal.setLatitud(c.getDouble(latitud));
+            sucursal.setLongitud(c.getDouble(longitud));
+            sucursal.setImagenUrl(c.getString(imagenUrl));
+            sucursal.setActiva("activo".equalsIgnoreCase(c.getString(estado)));
+            return sucursal;
+        };
+    };
+
+    // =====================
+    // Búsqueda de texto completo
+    // =====================
+    // Cada palabra se busca como prefijo e ignorando tildes ("cafe lat" encuentra
+    // "Café Latte"). Sin palabras buscables el resultado es una lista vacía.
+    
+    /**
+     * Productos cuyo nombre o descripción coinciden con el texto.
+     *
+     * @param categoria filtro opcional por categoría exacta (null = todas)
+     */
+    public List<Producto> buscarProductos(String texto, String categoria, int limite) {
+        Cursor cursor = consultarFts(TABLE_PRODUCTOS, TABLE_PRODUCTOS_FTS, texto,
+                COLUMN_PRODUCTO_CATEGORIA, categoria, COLUMN_PRODUCTO_NOMBRE, limite);
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
+        return leerTodas(cursor, LECTOR_PRODUCTO);
+    }
+    
+    /**
+     * Sucursales cuyo nombre o dirección coinciden con el texto.
+     */
+    public List<Sucursal> buscarSucursales(String texto, int limite) {
+        Cursor cursor = consultarFts(TABLE_SUCURSALES, TABLE_SUCURSALES_FTS, texto,
+                null, null, COLUMN_SUCURSAL_NOMBRE, limite);
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
+        return leerTodas(cursor, LECTOR_SUCURSAL);
+    }
+    
+    /**
+     * Clientes cuyo nombre, email o teléfono coinciden con el texto. Si el texto
+     * es solo dígitos se busca por el comienzo o el final del teléfono, sin
+     * importar espacios ni signos ("5691" y "5678" encuentran "+56 9 1234 5678"):
+     * FTS solo compara prefijos de palabra y un LIKE '%...%' recorre la tabla.
+     * Con menos de {@link #MIN_DIGITOS_TELEFONO} dígitos casi todos los números
+     * coinciden, así que se usa FTS como para cualquier otro texto.
+     */
+    public List<Cliente> buscarClientes(String texto, int limite) {
+        String digitos = texto != null ? texto.trim() : "";
+        if (digitos.length() >= MIN_DIGITOS_TELEFONO && TextUtils.isDigitsOnly(digitos)) {
+            Cursor cursor = getReadableDatabase().rawQuery(SQL_BUSCAR_CLIENTES_TELEFONO,
+                    argsBusquedaTelefono(digitos, Math.max(1, limite)));
+            return leerTodas(cursor, LECTOR_CLIENTE);
+        }
+        Cursor cursor = consultarFts(TABLE_CLIENTES, TABLE_CLIENTES_FTS, texto,
+                null, null, COLUMN_CLIENTE_NOMBRE, limite);
+        if (cursor == null) {
+            return new ArrayList<>();
+        }
+        return leerTodas(cursor, LECTOR_CLIENTE);
+    }
+    
+    // Devuelve null si el texto no tiene palabras buscables
+    private Cursor consultarFts(String tabla, String fts, String texto,
+                                String columnaFiltro, String valorFiltro, String columnaOrden, int limite) {
+        String match = TextoBusqueda.consultaFts(texto);
+        if (match == null) {
+            return null;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(match);
+        String sql = "SELECT * FROM " + tabla + " WHERE " + COLUMN_ID + " IN (SELECT docid FROM " + fts +
+                " WHERE " + fts + " MATCH ?)";
+        if (columnaFiltro != null && valorFiltro != null) {
+            sql += " AND " + columnaFiltro + " = ?";
+            args.add(valorFiltro);
+        }
+        sql += " ORDER BY " + columnaOrden + " LIMIT " + Math.max(1, limite);
+        return getReadableDatabase().rawQuery(sql, args.toArray(new String[0]));
     }
 
     // ===============================
@@ -1376,13 +2679,20 @@ public class CafeFidelidadDB extends SQLiteOpenHelper {
      */
     public void reiniciarVisitasCliente(int clienteId) {
         SQLiteDatabase db = this.getWritableDatabase();
+        String[] args = new String[]{String.valueOf(clienteId)};
+        db.beginTransaction();
         try {
-            int filas = db.delete("visitas", "cliente_id = ?", new String[]{String.valueOf(clienteId)});
+            int filas = db.delete(TABLE_VISITAS, COLUMN_VISITA_CLIENTE_ID + " = ?", args);
+            db.delete(TABLE_VISITAS_RESUMEN_DIARIO, COLUMN_VISITA_CLIENTE_ID + " = ?", args);
+            db.execSQL("UPDATE " + TABLE_SELLOS_CLIENTES + " SET " + COLUMN_SELLOS_CANTIDAD + " = 0 WHERE " + COLUMN_SELLOS_CLIENTE_ID + " = ?", args);
+            db.setTransactionSuccessful();
             Log.d(TAG, "✅ Visitas reiniciadas para cliente ID: " + clienteId + ". Filas eliminadas: " + filas);
         } catch (Exception e) {
             Log.e(TAG, "❌ Error al reiniciar visitas del cliente", e);
+            return;
         } finally {
-            db.close();
+            db.endTransaction();
         }
+        invalidaciones.notificarCambio(TABLE_VISITAS, TABLE_SELLOS_CLIENTES);
     }
 }
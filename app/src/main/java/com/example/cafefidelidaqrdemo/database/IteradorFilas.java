@@ -0,0 +1,56 @@
+package com.example.cafefidelidaqrdemo.database;
+
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterador perezoso sobre un cursor: cada {@link #next()} mapea una sola fila,
+ * así que recorrer millones de visitas usa memoria constante (el cursor solo
+ * mantiene su ventana actual). Debe cerrarse, idealmente con try-with-resources;
+ * se cierra solo al llegar al final.
+ *
+ * No es seguro entre hilos: se consume en el hilo que lo creó.
+ */
+public class IteradorFilas<T> implements Iterator<T>, Closeable {
+
+    private final Cursor cursor;
+    private final LectorFilas<T> lector;
+    private boolean avanzado = false;
+    private boolean hayFila = false;
+
+    IteradorFilas(Cursor cursor, LectorFilas.Fabrica<T> fabrica) {
+        this.cursor = cursor;
+        this.lector = fabrica.para(cursor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!avanzado) {
+            hayFila = !cursor.isClosed() && cursor.moveToNext();
+            avanzado = true;
+            if (!hayFila) {
+                close();
+            }
+        }
+        return hayFila;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        avanzado = false;
+        return lector.leer(cursor);
+    }
+
+    @Override
+    public void close() {
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+}
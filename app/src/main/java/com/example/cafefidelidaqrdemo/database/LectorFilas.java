@@ -0,0 +1,21 @@
+package com.example.cafefidelidaqrdemo.database;
+
+import android.database.Cursor;
+
+/**
+ * Convierte la fila actual de un cursor en un objeto. Se obtiene de una
+ * {@link Fabrica} una vez por cursor, de modo que los índices de columna se
+ * resuelven al crearlo y no en cada fila.
+ */
+public interface LectorFilas<T> {
+
+    T leer(Cursor cursor);
+
+    /**
+     * Resuelve los índices de columna de {@code cursor} y devuelve el lector que
+     * los usa.
+     */
+    interface Fabrica<T> {
+        LectorFilas<T> para(Cursor cursor);
+    }
+}
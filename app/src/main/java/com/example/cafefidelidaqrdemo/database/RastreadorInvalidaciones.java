@@ -0,0 +1,118 @@
+package com.example.cafefidelidaqrdemo.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registro de qué tablas cambiaron. {@link CafeFidelidadDB} llama a
+ * {@link #notificarCambio(String...)} después de cada escritura confirmada y
+ * los observadores registrados sobre esas tablas reciben un único aviso por
+ * ráfaga: los cambios que llegan dentro de {@link #VENTANA_MS} se agrupan.
+ *
+ * Los avisos se entregan en el hilo principal. Cada tabla lleva además un
+ * contador de versión, para que quien dejó de observar sepa al volver si se
+ * perdió algún cambio.
+ */
+public class RastreadorInvalidaciones {
+
+    // Nombres de tabla que se pueden observar
+    public static final String CLIENTES = "clientes";
+    public static final String PRODUCTOS = "productos";
+    public static final String SUCURSALES = "sucursales";
+    public static final String BENEFICIOS = "beneficios";
+    public static final String VISITAS = "visitas";
+    public static final String CANJES = "canjes";
+    public static final String SELLOS_CLIENTES = "sellos_clientes";
+    public static final String RESENAS_PRODUCTOS = "resenas_productos";
+    public static final String RESENAS_SUCURSALES = "resenas_sucursales";
+
+    static final long VENTANA_MS = 100;
+
+    /**
+     * Recibe las tablas que cambiaron desde el aviso anterior (solo las que
+     * el observador pidió).
+     */
+    public interface Observador {
+        void onInvalidado(Set<String> tablas);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<Observador, Set<String>> observadores = new LinkedHashMap<>();
+    private final Map<String, Long> versiones = new HashMap<>();
+    private final Set<String> pendientes = new HashSet<>();
+    private boolean avisoProgramado = false;
+
+    private final Runnable avisar = this::avisarPendientes;
+
+    public synchronized void agregarObservador(Observador observador, String... tablas) {
+        Set<String> interes = new HashSet<>();
+        Collections.addAll(interes, tablas);
+        observadores.put(observador, interes);
+    }
+
+    public synchronized void quitarObservador(Observador observador) {
+        observadores.remove(observador);
+    }
+
+    /**
+     * Marca las tablas como modificadas. Puede llamarse desde cualquier hilo,
+     * pero siempre después de confirmar la transacción: el aviso dispara
+     * relecturas que deben ver los datos nuevos.
+     */
+    public synchronized void notificarCambio(String... tablas) {
+        for (String tabla : tablas) {
+            Long version = versiones.get(tabla);
+            versiones.put(tabla, version == null ? 1 : version + 1);
+            pendientes.add(tabla);
+        }
+        if (!avisoProgramado && !observadores.isEmpty()) {
+            avisoProgramado = true;
+            handler.postDelayed(avisar, VENTANA_MS);
+        }
+    }
+
+    /**
+     * Suma de las versiones de las tablas indicadas. Solo crece, así que si
+     * cambió entre dos lecturas alguna de las tablas fue modificada.
+     */
+    public synchronized long version(String... tablas) {
+        long total = 0;
+        for (String tabla : tablas) {
+            Long version = versiones.get(tabla);
+            if (version != null) {
+                total += version;
+            }
+        }
+        return total;
+    }
+
+    private void avisarPendientes() {
+        List<Observador> destinatarios = new ArrayList<>();
+        List<Set<String>> cambios = new ArrayList<>();
+        synchronized (this) {
+            avisoProgramado = false;
+            for (Map.Entry<Observador, Set<String>> entrada : observadores.entrySet()) {
+                Set<String> tocadas = new HashSet<>(entrada.getValue());
+                tocadas.retainAll(pendientes);
+                if (!tocadas.isEmpty()) {
+                    destinatarios.add(entrada.getKey());
+                    cambios.add(tocadas);
+                }
+            }
+            pendientes.clear();
+        }
+        // Fuera del lock: el observador puede registrarse o quitarse al recibirlo
+        for (int i = 0; i < destinatarios.size(); i++) {
+            destinatarios.get(i).onInvalidado(cambios.get(i));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.cafefidelidaqrdemo.database;
+
+/**
+ * Recibe las filas de un recorrido de una en una, sin acumularlas.
+ */
+public interface VisitanteFilas<T> {
+
+    /**
+     * @return false para detener el recorrido
+     */
+    boolean visitar(T fila);
+}
@@ -26,6 +26,7 @@ import com.example.cafefidelidaqrdemo.adapters.SucursalesAdapter;
 import com.example.cafefidelidaqrdemo.DetalleSucursalActivity;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
 import com.example.cafefidelidaqrdemo.repository.SucursalRepository;
+import com.example.cafefidelidaqrdemo.utils.SearchManager;
 import com.example.cafefidelidaqrdemo.viewmodels.SucursalesViewModel;
 // import com.google.android.gms.location.FusedLocationProviderClient;
 // import com.google.android.gms.location.LocationServices;
@@ -37,7 +38,10 @@ import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.textview.MaterialTextView;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class FragmentSucursales extends Fragment {
     
@@ -66,6 +70,7 @@ public class FragmentSucursales extends Fragment {
     private String queryBusqueda = "";
     private List<Sucursal> sucursalesOriginales = new ArrayList<>();
     private Location userLocation;
+    private final SearchManager searchManager = new SearchManager();
     private boolean locationPermissionGranted = false;
     
     @Override
@@ -408,35 +413,18 @@ public class FragmentSucursales extends Fragment {
         
         // Ordenar según criterio seleccionado
         if ("distancia".equals(ordenSeleccionado) && userLocation != null) {
-            // TODO: Implementar ordenamiento por distancia cuando getSucursalesWithDistance esté disponible
-            // Por ahora, usar ordenamiento por nombre
-            sucursalesFiltradas.sort((a, b) -> a.getNombre().compareToIgnoreCase(b.getNombre()));
-            
+            // El índice espacial se arma sobre la lista completa y se reutiliza
+            // mientras no llegue otra; los filtros se aplican sobre el orden resultante
+            Set<Sucursal> visibles = Collections.newSetFromMap(new IdentityHashMap<>());
+            visibles.addAll(sucursalesFiltradas);
             List<SucursalesAdapter.SucursalItem> items = new ArrayList<>();
-            for (Sucursal sucursal : sucursalesFiltradas) {
-                items.add(new SucursalesAdapter.SucursalItem(sucursal, null));
+            for (SearchManager.SucursalWithDistance item : searchManager.sortByDistance(
+                    sucursalesOriginales, userLocation.getLatitude(), userLocation.getLongitude())) {
+                if (visibles.contains(item.getSucursal())) {
+                    items.add(new SucursalesAdapter.SucursalItem(item.getSucursal(), item.getDistance()));
+                }
             }
-            adapter.submitList(items);
-            
-            /*
-            viewModel.getSucursalesWithDistance(userLocation.getLatitude(), 
-                userLocation.getLongitude(), new SucursalesViewModel.DistanceCallback() {
-                    @Override
-                    public void onSuccess(List<Sucursal> sucursales) {
-                        // Convertir Sucursal a SucursalesAdapter.SucursalItem
-                        List<SucursalesAdapter.SucursalItem> items = new ArrayList<>();
-                        for (Sucursal entity : sucursales) {
-                            items.add(new SucursalesAdapter.SucursalItem(entity, 0.0)); // Distancia ya calculada
-                        }
-                        adapter.submitListWithDistance(items);
-                    }
-                    
-                    @Override
-                    public void onError(String error) {
-                        showError(error);
-                    }
-                });
-            */
+            adapter.submitListWithDistance(items);
         } else {
             // Ordenar por nombre
             sucursalesFiltradas.sort((a, b) -> a.getNombre().compareToIgnoreCase(b.getNombre()));
@@ -18,11 +18,20 @@ import java.util.Date;
 public class BeneficioManager {
 
     private Context context;
+    // Se crea al primer canje y se reutiliza en los siguientes
+    private com.example.cafefidelidaqrdemo.repository.CanjeRepository canjeRepository;
 
     public BeneficioManager(Context context) {
         this.context = context;
     }
 
+    private synchronized com.example.cafefidelidaqrdemo.repository.CanjeRepository getCanjeRepository() {
+        if (canjeRepository == null) {
+            canjeRepository = new com.example.cafefidelidaqrdemo.repository.CanjeRepository(context);
+        }
+        return canjeRepository;
+    }
+
     /**
      * Evalúa y activa beneficios automáticamente basado en las visitas del cliente.
      */
@@ -173,6 +182,13 @@ public class BeneficioManager {
     public boolean verificarBeneficioPorSellos(List<Visita> visitas, int sellosRequeridos) {
         if (visitas == null) return false;
         int sellosActuales = visitas.size(); // cada compra = 1 sello
+        return verificarBeneficioPorSellos(sellosActuales, sellosRequeridos);
+    }
+
+    /**
+     * Variante con el saldo ya calculado (p. ej. CafeFidelidadDB.obtenerSellosCliente).
+     */
+    public boolean verificarBeneficioPorSellos(int sellosActuales, int sellosRequeridos) {
         return sellosActuales >= sellosRequeridos;
     }
 
@@ -181,7 +197,11 @@ public class BeneficioManager {
      */
     public int obtenerSellosRestantes(List<Visita> visitas, int sellosRequeridos) {
         int actuales = (visitas == null) ? 0 : visitas.size();
-        return Math.max(0, sellosRequeridos - actuales);
+        return obtenerSellosRestantes(actuales, sellosRequeridos);
+    }
+
+    public int obtenerSellosRestantes(int sellosActuales, int sellosRequeridos) {
+        return Math.max(0, sellosRequeridos - sellosActuales);
     }
 
     // -------------------------------
@@ -261,11 +281,19 @@ public class BeneficioManager {
 // 🔹 Registra un canje basado en el sistema de sellos digitales
 // ---------------------------------------------------------------------
     public void registrarCanjePorSellos(int clienteId, int totalSellos) {
+        registrarCanjePorSellos(clienteId, totalSellos, null);
+    }
+
+    /**
+     * Igual que {@link #registrarCanjePorSellos(int, int)}, notificando el resultado.
+     * El callback se invoca desde un hilo de fondo.
+     */
+    public void registrarCanjePorSellos(int clienteId, int totalSellos,
+                                        com.example.cafefidelidaqrdemo.repository.CanjeRepository.OnResultCallback<Boolean> callback) {
         try {
             // Simulación de beneficio por sellos
             String beneficioId = "1"; // ID fijo o lógico según tu sistema
-            com.example.cafefidelidaqrdemo.repository.CanjeRepository canjeRepository =
-                    new com.example.cafefidelidaqrdemo.repository.CanjeRepository(context);
+            com.example.cafefidelidaqrdemo.repository.CanjeRepository canjeRepository = getCanjeRepository();
 
             // Registrar el canje usando la lógica del repositorio
             canjeRepository.registrarCanjePorSellos(
@@ -278,11 +306,13 @@ public class BeneficioManager {
                         } else {
                             android.util.Log.w("BeneficioManager", "⚠️ No se pudo registrar el canje por sellos");
                         }
+                        if (callback != null) callback.onResult(result);
                     }
             );
 
         } catch (Exception e) {
             android.util.Log.e("BeneficioManager", "Error al registrar canje por sellos", e);
+            if (callback != null) callback.onResult(false);
         }
     }
 
@@ -33,6 +33,21 @@ public class Cliente {
         this.puntosAcumulados = 0;
     }
 
+    // Constructor de copia
+    public Cliente(Cliente otro) {
+        this.id = otro.id;
+        this.nombre = otro.nombre;
+        this.email = otro.email;
+        this.password = otro.password;
+        this.telefono = otro.telefono;
+        this.estado = otro.estado;
+        this.fechaCreacion = otro.fechaCreacion;
+        this.fechaActualizacion = otro.fechaActualizacion;
+        this.totalVisitas = otro.totalVisitas;
+        this.puntosAcumulados = otro.puntosAcumulados;
+        this.activo = otro.activo;
+    }
+
     // Getters y Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
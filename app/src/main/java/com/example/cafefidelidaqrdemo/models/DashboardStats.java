@@ -0,0 +1,48 @@
+package com.example.cafefidelidaqrdemo.models;
+
+/**
+ * Foto de las estadísticas del dashboard de administración, obtenida con una
+ * sola consulta agregada (ver CafeFidelidadDB.obtenerEstadisticasDashboard).
+ */
+public class DashboardStats {
+    public int totalProductos;
+    public int productosActivos;
+    public int productosInactivos;
+    public float porcentajeProductosActivos;
+
+    public int totalSucursales;
+    public int sucursalesActivas;
+    public int sucursalesInactivas;
+    public float porcentajeSucursalesActivas;
+
+    public int totalBeneficios;
+    public int beneficiosActivos;
+    public int beneficiosInactivos;
+    public float porcentajeBeneficiosActivos;
+
+    public int totalClientes;
+    public int clientesActivos;
+    public int clientesInactivos;
+
+    public int visitasHoy;
+
+    public long ultimaActualizacion = System.currentTimeMillis();
+
+    /**
+     * Completa inactivos y porcentajes a partir de activos y totales.
+     */
+    public void calcularDerivados() {
+        productosInactivos = totalProductos - productosActivos;
+        sucursalesInactivas = totalSucursales - sucursalesActivas;
+        beneficiosInactivos = totalBeneficios - beneficiosActivos;
+        clientesInactivos = totalClientes - clientesActivos;
+
+        porcentajeProductosActivos = porcentaje(productosActivos, totalProductos);
+        porcentajeSucursalesActivas = porcentaje(sucursalesActivas, totalSucursales);
+        porcentajeBeneficiosActivos = porcentaje(beneficiosActivos, totalBeneficios);
+    }
+
+    private static float porcentaje(int parte, int total) {
+        return total > 0 ? (parte * 100.0f) / total : 0;
+    }
+}
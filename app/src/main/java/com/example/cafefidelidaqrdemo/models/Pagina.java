@@ -0,0 +1,24 @@
+package com.example.cafefidelidaqrdemo.models;
+
+import java.util.List;
+
+/**
+ * Página de resultados de una consulta paginada por clave (keyset).
+ * El token es opaco: se devuelve tal cual para pedir la página siguiente
+ * y es null cuando no quedan más filas.
+ */
+public class Pagina<T> {
+    private final List<T> items;
+    private final String siguienteToken;
+
+    public Pagina(List<T> items, String siguienteToken) {
+        this.items = items;
+        this.siguienteToken = siguienteToken;
+    }
+
+    public List<T> getItems() { return items; }
+
+    public String getSiguienteToken() { return siguienteToken; }
+
+    public boolean hayMas() { return siguienteToken != null; }
+}
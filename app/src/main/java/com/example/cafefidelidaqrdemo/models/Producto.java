@@ -34,6 +34,22 @@ public class Producto {
         this.fechaActualizacion = System.currentTimeMillis();
     }
 
+    // Constructor de copia
+    public Producto(Producto otro) {
+        this.id = otro.id;
+        this.nombre = otro.nombre;
+        this.descripcion = otro.descripcion;
+        this.precio = otro.precio;
+        this.categoria = otro.categoria;
+        this.imagenUrl = otro.imagenUrl;
+        this.estado = otro.estado;
+        this.disponible = otro.disponible;
+        this.stock = otro.stock;
+        this.puntosRequeridos = otro.puntosRequeridos;
+        this.fechaCreacion = otro.fechaCreacion;
+        this.fechaActualizacion = otro.fechaActualizacion;
+    }
+
     // Getters y Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
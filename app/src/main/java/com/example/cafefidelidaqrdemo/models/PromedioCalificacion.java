@@ -3,6 +3,8 @@ package com.example.cafefidelidaqrdemo.models;
 public class PromedioCalificacion {
     private double promedio;
     private int cantidad;
+    // histograma[0] = reseñas de 1 estrella ... histograma[4] = reseñas de 5 estrellas
+    private int[] histograma = new int[5];
 
     public PromedioCalificacion() {}
 
@@ -11,9 +13,26 @@ public class PromedioCalificacion {
         this.cantidad = cantidad;
     }
 
+    public PromedioCalificacion(double promedio, int cantidad, int[] histograma) {
+        this.promedio = promedio;
+        this.cantidad = cantidad;
+        this.histograma = histograma;
+    }
+
     public double getPromedio() { return promedio; }
     public void setPromedio(double promedio) { this.promedio = promedio; }
 
     public int getCantidad() { return cantidad; }
     public void setCantidad(int cantidad) { this.cantidad = cantidad; }
-}
\ No newline at end of file
+
+    public int[] getHistograma() { return histograma; }
+    public void setHistograma(int[] histograma) { this.histograma = histograma; }
+
+    /**
+     * Cantidad de reseñas con exactamente {@code estrellas} (1 a 5).
+     */
+    public int getCantidadConEstrellas(int estrellas) {
+        if (estrellas < 1 || estrellas > 5) return 0;
+        return histograma[estrellas - 1];
+    }
+}
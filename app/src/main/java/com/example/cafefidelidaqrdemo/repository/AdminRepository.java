@@ -3,20 +3,28 @@ package com.example.cafefidelidaqrdemo.repository;
 import android.content.Context;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
 import com.example.cafefidelidaqrdemo.models.Beneficio;
+import com.example.cafefidelidaqrdemo.models.DashboardStats;
 import com.example.cafefidelidaqrdemo.models.Producto;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
 import com.example.cafefidelidaqrdemo.models.RecentActivity;
 import com.example.cafefidelidaqrdemo.network.ApiService;
 import com.example.cafefidelidaqrdemo.network.RetrofitClient;
+import com.example.cafefidelidaqrdemo.repository.base.ConsultasCompartidas;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.FlujosConsulta;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataCancelable;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataTablas;
 import com.example.cafefidelidaqrdemo.ui.admin.viewmodels.AdminDashboardViewModel.SystemHealth;
+import com.example.cafefidelidaqrdemo.utils.DiaEpoch;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * Repository para operaciones administrativas CRUD
@@ -24,101 +32,96 @@ import java.util.concurrent.Executors;
  */
 public class AdminRepository {
     
+    private static final int LIMITE_BUSQUEDA = 200;
     private final CafeFidelidadDB database;
     private final ApiService apiService;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final Executor fondo;
     
     // LiveData para observar cambios
     private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
     private final MutableLiveData<String> successMessage = new MutableLiveData<>();
 
-    // LiveData persistentes para sucursales (lista y conteos)
-    private final MutableLiveData<List<Sucursal>> allSucursalesLiveData = new MutableLiveData<>(new ArrayList<>());
-    private final MutableLiveData<Integer> countSucursalesActivasLiveData = new MutableLiveData<>(0);
-    private final MutableLiveData<Integer> countSucursalesInactivasLiveData = new MutableLiveData<>(0);
+    // LiveData persistentes para sucursales: la lista se recarga solo cuando cambia
+    // la tabla y hay observadores; los conteos se derivan de la misma lista
+    private final LiveDataTablas<List<Sucursal>> allSucursalesLiveData;
+    // Lecturas simultáneas idénticas (p. ej. varias pestañas) comparten una consulta
+    private final ConsultasCompartidas consultas;
+    // Listas y estadísticas observables: una sola por clave en todo el proceso
+    private final FlujosConsulta flujos;
+    private final CatalogoProductos catalogo;
+    private final LiveData<Integer> countSucursalesActivasLiveData;
+    private final LiveData<Integer> countSucursalesInactivasLiveData;
     
     public AdminRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+    
+    public AdminRepository(Context context, EjecutorTareas ejecutor) {
         this.database = CafeFidelidadDB.getInstance(context);
         this.apiService = RetrofitClient.getInstance(context).getApiService();
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.fondo = ejecutor.fondo();
+        this.consultas = ConsultasCompartidas.getInstance(context);
+        this.flujos = FlujosConsulta.getInstance(context);
+        this.catalogo = CatalogoProductos.getInstance(context);
+        this.allSucursalesLiveData = new LiveDataTablas<>(database.getInvalidaciones(), executor,
+                this::refreshSucursalesLiveData, RastreadorInvalidaciones.SUCURSALES);
+        this.countSucursalesActivasLiveData = Transformations.map(allSucursalesLiveData,
+                todas -> contarSucursalesActivas(todas));
+        this.countSucursalesInactivasLiveData = Transformations.map(allSucursalesLiveData,
+                todas -> todas.size() - contarSucursalesActivas(todas));
     }
     
     // ========== GESTIÓN DE PRODUCTOS ==========
     
     /**
-     * Obtiene todos los productos
+     * Obtiene todos los productos. Todas las llamadas comparten el mismo flujo,
+     * que se relee al cambiar la tabla.
      */
     public LiveData<List<Producto>> getAllProductos() {
-        MutableLiveData<List<Producto>> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                List<Producto> productos = database.obtenerTodosLosProductos();
-                result.postValue(productos);
-            } catch (Exception e) {
-                errorMessage.postValue("Error al obtener productos: " + e.getMessage());
-                result.postValue(null);
-            }
-        });
-        return result;
+        return flujos.obtener("productos.todos", catalogo::todos, RastreadorInvalidaciones.PRODUCTOS);
     }
     
     /**
      * Obtiene productos activos (disponibles)
      */
     public LiveData<List<Producto>> getProductosActivos() {
-        MutableLiveData<List<Producto>> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                List<Producto> productos = database.obtenerProductosDisponibles();
-                result.postValue(productos);
-            } catch (Exception e) {
-                errorMessage.postValue("Error al obtener productos activos: " + e.getMessage());
-                result.postValue(null);
-            }
-        });
-        return result;
+        return flujos.obtener("productos.disponibles", catalogo::disponibles, RastreadorInvalidaciones.PRODUCTOS);
     }
 
     /**
-     * Obtiene un producto por ID
+     * Obtiene un producto por ID. La lectura se descarta si nadie la observa
+     * cuando le toca ejecutarse.
      */
     public LiveData<Producto> getProductoById(long id) {
-        MutableLiveData<Producto> result = new MutableLiveData<>();
-        executor.execute(() -> {
+        return new LiveDataCancelable<>(executor, senal -> {
             try {
-                Producto producto = database.obtenerProductoPorId((int) id);
-                result.postValue(producto);
-            } catch (Exception e) {
-                result.postValue(null);
+                return catalogo.porId((int) id);
+            } catch (RuntimeException e) {
                 errorMessage.postValue("Error al obtener producto: " + e.getMessage());
+                return null;
             }
-        });
-        return result;
+        }, null);
     }
 
     /**
-     * Busca productos por nombre
+     * Busca productos por nombre o descripción en el índice FTS (por prefijo y
+     * sin tildes). Va directo a la base para que el panel vea lo recién guardado.
      */
     public LiveData<List<Producto>> buscarProductos(String nombre) {
         MutableLiveData<List<Producto>> result = new MutableLiveData<>();
         executor.execute(() -> {
             try {
                 if (nombre == null || nombre.trim().isEmpty()) {
-                    List<Producto> productos = database.obtenerTodosLosProductos();
-                    result.postValue(productos);
+                    result.postValue(catalogo.todos());
                     return;
                 }
                 
-                // Implementar búsqueda por nombre en la base de datos
-                List<Producto> productos = database.obtenerTodosLosProductos();
-                List<Producto> filtrados = new java.util.ArrayList<>();
-                for (Producto producto : productos) {
-                    if (producto.getNombre().toLowerCase().contains(nombre.toLowerCase())) {
-                        filtrados.add(producto);
-                    }
-                }
-                result.postValue(filtrados);
+                result.postValue(database.buscarProductos(nombre, null, LIMITE_BUSQUEDA));
             } catch (Exception e) {
                 result.postValue(new java.util.ArrayList<>());
                 errorMessage.postValue("Error al buscar productos: " + e.getMessage());
@@ -132,7 +135,7 @@ public class AdminRepository {
      */
     public void crearProducto(Producto producto, AdminCallback<Producto> callback) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Validar producto
                 if (!validarProducto(producto)) {
@@ -163,7 +166,7 @@ public class AdminRepository {
      */
     public void actualizarProducto(Producto producto, AdminCallback<Producto> callback) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarProducto(producto)) {
                     callback.onError("Datos del producto inválidos");
@@ -192,7 +195,7 @@ public class AdminRepository {
      */
     public void eliminarProducto(long productoId, AdminCallback<Boolean> callback) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rowsAffected = database.eliminarProducto((int) productoId);
                 if (rowsAffected > 0) {
@@ -215,7 +218,7 @@ public class AdminRepository {
      */
     public void actualizarStockProducto(String productoId, int nuevoStock, String motivo) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int id = Integer.parseInt(productoId);
                 Producto producto = database.obtenerProductoPorId(id);
@@ -246,8 +249,6 @@ public class AdminRepository {
      * Obtiene todas las sucursales
      */
     public LiveData<List<Sucursal>> getAllSucursales() {
-        // Devolver LiveData persistente y refrescar en background
-        refreshSucursalesLiveData();
         return allSucursalesLiveData;
     }
     
@@ -258,7 +259,8 @@ public class AdminRepository {
         MutableLiveData<Sucursal> result = new MutableLiveData<>();
         executor.execute(() -> {
             try {
-                Sucursal sucursal = database.obtenerSucursalPorId((int) id);
+                Sucursal sucursal = consultas.obtener("sucursal:" + id,
+                        () -> database.obtenerSucursalPorId((int) id), RastreadorInvalidaciones.SUCURSALES);
                 result.postValue(sucursal);
             } catch (Exception e) {
                 result.postValue(null);
@@ -273,7 +275,7 @@ public class AdminRepository {
      */
     public void crearSucursal(Sucursal sucursal, AdminCallback<Sucursal> callback) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarSucursal(sucursal)) {
                     callback.onError("Datos de la sucursal inválidos");
@@ -286,8 +288,6 @@ public class AdminRepository {
                     sucursal.setId(String.valueOf(id));
                     callback.onSuccess(sucursal);
                     successMessage.postValue("Sucursal creada exitosamente");
-                    // Refrescar lista y conteos para notificar a observadores
-                    refreshSucursalesLiveData();
                 } else {
                     callback.onError("Error al crear sucursal");
                 }
@@ -305,7 +305,7 @@ public class AdminRepository {
      */
     public void actualizarSucursal(Sucursal sucursal, AdminCallback<Sucursal> callback) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarSucursal(sucursal)) {
                     callback.onError("Datos de la sucursal inválidos");
@@ -335,36 +335,20 @@ public class AdminRepository {
      * Obtiene todos los beneficios
      */
     public LiveData<List<Beneficio>> getAllBeneficios() {
-        MutableLiveData<List<Beneficio>> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                List<com.example.cafefidelidaqrdemo.models.Beneficio> dbBeneficios = database.obtenerTodosLosBeneficios();
-                List<Beneficio> beneficios = convertFromDBBeneficioList(dbBeneficios);
-                result.postValue(beneficios);
-            } catch (Exception e) {
-                errorMessage.postValue("Error al obtener beneficios: " + e.getMessage());
-                result.postValue(null);
-            }
-        });
-        return result;
+        return flujos.obtener("admin.beneficios.todos", () -> convertFromDBBeneficioList(
+                consultas.obtener("beneficios.todos", database::obtenerTodosLosBeneficios,
+                        RastreadorInvalidaciones.BENEFICIOS)),
+                RastreadorInvalidaciones.BENEFICIOS);
     }
     
     /**
      * Obtiene beneficios activos
      */
     public LiveData<List<Beneficio>> getBeneficiosActivos() {
-        MutableLiveData<List<Beneficio>> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                List<com.example.cafefidelidaqrdemo.models.Beneficio> dbBeneficios = database.obtenerBeneficiosActivos();
-                List<Beneficio> beneficios = convertFromDBBeneficioList(dbBeneficios);
-                result.postValue(beneficios);
-            } catch (Exception e) {
-                errorMessage.postValue("Error al obtener beneficios activos: " + e.getMessage());
-                result.postValue(null);
-            }
-        });
-        return result;
+        return flujos.obtener("admin.beneficios.activos", () -> convertFromDBBeneficioList(
+                consultas.obtener("beneficios.activos", database::obtenerBeneficiosActivos,
+                        RastreadorInvalidaciones.BENEFICIOS)),
+                RastreadorInvalidaciones.BENEFICIOS);
     }
     
     /**
@@ -372,7 +356,7 @@ public class AdminRepository {
      */
     public void crearBeneficio(Beneficio beneficio, AdminCallback<Beneficio> callback) {
         isLoading.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarBeneficio(beneficio)) {
                     callback.onError("Datos del beneficio inválidos");
@@ -435,52 +419,50 @@ public class AdminRepository {
     
     // ========== MÉTODOS DE CONTEO ==========
     
+    /**
+     * Estadísticas del dashboard en una sola consulta (bloqueante, usar en segundo plano).
+     */
+    public DashboardStats getDashboardStatsSync() {
+        return database.obtenerEstadisticasDashboard(DiaEpoch.hoy());
+    }
+    
+    /**
+     * Flujo compartido de estadísticas: se relee solo cuando cambia alguna de
+     * las tablas contadas o cambia el día. Los contadores individuales
+     * (getCount*) se derivan de esta misma foto.
+     */
+    public LiveData<DashboardStats> getDashboardStats() {
+        return flujoDashboardStats();
+    }
+    
+    public void refrescarDashboardStats() {
+        flujoDashboardStats().recargar();
+    }
+    
+    private LiveDataTablas<DashboardStats> flujoDashboardStats() {
+        long hoy = DiaEpoch.hoy();
+        return flujos.obtener("dashboard:" + hoy, () -> database.obtenerEstadisticasDashboard(hoy),
+                RastreadorInvalidaciones.PRODUCTOS, RastreadorInvalidaciones.SUCURSALES,
+                RastreadorInvalidaciones.BENEFICIOS, RastreadorInvalidaciones.CLIENTES,
+                RastreadorInvalidaciones.VISITAS);
+    }
+    
     public LiveData<Integer> getCountProductos() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int count = database.obtenerConteoProductos();
-                result.postValue(count);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.totalProductos);
     }
     
     public LiveData<Integer> getCountProductosActivos() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                List<Producto> productos = database.obtenerProductosDisponibles();
-                result.postValue(productos != null ? productos.size() : 0);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.productosActivos);
     }
     
     public LiveData<Integer> getCountProductosInactivos() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int total = database.obtenerConteoProductos();
-                List<Producto> activos = database.obtenerProductosDisponibles();
-                int activosCount = activos != null ? activos.size() : 0;
-                result.postValue(total - activosCount);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.productosInactivos);
     }
     
     // Métodos síncronos para estadísticas
     public int getCountProductosActivosSync() {
         try {
-            List<Producto> productos = database.obtenerProductosDisponibles();
-            return productos != null ? productos.size() : 0;
+            return getDashboardStatsSync().productosActivos;
         } catch (Exception e) {
             return 0;
         }
@@ -488,10 +470,7 @@ public class AdminRepository {
     
     public int getCountProductosInactivosSync() {
         try {
-            int total = database.obtenerConteoProductos();
-            List<Producto> activos = database.obtenerProductosDisponibles();
-            int activosCount = activos != null ? activos.size() : 0;
-            return total - activosCount;
+            return getDashboardStatsSync().productosInactivos;
         } catch (Exception e) {
             return 0;
         }
@@ -499,21 +478,16 @@ public class AdminRepository {
     
     // Métodos de conteo para sucursales
     public LiveData<Integer> getCountSucursalesActivas() {
-        // Devolver LiveData persistente y refrescar en background
-        refreshSucursalesLiveData();
         return countSucursalesActivasLiveData;
     }
     
     public LiveData<Integer> getCountSucursalesInactivas() {
-        // Devolver LiveData persistente y refrescar en background
-        refreshSucursalesLiveData();
         return countSucursalesInactivasLiveData;
     }
     
     public int getCountSucursalesActivasSync() {
         try {
-            List<Sucursal> sucursales = database.obtenerSucursalesActivas();
-            return sucursales != null ? sucursales.size() : 0;
+            return getDashboardStatsSync().sucursalesActivas;
         } catch (Exception e) {
             return 0;
         }
@@ -521,10 +495,7 @@ public class AdminRepository {
     
     public int getCountSucursalesInactivasSync() {
         try {
-            int total = database.obtenerConteoSucursales();
-            List<Sucursal> activas = database.obtenerSucursalesActivas();
-            int activasCount = activas != null ? activas.size() : 0;
-            return total - activasCount;
+            return getDashboardStatsSync().sucursalesInactivas;
         } catch (Exception e) {
             return 0;
         }
@@ -532,37 +503,16 @@ public class AdminRepository {
     
     // Métodos de conteo para beneficios
     public LiveData<Integer> getCountBeneficiosActivos() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                List<com.example.cafefidelidaqrdemo.models.Beneficio> dbBeneficios = database.obtenerBeneficiosActivos();
-                result.postValue(dbBeneficios != null ? dbBeneficios.size() : 0);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.beneficiosActivos);
     }
     
     public LiveData<Integer> getCountBeneficiosInactivos() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int total = database.obtenerConteoBeneficios();
-                List<com.example.cafefidelidaqrdemo.models.Beneficio> dbActivos = database.obtenerBeneficiosActivos();
-                int activosCount = dbActivos != null ? dbActivos.size() : 0;
-                result.postValue(total - activosCount);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.beneficiosInactivos);
     }
     
     public int getCountBeneficiosActivosSync() {
         try {
-            List<com.example.cafefidelidaqrdemo.models.Beneficio> dbBeneficios = database.obtenerBeneficiosActivos();
-            return dbBeneficios != null ? dbBeneficios.size() : 0;
+            return getDashboardStatsSync().beneficiosActivos;
         } catch (Exception e) {
             return 0;
         }
@@ -570,58 +520,40 @@ public class AdminRepository {
     
     public int getCountBeneficiosInactivosSync() {
         try {
-            int total = database.obtenerConteoBeneficios();
-            List<com.example.cafefidelidaqrdemo.models.Beneficio> dbActivos = database.obtenerBeneficiosActivos();
-            int activosCount = dbActivos != null ? dbActivos.size() : 0;
-            return total - activosCount;
+            return getDashboardStatsSync().beneficiosInactivos;
         } catch (Exception e) {
             return 0;
         }
     }
     
     public LiveData<Integer> getCountSucursales() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int count = database.obtenerConteoSucursales();
-                result.postValue(count);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.totalSucursales);
     }
     
     public LiveData<Integer> getCountBeneficios() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int count = database.obtenerConteoBeneficios();
-                result.postValue(count);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return Transformations.map(getDashboardStats(), stats -> stats.totalBeneficios);
     }
 
-    // Refresca lista y conteos de sucursales y postea en LiveData persistentes
+    // Relee la lista de sucursales. Corre en el executor, lanzada por
+    // allSucursalesLiveData al activarse o al cambiar la tabla.
     private void refreshSucursalesLiveData() {
-        executor.execute(() -> {
-            try {
-                List<Sucursal> todas = database.obtenerTodasLasSucursales();
-                List<Sucursal> activas = database.obtenerSucursalesActivas();
-                int total = database.obtenerConteoSucursales();
-                int activasCount = activas != null ? activas.size() : 0;
-                int inactivasCount = Math.max(0, total - activasCount);
+        try {
+            allSucursalesLiveData.postValue(consultas.obtener("sucursales.todas",
+                    database::obtenerTodasLasSucursales, RastreadorInvalidaciones.SUCURSALES));
+        } catch (Exception e) {
+            // En caso de error, no romper UI; mantener valores actuales
+        }
+    }
 
-                allSucursalesLiveData.postValue(todas != null ? todas : new ArrayList<>());
-                countSucursalesActivasLiveData.postValue(activasCount);
-                countSucursalesInactivasLiveData.postValue(inactivasCount);
-            } catch (Exception e) {
-                // En caso de error, no romper UI; mantener valores actuales
+    // Los conteos salen de la misma lista, sin consultas adicionales
+    private static int contarSucursalesActivas(List<Sucursal> sucursales) {
+        int activas = 0;
+        for (Sucursal sucursal : sucursales) {
+            if (sucursal.isActiva()) {
+                activas++;
             }
-        });
+        }
+        return activas;
     }
     
     // ========== MÉTODOS DE SINCRONIZACIÓN Y EXPORTACIÓN ==========
@@ -637,7 +569,7 @@ public class AdminRepository {
     }
     
     public void sincronizarTodosLosDatos() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 isLoading.postValue(true);
                 // Implementar lógica de sincronización
@@ -653,7 +585,7 @@ public class AdminRepository {
     }
     
     public void exportarProductos() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 isLoading.postValue(true);
                 // Implementar lógica de exportación
@@ -682,7 +614,7 @@ public class AdminRepository {
     // ========== LIMPIEZA ==========
     
     public void limpiarDatosLocales() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 isLoading.postValue(true);
                 // Implementar lógica de limpieza de datos locales
@@ -784,8 +716,6 @@ public class AdminRepository {
     }
 
     public void cleanup() {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
+        // El planificador es compartido: no se apaga con el repositorio
     }
 }
\ No newline at end of file
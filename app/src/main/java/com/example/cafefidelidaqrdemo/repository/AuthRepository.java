@@ -6,6 +6,7 @@ import androidx.lifecycle.MutableLiveData;
 import com.example.cafefidelidaqrdemo.utils.SessionManager;
 import com.example.cafefidelidaqrdemo.repository.ClienteRepository;
 import com.example.cafefidelidaqrdemo.models.Cliente;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -102,9 +103,10 @@ public class AuthRepository {
             return;
         }
 
-        new Thread(() -> {
+        // Lectura que la pantalla de login está esperando
+        EjecutorTareas.getInstance().lecturas().execute(() -> {
             try {
-                ClienteRepository clienteRepository = new ClienteRepository(context);
+                ClienteRepository clienteRepository = ClienteRepository.getInstance(context);
                 Cliente cliente = clienteRepository.getClienteByEmailSync(cleanEmail);
                 
                 if (cliente != null && cliente.getPassword() != null && cliente.getPassword().equals(cleanPassword)) {
@@ -135,7 +137,7 @@ public class AuthRepository {
                 isLoadingLiveData.postValue(false);
                 callback.onError(error);
             }
-        }).start();
+        });
     }
     
     /**
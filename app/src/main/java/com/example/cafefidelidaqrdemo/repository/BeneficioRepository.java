@@ -6,14 +6,17 @@ import androidx.lifecycle.MutableLiveData;
 import android.util.Log;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
 import com.example.cafefidelidaqrdemo.models.Beneficio;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.FlujosConsulta;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataTablas;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * Repository para manejar operaciones de Beneficio con validación de reglas
@@ -23,21 +26,27 @@ public class BeneficioRepository {
 
     private static final String TAG = "BeneficioRepository";
     private final CafeFidelidadDB database;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
     private final Gson gson;
+    // Las listas se comparten entre instancias y se releen al cambiar la tabla
+    private final FlujosConsulta flujos;
 
     // LiveData para observar cambios
     private final MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorLiveData = new MutableLiveData<>();
     private final MutableLiveData<Boolean> syncStatusLiveData = new MutableLiveData<>(true);
-    private final MutableLiveData<List<Beneficio>> beneficiosLiveData = new MutableLiveData<>();
-    private final MutableLiveData<List<Beneficio>> beneficiosActivosLiveData = new MutableLiveData<>();
 
     public BeneficioRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+
+    public BeneficioRepository(Context context, EjecutorTareas ejecutor) {
         this.database = CafeFidelidadDB.getInstance(context);
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
         this.gson = new Gson();
-        loadBeneficios();
+        this.flujos = FlujosConsulta.getInstance(context);
     }
 
     // Getters para LiveData
@@ -59,11 +68,11 @@ public class BeneficioRepository {
     }
 
     public LiveData<List<Beneficio>> getAllBeneficios() {
-        return beneficiosLiveData;
+        return flujoBeneficios();
     }
 
     public LiveData<List<Beneficio>> getBeneficiosActivos() {
-        return beneficiosActivosLiveData;
+        return flujoBeneficiosActivos();
     }
 
     public LiveData<Beneficio> getBeneficioById(int id) {
@@ -89,17 +98,8 @@ public class BeneficioRepository {
     }
 
     public LiveData<Integer> getCountBeneficiosActivos() {
-        MutableLiveData<Integer> countLiveData = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int count = database.obtenerConteoBeneficios();
-                countLiveData.postValue(count);
-            } catch (Exception e) {
-                Log.e(TAG, "Error al contar beneficios", e);
-                countLiveData.postValue(0);
-            }
-        });
-        return countLiveData;
+        return flujos.obtener("beneficios.conteo", database::obtenerConteoBeneficios,
+                RastreadorInvalidaciones.BENEFICIOS);
     }
 
     public LiveData<Integer> getCountBeneficiosVigentes() {
@@ -109,7 +109,7 @@ public class BeneficioRepository {
     // Métodos CRUD
     public void insertBeneficio(Beneficio beneficio, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (beneficio == null) {
                     callback.onResult(false);
@@ -133,7 +133,6 @@ public class BeneficioRepository {
                 boolean success = result != -1;
 
                 if (success) {
-                    loadBeneficios();
                     errorLiveData.postValue(null);
                 } else {
                     errorLiveData.postValue("Error al insertar beneficio");
@@ -152,7 +151,7 @@ public class BeneficioRepository {
 
     public void updateBeneficio(Beneficio beneficio, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (beneficio == null || beneficio.getId() == null || beneficio.getId().isEmpty()) {
                     callback.onResult(false);
@@ -164,7 +163,6 @@ public class BeneficioRepository {
                 boolean success = result > 0;
 
                 if (success) {
-                    loadBeneficios();
                     errorLiveData.postValue(null);
                 } else {
                     errorLiveData.postValue("Error al actualizar beneficio");
@@ -183,13 +181,12 @@ public class BeneficioRepository {
 
     public void deleteBeneficio(int beneficioId, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int result = database.eliminarBeneficio(beneficioId);
                 boolean success = result > 0;
 
                 if (success) {
-                    loadBeneficios();
                     errorLiveData.postValue(null);
                 } else {
                     errorLiveData.postValue("Error al eliminar beneficio");
@@ -207,7 +204,7 @@ public class BeneficioRepository {
     }
 
     public void desactivarBeneficio(int beneficioId, OnResultCallback<Boolean> callback) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 Beneficio beneficio = database.obtenerBeneficioPorId(beneficioId);
                 if (beneficio != null) {
@@ -226,7 +223,7 @@ public class BeneficioRepository {
     }
 
     public void activarBeneficio(int beneficioId, OnResultCallback<Boolean> callback) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 Beneficio beneficio = database.obtenerBeneficioPorId(beneficioId);
                 if (beneficio != null) {
@@ -259,19 +256,20 @@ public class BeneficioRepository {
     }
 
     // Métodos privados
-    private void loadBeneficios() {
-        executor.execute(() -> {
-            try {
-                List<Beneficio> beneficios = database.obtenerTodosLosBeneficios();
-                List<Beneficio> beneficiosActivos = database.obtenerBeneficiosActivos();
+    private LiveDataTablas<List<Beneficio>> flujoBeneficios() {
+        return flujos.obtener("beneficios.todos", database::obtenerTodosLosBeneficios,
+                RastreadorInvalidaciones.BENEFICIOS);
+    }
 
-                beneficiosLiveData.postValue(beneficios);
-                beneficiosActivosLiveData.postValue(beneficiosActivos);
-            } catch (Exception e) {
-                Log.e(TAG, "Error al cargar beneficios", e);
-                errorLiveData.postValue("Error al cargar beneficios: " + e.getMessage());
-            }
-        });
+    private LiveDataTablas<List<Beneficio>> flujoBeneficiosActivos() {
+        return flujos.obtener("beneficios.activos", database::obtenerBeneficiosActivos,
+                RastreadorInvalidaciones.BENEFICIOS);
+    }
+
+    // Las escrituras ya invalidan la tabla; esto fuerza la relectura (sincronización manual)
+    private void loadBeneficios() {
+        flujoBeneficios().recargar();
+        flujoBeneficiosActivos().recargar();
     }
 
     // Clases auxiliares
@@ -320,7 +318,7 @@ public class BeneficioRepository {
         executor.execute(() -> {
             try {
                 List<Beneficio> beneficios = database.obtenerTodosLosBeneficios();
-                int totalVisitas = database.obtenerVisitasPorCliente(Integer.parseInt(clienteId)).size();
+                int totalVisitas = database.obtenerSellosCliente(Integer.parseInt(clienteId));
 
                 for (Beneficio beneficio : beneficios) {
                     if (totalVisitas >= sellosRequeridos) {
@@ -7,12 +7,16 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
 import com.example.cafefidelidaqrdemo.models.Canje;
 import com.example.cafefidelidaqrdemo.models.Beneficio;
+import com.example.cafefidelidaqrdemo.repository.base.CargadorPaginado;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataCancelable;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataTablas;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * Repository para manejar la lógica de canjes, incluyendo el sistema de sellos digitales.
@@ -20,18 +24,29 @@ import java.util.concurrent.Executors;
 public class CanjeRepository {
 
     private static final String TAG = "CanjeRepository";
+    private static final int TAMANO_PAGINA = 50;
     private final CafeFidelidadDB database;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
 
     // LiveData para observar cambios
     private final MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorLiveData = new MutableLiveData<>();
-    private final MutableLiveData<List<Canje>> canjesLiveData = new MutableLiveData<>();
+    // Se recarga solo cuando cambia la tabla de canjes y hay alguien observando
+    private final LiveDataTablas<List<Canje>> canjesLiveData;
+    private final CargadorPaginado<Canje> paginadorCanjes;
 
     public CanjeRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+
+    public CanjeRepository(Context context, EjecutorTareas ejecutor) {
         this.database = CafeFidelidadDB.getInstance(context);
-        this.executor = Executors.newFixedThreadPool(4);
-        loadCanjes();
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.canjesLiveData = new LiveDataTablas<>(database.getInvalidaciones(), executor,
+                this::loadCanjes, RastreadorInvalidaciones.CANJES);
+        this.paginadorCanjes = new CargadorPaginado<>(database::obtenerPaginaCanjes, TAMANO_PAGINA, canjesLiveData);
     }
 
     // Getters para LiveData
@@ -43,22 +58,41 @@ public class CanjeRepository {
         return errorLiveData;
     }
 
+    /**
+     * Canjes cargados hasta ahora, del más reciente al más antiguo. Se llena por
+     * páginas: usar {@link #cargarMasCanjes()} al llegar al final de la lista.
+     * Tras una escritura sobre canjes se relee el rango ya cargado.
+     */
     public LiveData<List<Canje>> getAllCanjes() {
         return canjesLiveData;
     }
 
-    public LiveData<List<Canje>> getCanjesByCliente(int clienteId) {
-        MutableLiveData<List<Canje>> canjesClienteLiveData = new MutableLiveData<>();
+    public void cargarMasCanjes() {
         executor.execute(() -> {
             try {
-                List<Canje> canjes = database.obtenerCanjesPorCliente(clienteId);
-                canjesClienteLiveData.postValue(canjes);
+                paginadorCanjes.cargarSiguiente();
             } catch (Exception e) {
-                Log.e(TAG, "Error al obtener canjes por cliente", e);
-                errorLiveData.postValue("Error al obtener canjes: " + e.getMessage());
+                Log.e(TAG, "Error al cargar más canjes", e);
+                errorLiveData.postValue("Error al cargar canjes: " + e.getMessage());
             }
         });
-        return canjesClienteLiveData;
+    }
+
+    public boolean hayMasCanjes() {
+        return paginadorCanjes.hayMas();
+    }
+
+    /**
+     * Canjes del cliente. Si la pantalla deja de observar antes de que termine,
+     * la consulta se cancela.
+     */
+    public LiveData<List<Canje>> getCanjesByCliente(int clienteId) {
+        return new LiveDataCancelable<>(executor,
+                senal -> database.obtenerCanjesPorCliente(clienteId, senal),
+                e -> {
+                    Log.e(TAG, "Error al obtener canjes por cliente", e);
+                    errorLiveData.postValue("Error al obtener canjes: " + e.getMessage());
+                });
     }
 
     public LiveData<List<Canje>> getHistorialCanjesCliente(String clienteId) {
@@ -102,7 +136,7 @@ public class CanjeRepository {
     // Métodos CRUD
     public void insertCanje(Canje canje, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (canje == null) {
                     callback.onResult(false);
@@ -120,7 +154,6 @@ public class CanjeRepository {
                 boolean success = result != -1;
 
                 if (success) {
-                    loadCanjes();
                     errorLiveData.postValue(null);
                 } else {
                     errorLiveData.postValue("Error al insertar canje");
@@ -139,7 +172,7 @@ public class CanjeRepository {
 
     public void updateCanje(Canje canje, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (canje == null || canje.getId() == null || canje.getId().isEmpty()) {
                     callback.onResult(false);
@@ -151,7 +184,6 @@ public class CanjeRepository {
                 boolean success = result > 0;
 
                 if (success) {
-                    loadCanjes();
                     errorLiveData.postValue(null);
                 } else {
                     errorLiveData.postValue("Error al actualizar canje");
@@ -170,7 +202,7 @@ public class CanjeRepository {
 
     public void deleteCanje(String canjeId, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (canjeId == null || canjeId.isEmpty()) {
                     callback.onResult(false);
@@ -183,7 +215,6 @@ public class CanjeRepository {
                 boolean success = result > 0;
 
                 if (success) {
-                    loadCanjes();
                     errorLiveData.postValue(null);
                 } else {
                     errorLiveData.postValue("Error al eliminar canje");
@@ -206,41 +237,28 @@ public class CanjeRepository {
 
     /**
      * Nuevo método: Registrar un canje basado en el sistema de sellos digitales
-     * Verifica si el cliente tiene suficientes visitas (sellos) y aplica el beneficio.
+     * Verifica el saldo de sellos, registra el canje y descuenta los sellos en una
+     * sola transacción (ver CafeFidelidadDB.canjearSellos).
      */
     public void registrarCanjePorSellos(String clienteId, String beneficioId, int sellosRequeridos, OnResultCallback<Boolean> callback) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int clienteInt = Integer.parseInt(clienteId);
-                int visitasActuales = database.obtenerVisitasPorCliente(clienteInt).size();
+                int saldo = database.canjearSellos(clienteInt, Integer.parseInt(beneficioId), sellosRequeridos);
 
-                if (visitasActuales < sellosRequeridos) {
+                if (saldo == CafeFidelidadDB.SELLOS_INSUFICIENTES) {
                     Log.d(TAG, "El cliente aún no completa los sellos necesarios");
                     callback.onResult(false);
                     return;
                 }
-
-                // Registrar el canje en la base de datos
-                Canje nuevoCanje = new Canje();
-                nuevoCanje.setUserId(clienteId);
-                nuevoCanje.setBeneficioId(Integer.parseInt(beneficioId));
-                nuevoCanje.setFechaCanje(System.currentTimeMillis());
-                nuevoCanje.setEstado("completado");
-
-                long result = database.insertarCanje(nuevoCanje);
-
-                if (result != -1) {
-                    // Reiniciar el contador de visitas tras el canje
-                    database.reiniciarVisitasCliente(clienteInt);
-
-                    loadCanjes();
-                    Log.d(TAG, "Canje por sellos registrado correctamente");
-                    callback.onResult(true);
-                } else {
-                    errorLiveData.postValue("Error al registrar canje");
+                if (saldo == CafeFidelidadDB.CANJE_FALLIDO) {
+                    errorLiveData.postValue("No se pudo registrar el canje");
                     callback.onResult(false);
+                    return;
                 }
 
+                Log.d(TAG, "Canje por sellos registrado correctamente. Sellos restantes: " + saldo);
+                callback.onResult(true);
             } catch (Exception e) {
                 Log.e(TAG, "Error al registrar canje por sellos", e);
                 errorLiveData.postValue("Error al registrar canje: " + e.getMessage());
@@ -255,7 +273,7 @@ public class CanjeRepository {
      */
     public void registrarCanjeDesdeBeneficio(Beneficio beneficio, String clienteId, String sucursalId, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (beneficio == null) {
                     errorLiveData.postValue("Beneficio no puede ser nulo");
@@ -307,8 +325,6 @@ public class CanjeRepository {
                     return;
                 }
 
-                // Recargar canjes en memoria
-                loadCanjes();
                 errorLiveData.postValue(null);
                 callback.onResult(true);
             } catch (Exception e) {
@@ -321,17 +337,15 @@ public class CanjeRepository {
         });
     }
 
-    // Cargar todos los canjes almacenados
+    // Releer los canjes ya cargados (la primera página si aún no hay ninguno).
+    // Corre en el executor, lanzada por canjesLiveData al activarse o al cambiar la tabla.
     private void loadCanjes() {
-        executor.execute(() -> {
-            try {
-                List<Canje> canjes = database.obtenerTodosLosCanjes();
-                canjesLiveData.postValue(canjes);
-            } catch (Exception e) {
-                Log.e(TAG, "Error al cargar canjes", e);
-                errorLiveData.postValue("Error al cargar canjes: " + e.getMessage());
-            }
-        });
+        try {
+            paginadorCanjes.refrescar();
+        } catch (Exception e) {
+            Log.e(TAG, "Error al cargar canjes", e);
+            errorLiveData.postValue("Error al cargar canjes: " + e.getMessage());
+        }
     }
 
     // Callback genérico
@@ -341,7 +355,7 @@ public class CanjeRepository {
 
     // Sincronización (simplificada)
     public void refreshCanjes(OnResultCallback<Boolean> callback) {
-        loadCanjes();
+        canjesLiveData.recargar();
         callback.onResult(true);
     }
 
@@ -0,0 +1,205 @@
+package com.example.cafefidelidaqrdemo.repository;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
+import com.example.cafefidelidaqrdemo.models.Producto;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.utils.TextoBusqueda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copia en memoria del catálogo de productos con índices por categoría y
+ * disponibilidad. Se arma con una sola lectura de la tabla y se rearma cuando
+ * una escritura invalida {@code productos}; navegar, cambiar de categoría o
+ * buscar en el menú no vuelve a tocar SQLite.
+ *
+ * Cada foto es inmutable y lleva una versión que solo crece, para que la UI
+ * pueda saber si algo cambió. Los métodos de consulta devuelven copias de los
+ * {@link Producto}: quien los reciba puede modificarlos sin tocar la foto.
+ */
+public class CatalogoProductos implements RastreadorInvalidaciones.Observador {
+
+    private static final String TAG = "CatalogoProductos";
+
+    private static CatalogoProductos instance;
+
+    private final CafeFidelidadDB database;
+    private final RastreadorInvalidaciones invalidaciones;
+    private final Executor executor;
+    private final AtomicLong versiones = new AtomicLong();
+    private volatile Foto foto;
+
+    public static synchronized CatalogoProductos getInstance(Context context) {
+        if (instance == null) {
+            instance = new CatalogoProductos(CafeFidelidadDB.getInstance(context),
+                    EjecutorTareas.getInstance().lecturas());
+        }
+        return instance;
+    }
+
+    CatalogoProductos(CafeFidelidadDB database, Executor executor) {
+        this.database = database;
+        this.invalidaciones = database.getInvalidaciones();
+        this.executor = executor;
+        // Se mantiene caliente: tras una escritura se rearma en segundo plano
+        invalidaciones.agregarObservador(this, RastreadorInvalidaciones.PRODUCTOS);
+    }
+
+    @Override
+    public void onInvalidado(Set<String> tablas) {
+        if (foto != null) {
+            executor.execute(this::obtenerFoto);
+        }
+    }
+
+    /**
+     * Foto vigente del catálogo. Solo consulta la base la primera vez y después
+     * de una escritura en productos (bloqueante en ese caso: llamar desde un
+     * hilo de fondo).
+     */
+    public Foto obtenerFoto() {
+        Foto actual = foto;
+        long versionTabla = invalidaciones.version(RastreadorInvalidaciones.PRODUCTOS);
+        if (actual != null && actual.versionTabla == versionTabla) {
+            return actual;
+        }
+        synchronized (this) {
+            // Otro hilo pudo rearmarla mientras esperábamos
+            actual = foto;
+            versionTabla = invalidaciones.version(RastreadorInvalidaciones.PRODUCTOS);
+            if (actual == null || actual.versionTabla != versionTabla) {
+                actual = new Foto(versiones.incrementAndGet(), versionTabla, database.obtenerTodosLosProductos());
+                foto = actual;
+                Log.d(TAG, "Catálogo v" + actual.version + ": " + actual.todos.size() + " productos");
+            }
+            return actual;
+        }
+    }
+
+    public List<Producto> todos() {
+        return copias(obtenerFoto().todos);
+    }
+
+    public List<Producto> disponibles() {
+        return copias(obtenerFoto().disponibles);
+    }
+
+    public List<Producto> porCategoria(String categoria) {
+        List<Producto> productos = obtenerFoto().porCategoria.get(categoria);
+        return productos != null ? copias(productos) : new ArrayList<>();
+    }
+
+    public Producto porId(int id) {
+        Producto producto = obtenerFoto().porId.get(id);
+        return producto != null ? new Producto(producto) : null;
+    }
+
+    /**
+     * Mismas reglas que la búsqueda FTS (nombre o descripción, por prefijo y
+     * sin tildes), sobre la foto en memoria.
+     *
+     * @param categoria null para todas
+     * @param disponible null para no filtrar por disponibilidad
+     */
+    public List<Producto> buscar(String texto, String categoria, Boolean disponible, int limite) {
+        Foto actual = obtenerFoto();
+        List<Producto> base = categoria != null ? actual.porCategoria.get(categoria)
+                : (Boolean.TRUE.equals(disponible) ? actual.disponibles : actual.todos);
+        List<Producto> resultado = new ArrayList<>();
+        if (base == null) {
+            return resultado;
+        }
+        List<String> palabras = TextoBusqueda.palabras(texto);
+        for (Producto producto : base) {
+            if (resultado.size() >= limite) {
+                break;
+            }
+            if (disponible != null && producto.isDisponible() != disponible) {
+                continue;
+            }
+            if (palabras.isEmpty() || TextoBusqueda.coincide(palabras, producto.getNombre(), producto.getDescripcion())) {
+                resultado.add(new Producto(producto));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Cantidad de productos por categoría, ya calculada al armar la foto.
+     */
+    public Map<String, Integer> conteoPorCategoria() {
+        return obtenerFoto().conteoPorCategoria;
+    }
+
+    public long getVersion() {
+        return obtenerFoto().version;
+    }
+
+    private static List<Producto> copias(List<Producto> productos) {
+        // Copia de cada producto: la UI los modifica (p. ej. al cambiar la disponibilidad)
+        List<Producto> resultado = new ArrayList<>(productos.size());
+        for (Producto producto : productos) {
+            resultado.add(new Producto(producto));
+        }
+        return resultado;
+    }
+
+    /**
+     * Catálogo completo en un momento dado, con sus índices ya calculados.
+     */
+    public static final class Foto {
+        public final long version;
+        final long versionTabla;
+        final List<Producto> todos;
+        final List<Producto> disponibles;
+        final Map<String, List<Producto>> porCategoria;
+        final Map<String, Integer> conteoPorCategoria;
+        final Map<Integer, Producto> porId;
+
+        Foto(long version, long versionTabla, List<Producto> productos) {
+            this.version = version;
+            this.versionTabla = versionTabla;
+            List<Producto> disponibles = new ArrayList<>();
+            Map<String, List<Producto>> porCategoria = new LinkedHashMap<>();
+            Map<Integer, Producto> porId = new HashMap<>();
+            // La consulta ya viene ordenada por nombre; los índices conservan ese orden
+            for (Producto producto : productos) {
+                if (producto.isDisponible()) {
+                    disponibles.add(producto);
+                }
+                List<Producto> deCategoria = porCategoria.get(producto.getCategoria());
+                if (deCategoria == null) {
+                    deCategoria = new ArrayList<>();
+                    porCategoria.put(producto.getCategoria(), deCategoria);
+                }
+                deCategoria.add(producto);
+                try {
+                    porId.put(Integer.parseInt(producto.getId()), producto);
+                } catch (NumberFormatException e) {
+                    // Sin id numérico: solo accesible por las listas
+                }
+            }
+            Map<String, Integer> conteo = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Producto>> entrada : porCategoria.entrySet()) {
+                conteo.put(entrada.getKey(), entrada.getValue().size());
+            }
+            this.todos = Collections.unmodifiableList(productos);
+            this.disponibles = Collections.unmodifiableList(disponibles);
+            this.porCategoria = porCategoria;
+            this.conteoPorCategoria = Collections.unmodifiableMap(conteo);
+            this.porId = porId;
+        }
+    }
+}
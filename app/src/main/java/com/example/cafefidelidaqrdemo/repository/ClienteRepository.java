@@ -3,27 +3,48 @@ package com.example.cafefidelidaqrdemo.repository;
 import android.content.Context;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import android.util.Log;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
 import com.example.cafefidelidaqrdemo.models.Cliente;
 
 import com.example.cafefidelidaqrdemo.network.ApiService;
 import com.example.cafefidelidaqrdemo.network.RetrofitClient;
+import com.example.cafefidelidaqrdemo.repository.base.CacheLRU;
+import com.example.cafefidelidaqrdemo.repository.base.ConsultasCompartidas;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.FlujosConsulta;
 import com.example.cafefidelidaqrdemo.utils.NetworkUtils;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Repository para manejar operaciones de Cliente con SQLite
  */
 public class ClienteRepository {
     
+    private static final String TAG = "ClienteRepository";
     private static ClienteRepository instance;
+    
+    // Búsquedas por id/email (escaneo QR, nombres en reseñas, login). La caché es
+    // estática porque varias pantallas crean su propio repositorio.
+    private static final int TAMANO_CACHE = 200;
+    private static final long TTL_CACHE_MS = 5 * 60 * 1000;
+    private static final CacheLRU<String, Cliente> cacheClientes = new CacheLRU<>(TAMANO_CACHE, TTL_CACHE_MS);
+    // Versión de la tabla clientes con la que se llenó la caché (protegida por cacheClientes)
+    private static long versionCache = -1;
+    
     private final CafeFidelidadDB database;
     private final ApiService apiService;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final FlujosConsulta flujos;
+    private final RastreadorInvalidaciones invalidaciones;
     private final Context context;
     
     // LiveData para observar cambios
@@ -34,10 +55,17 @@ public class ClienteRepository {
     private final MutableLiveData<Boolean> syncStatusLiveData = new MutableLiveData<>(true);
     
     public ClienteRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+    
+    public ClienteRepository(Context context, EjecutorTareas ejecutor) {
         this.context = context;
         this.database = CafeFidelidadDB.getInstance(context);
         this.apiService = RetrofitClient.getInstance(context).getApiService();
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.flujos = FlujosConsulta.getInstance(context);
+        this.invalidaciones = database.getInvalidaciones();
     }
     
     public static synchronized ClienteRepository getInstance(Context context) {
@@ -112,7 +140,7 @@ public class ClienteRepository {
      */
     public void createCliente(Cliente cliente, ClienteCallback callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Validar datos del cliente
                 if (!validarCliente(cliente)) {
@@ -152,7 +180,7 @@ public class ClienteRepository {
      */
     public void updateCliente(Cliente cliente, ClienteCallback callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarCliente(cliente)) {
                     callback.onError("Datos del cliente inválidos");
@@ -162,6 +190,7 @@ public class ClienteRepository {
                 
                 int rowsAffected = database.actualizarCliente(cliente);
                 if (rowsAffected > 0) {
+                    quitarDeCache(cliente);
                     callback.onSuccess(cliente);
                     successLiveData.postValue("Cliente actualizado exitosamente");
                     // Actualizar el cliente actual si es el mismo
@@ -182,13 +211,14 @@ public class ClienteRepository {
      * Actualiza los sellos de un cliente (compatibilidad: usa campo puntosAcumulados).
      */
     public void actualizarPuntosCliente(int clienteId, int nuevosPuntos, ClienteCallback callback) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 Cliente cliente = database.obtenerClientePorId(clienteId);
                 if (cliente != null) {
                     cliente.setPuntosAcumulados(nuevosPuntos);
                     int rowsAffected = database.actualizarCliente(cliente);
                     if (rowsAffected > 0) {
+                        quitarDeCache(cliente);
                         callback.onSuccess(cliente);
                         successLiveData.postValue("Sellos actualizados exitosamente");
                         // Actualizar el cliente actual si es el mismo
@@ -211,10 +241,12 @@ public class ClienteRepository {
      */
     public void eliminarCliente(int clienteId, ClienteCallback callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rowsAffected = database.eliminarCliente(clienteId);
                 if (rowsAffected > 0) {
+                    // No se conoce el email de la entrada: se vacía entera
+                    cacheClientes.limpiar();
                     callback.onSuccess(null);
                     successLiveData.postValue("Cliente eliminado exitosamente");
                 } else {
@@ -273,27 +305,92 @@ public class ClienteRepository {
     // ========== MÉTODOS SÍNCRONOS ==========
     
     /**
-     * Obtiene un cliente por ID de forma síncrona
+     * Obtiene un cliente por ID de forma síncrona (desde la caché si está)
      */
     public Cliente getClienteByIdSync(int clienteId) {
         try {
-            return database.obtenerClientePorId(clienteId);
+            return buscarEnCache("id:" + clienteId, () -> database.obtenerClientePorId(clienteId));
         } catch (Exception e) {
             return null;
         }
     }
     
     /**
-     * Obtiene un cliente por email de forma síncrona
+     * Obtiene un cliente por email de forma síncrona (desde la caché si está)
      */
     public Cliente getClienteByEmailSync(String email) {
         try {
-            return database.obtenerClientePorEmail(email);
+            return buscarEnCache("email:" + email, () -> database.obtenerClientePorEmail(email));
         } catch (Exception e) {
             return null;
         }
     }
     
+    /**
+     * Nombres de varios clientes en una sola consulta (bloqueante). Los ids
+     * inexistentes no aparecen en el mapa; si la consulta falla, el mapa viene
+     * vacío y se puede volver a pedir.
+     */
+    public Map<Integer, String> obtenerNombresClientes(Set<Integer> ids) {
+        try {
+            return database.obtenerNombresClientes(ids);
+        } catch (Exception e) {
+            Log.e(TAG, "Error al obtener nombres de clientes", e);
+            return new HashMap<>();
+        }
+    }
+    
+    /**
+     * Devuelve una copia: quien la recibe puede modificarla sin tocar la caché.
+     */
+    private Cliente buscarEnCache(String clave, ConsultasCompartidas.Consulta<Cliente> consulta) {
+        long version = invalidaciones.version(RastreadorInvalidaciones.CLIENTES);
+        synchronized (cacheClientes) {
+            if (version != versionCache) {
+                // Hubo escrituras en clientes (de este u otro repositorio) desde que se llenó
+                cacheClientes.limpiar();
+                versionCache = version;
+            }
+        }
+        Cliente cliente = cacheClientes.obtener(clave);
+        if (cliente == null) {
+            cliente = consulta.ejecutar();
+            synchronized (cacheClientes) {
+                // Si la tabla cambió durante la lectura el resultado puede ser viejo
+                if (versionCache == version && invalidaciones.version(RastreadorInvalidaciones.CLIENTES) == version) {
+                    cacheClientes.guardar(clave, cliente);
+                }
+            }
+        }
+        return cliente != null ? new Cliente(cliente) : null;
+    }
+    
+    private static void quitarDeCache(Cliente cliente) {
+        cacheClientes.quitar("id:" + cliente.getId());
+        if (cliente.getEmail() != null) {
+            cacheClientes.quitar("email:" + cliente.getEmail());
+        }
+    }
+    
+    /**
+     * Vida de las entradas de la caché de clientes, en milisegundos.
+     */
+    public static void setTtlCache(long ttlMs) {
+        cacheClientes.setTtlMs(ttlMs);
+    }
+    
+    /**
+     * Fracción de búsquedas por id/email resueltas sin ir a SQLite (0 a 1).
+     */
+    public static double getTasaAciertosCache() {
+        return cacheClientes.getTasaAciertos();
+    }
+    
+    public static String resumenCache() {
+        return "cache clientes: " + cacheClientes.tamano() + "/" + TAMANO_CACHE
+                + ", aciertos=" + cacheClientes.getAciertos() + ", fallos=" + cacheClientes.getFallos();
+    }
+    
     // ========== VALIDACIÓN ==========
     
     private boolean validarCliente(Cliente cliente) {
@@ -311,19 +408,12 @@ public class ClienteRepository {
     // ========== ESTADÍSTICAS ==========
     
     /**
-     * Obtiene el conteo total de clientes
+     * Obtiene el conteo total de clientes (flujo compartido, se relee al
+     * cambiar la tabla)
      */
     public LiveData<Integer> getCountClientes() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int count = database.obtenerConteoClientes();
-                result.postValue(count);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return flujos.obtener("clientes.conteo", database::obtenerConteoClientes,
+                RastreadorInvalidaciones.CLIENTES);
     }
     
     /**
@@ -400,8 +490,6 @@ public class ClienteRepository {
     // ========== LIMPIEZA ==========
     
     public void cleanup() {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
+        // El planificador es compartido: no se apaga con el repositorio
     }
 }
\ No newline at end of file
@@ -0,0 +1,377 @@
+package com.example.cafefidelidaqrdemo.repository;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
+import com.example.cafefidelidaqrdemo.models.Producto;
+import com.example.cafefidelidaqrdemo.models.Sucursal;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Copia binaria del catálogo y las sucursales activas guardada en disco para
+ * pintar la primera pantalla en frío sin esperar a que se abra la base. Al
+ * arrancar se lee mapeando el archivo en memoria y se entrega a las listas que
+ * todavía no tienen valor; la carga real (la misma consulta) corre igual detrás
+ * y la reemplaza.
+ *
+ * Se reescribe en el carril de fondo después de cada cambio en productos o
+ * sucursales, y al arrancar solo si el archivo falta o no pasó la validación.
+ * El archivo se descarta si no coincide el formato, la versión del esquema o
+ * la suma de control.
+ *
+ * Formato (big endian): magic, formato, versión del esquema, escrito en (ms),
+ * cantidad y filas de productos, cantidad y filas de sucursales, CRC32 de todo
+ * lo anterior. Los textos van como largo en bytes (-1 si es null) y UTF-8.
+ */
+public class InstantaneaArranque implements RastreadorInvalidaciones.Observador {
+
+    private static final String TAG = "InstantaneaArranque";
+    private static final String ARCHIVO = "instantanea_arranque.bin";
+    private static final int MAGIC = 0x43464951; // "CFIQ"
+    private static final int FORMATO = 1;
+
+    private static InstantaneaArranque instance;
+
+    private final File archivo;
+    private final CafeFidelidadDB database;
+    private final CatalogoProductos catalogo;
+    private final Executor lector;
+    private final Executor fondo;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean escrituraEnCola = new AtomicBoolean(false);
+
+    private Contenido leida;
+    private boolean lecturaIntentada = false;
+    private boolean productosEntregados = false;
+    private boolean sucursalesEntregadas = false;
+
+    public static synchronized InstantaneaArranque getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            EjecutorTareas ejecutor = EjecutorTareas.getInstance();
+            instance = new InstantaneaArranque(new File(app.getCacheDir(), ARCHIVO),
+                    CafeFidelidadDB.getInstance(app), CatalogoProductos.getInstance(app),
+                    ejecutor.lecturas(), ejecutor.fondo());
+        }
+        return instance;
+    }
+
+    InstantaneaArranque(File archivo, CafeFidelidadDB database, CatalogoProductos catalogo,
+                        Executor lector, Executor fondo) {
+        this.archivo = archivo;
+        this.database = database;
+        this.catalogo = catalogo;
+        this.lector = lector;
+        this.fondo = fondo;
+        database.getInvalidaciones().agregarObservador(this,
+                RastreadorInvalidaciones.PRODUCTOS, RastreadorInvalidaciones.SUCURSALES);
+    }
+
+    @Override
+    public void onInvalidado(Set<String> tablas) {
+        programarEscritura();
+    }
+
+    /**
+     * Entrega los productos guardados a {@code destino} si todavía no tiene
+     * valor. No consulta la base.
+     */
+    public void precargarProductos(MutableLiveData<List<Producto>> destino) {
+        lector.execute(() -> {
+            Contenido contenido = obtenerLeida();
+            if (contenido != null) {
+                entregar(destino, contenido.productos);
+            }
+            synchronized (this) {
+                productosEntregados = true;
+                liberarSiEntregada();
+            }
+        });
+    }
+
+    /**
+     * Entrega las sucursales guardadas a {@code destino} si todavía no tiene
+     * valor. No consulta la base.
+     */
+    public void precargarSucursales(MutableLiveData<List<Sucursal>> destino) {
+        lector.execute(() -> {
+            Contenido contenido = obtenerLeida();
+            if (contenido != null) {
+                entregar(destino, contenido.sucursales);
+            }
+            synchronized (this) {
+                sucursalesEntregadas = true;
+                liberarSiEntregada();
+            }
+        });
+    }
+
+    private <T> void entregar(MutableLiveData<List<T>> destino, List<T> filas) {
+        // En el hilo principal para no pisar una carga real que llegó antes
+        handler.post(() -> {
+            if (destino.getValue() == null) {
+                destino.setValue(new ArrayList<>(filas));
+            }
+        });
+    }
+
+    private synchronized Contenido obtenerLeida() {
+        if (!lecturaIntentada) {
+            lecturaIntentada = true;
+            leida = leer();
+            if (leida == null) {
+                // Falta o se descartó: se arma con lo que haya en la base
+                programarEscritura();
+            }
+        }
+        return leida;
+    }
+
+    // La copia decodificada se suelta recién cuando ya se entregaron las dos listas
+    private synchronized void liberarSiEntregada() {
+        if (productosEntregados && sucursalesEntregadas) {
+            leida = null;
+        }
+    }
+
+    private void programarEscritura() {
+        if (!escrituraEnCola.compareAndSet(false, true)) {
+            return;
+        }
+        fondo.execute(() -> {
+            escrituraEnCola.set(false);
+            try {
+                escribir(catalogo.todos(), database.obtenerSucursalesActivas());
+            } catch (Exception e) {
+                Log.e(TAG, "No se pudo guardar la instantánea", e);
+            }
+        });
+    }
+
+    // ========== FORMATO ==========
+
+    private Contenido leer() {
+        if (!archivo.exists()) {
+            return null;
+        }
+        RandomAccessFile entrada = null;
+        try {
+            entrada = new RandomAccessFile(archivo, "r");
+            FileChannel canal = entrada.getChannel();
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            Contenido contenido = decodificar(buffer);
+            if (contenido == null) {
+                Log.d(TAG, "Instantánea vieja o dañada, se descarta");
+                archivo.delete();
+            } else {
+                Log.d(TAG, "Instantánea de hace " + (System.currentTimeMillis() - contenido.escritaEn) / 1000 + " s");
+            }
+            return contenido;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "No se pudo leer la instantánea", e);
+            archivo.delete();
+            return null;
+        } finally {
+            if (entrada != null) {
+                try {
+                    entrada.close();
+                } catch (IOException ignorada) {
+                    // Solo lectura
+                }
+            }
+        }
+    }
+
+    /**
+     * @return null si el archivo no corresponde a este formato o esquema
+     */
+    static Contenido decodificar(ByteBuffer buffer) {
+        if (buffer.remaining() < 28) {
+            return null;
+        }
+        int fin = buffer.limit() - 8;
+        CRC32 crc = new CRC32();
+        ByteBuffer datos = buffer.duplicate();
+        datos.limit(fin);
+        crc.update(datos);
+        if (crc.getValue() != buffer.getLong(fin)) {
+            return null;
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMATO
+                || buffer.getInt() != CafeFidelidadDB.DATABASE_VERSION) {
+            return null;
+        }
+        long escritaEn = buffer.getLong();
+
+        int cantidad = buffer.getInt();
+        List<Producto> productos = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            Producto producto = new Producto();
+            producto.setId(String.valueOf(buffer.getInt()));
+            producto.setNombre(leerTexto(buffer));
+            producto.setDescripcion(leerTexto(buffer));
+            producto.setPrecio(buffer.getDouble());
+            producto.setCategoria(leerTexto(buffer));
+            producto.setDisponible(buffer.get() != 0);
+            producto.setImagenUrl(leerTexto(buffer));
+            productos.add(producto);
+        }
+
+        cantidad = buffer.getInt();
+        List<Sucursal> sucursales = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            Sucursal sucursal = new Sucursal();
+            sucursal.setId(String.valueOf(buffer.getInt()));
+            sucursal.setNombre(leerTexto(buffer));
+            sucursal.setDireccion(leerTexto(buffer));
+            sucursal.setTelefono(leerTexto(buffer));
+            sucursal.setHorarioApertura(leerTexto(buffer));
+            sucursal.setHorarioCierre(leerTexto(buffer));
+            sucursal.setLatitud(buffer.getDouble());
+            sucursal.setLongitud(buffer.getDouble());
+            sucursal.setImagenUrl(leerTexto(buffer));
+            sucursal.setActiva(buffer.get() != 0);
+            sucursales.add(sucursal);
+        }
+        return new Contenido(escritaEn, productos, sucursales);
+    }
+
+    private void escribir(List<Producto> productos, List<Sucursal> sucursales) throws IOException {
+        byte[] bytes = codificar(productos, sucursales);
+        // Se escribe aparte y se renombra: quien lea nunca ve un archivo a medias
+        File temporal = new File(archivo.getPath() + ".tmp");
+        FileOutputStream salida = new FileOutputStream(temporal);
+        try {
+            salida.write(bytes);
+            salida.getFD().sync();
+        } finally {
+            salida.close();
+        }
+        if (!temporal.renameTo(archivo)) {
+            temporal.delete();
+            throw new IOException("No se pudo reemplazar " + archivo);
+        }
+        Log.d(TAG, "Instantánea: " + productos.size() + " productos, " + sucursales.size()
+                + " sucursales, " + bytes.length + " bytes");
+    }
+
+    static byte[] codificar(List<Producto> productos, List<Sucursal> sucursales) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream salida = new DataOutputStream(bytes);
+        salida.writeInt(MAGIC);
+        salida.writeInt(FORMATO);
+        salida.writeInt(CafeFidelidadDB.DATABASE_VERSION);
+        salida.writeLong(System.currentTimeMillis());
+
+        List<Producto> conId = new ArrayList<>();
+        for (Producto producto : productos) {
+            if (idNumerico(producto.getId()) != null) {
+                conId.add(producto);
+            }
+        }
+        salida.writeInt(conId.size());
+        for (Producto producto : conId) {
+            salida.writeInt(idNumerico(producto.getId()));
+            escribirTexto(salida, producto.getNombre());
+            escribirTexto(salida, producto.getDescripcion());
+            salida.writeDouble(producto.getPrecio());
+            escribirTexto(salida, producto.getCategoria());
+            salida.writeBoolean(producto.isDisponible());
+            escribirTexto(salida, producto.getImagenUrl());
+        }
+
+        List<Sucursal> sucursalesConId = new ArrayList<>();
+        for (Sucursal sucursal : sucursales) {
+            if (idNumerico(sucursal.getId()) != null) {
+                sucursalesConId.add(sucursal);
+            }
+        }
+        salida.writeInt(sucursalesConId.size());
+        for (Sucursal sucursal : sucursalesConId) {
+            salida.writeInt(idNumerico(sucursal.getId()));
+            escribirTexto(salida, sucursal.getNombre());
+            escribirTexto(salida, sucursal.getDireccion());
+            escribirTexto(salida, sucursal.getTelefono());
+            escribirTexto(salida, sucursal.getHorarioApertura());
+            escribirTexto(salida, sucursal.getHorarioCierre());
+            salida.writeDouble(sucursal.getLatitud());
+            salida.writeDouble(sucursal.getLongitud());
+            escribirTexto(salida, sucursal.getImagenUrl());
+            salida.writeBoolean(sucursal.isActiva());
+        }
+        salida.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        salida.writeLong(crc.getValue());
+        salida.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Integer idNumerico(String id) {
+        try {
+            return id != null ? Integer.parseInt(id) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(utf8.length);
+        salida.write(utf8);
+    }
+
+    private static String leerTexto(ByteBuffer buffer) {
+        int largo = buffer.getInt();
+        if (largo < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[largo];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lo que había en el archivo al arrancar. Las listas no se modifican.
+     */
+    static final class Contenido {
+        final long escritaEn;
+        final List<Producto> productos;
+        final List<Sucursal> sucursales;
+
+        Contenido(long escritaEn, List<Producto> productos, List<Sucursal> sucursales) {
+            this.escritaEn = escritaEn;
+            this.productos = Collections.unmodifiableList(productos);
+            this.sucursales = Collections.unmodifiableList(sucursales);
+        }
+    }
+}
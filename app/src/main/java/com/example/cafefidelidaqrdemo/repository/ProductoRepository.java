@@ -5,31 +5,40 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
 import com.example.cafefidelidaqrdemo.models.Producto;
 import com.example.cafefidelidaqrdemo.network.ApiService;
 import com.example.cafefidelidaqrdemo.network.RetrofitClient;
 import com.example.cafefidelidaqrdemo.repository.interfaces.IProductoRepository;
 import com.example.cafefidelidaqrdemo.repository.base.BaseRepository;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.FlujosConsulta;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataCancelable;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataTablas;
 import com.example.cafefidelidaqrdemo.utils.NetworkUtils;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * Repository para manejar operaciones de Producto con SQLite
  */
 public class ProductoRepository implements IProductoRepository {
     
+    private static final int LIMITE_BUSQUEDA = 200;
     private static ProductoRepository instance;
     private final CafeFidelidadDB database;
     private final ApiService apiService;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
     private final Context context;
     
     // LiveData para observar cambios
-    private final MutableLiveData<List<Producto>> productosLiveData = new MutableLiveData<>();
+    // Se recarga solo cuando cambia la tabla de productos y hay alguien observando
+    private final LiveDataTablas<List<Producto>> productosLiveData;
+    // Catálogo en memoria: las lecturas de productos no vuelven a SQLite hasta una escritura
+    private final CatalogoProductos catalogo;
+    private final FlujosConsulta flujos;
     private final MutableLiveData<List<Producto>> searchResultsLiveData = new MutableLiveData<>();
     private final MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorLiveData = new MutableLiveData<>();
@@ -37,10 +46,21 @@ public class ProductoRepository implements IProductoRepository {
     private final MutableLiveData<Boolean> syncStatusLiveData = new MutableLiveData<>(true);
     
     public ProductoRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+    
+    public ProductoRepository(Context context, EjecutorTareas ejecutor) {
         this.context = context;
         this.database = CafeFidelidadDB.getInstance(context);
         this.apiService = RetrofitClient.getInstance(context).getApiService();
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.catalogo = CatalogoProductos.getInstance(context);
+        this.flujos = FlujosConsulta.getInstance(context);
+        this.productosLiveData = new LiveDataTablas<>(database.getInvalidaciones(), executor,
+                this::refreshProductosList, RastreadorInvalidaciones.PRODUCTOS);
+        // En frío, la lista se pinta con la copia en disco mientras carga la base
+        InstantaneaArranque.getInstance(context).precargarProductos(productosLiveData);
     }
     
     public static synchronized ProductoRepository getInstance(Context context) {
@@ -60,18 +80,10 @@ public class ProductoRepository implements IProductoRepository {
     // ========== OPERACIONES CRUD ==========
     
     /**
-     * Obtiene todos los productos
+     * Obtiene todos los productos. La consulta corre al empezar a observar y
+     * después de cada cambio en la tabla; entre medio se reutiliza el último valor.
      */
     public LiveData<List<Producto>> getAllProductos() {
-        executor.execute(() -> {
-            try {
-                List<Producto> productos = database.obtenerTodosLosProductos();
-                productosLiveData.postValue(productos);
-            } catch (Exception e) {
-                errorLiveData.postValue("Error al obtener productos: " + e.getMessage());
-                productosLiveData.postValue(null);
-            }
-        });
         return productosLiveData;
     }
     
@@ -82,8 +94,7 @@ public class ProductoRepository implements IProductoRepository {
         MutableLiveData<List<Producto>> result = new MutableLiveData<>();
         executor.execute(() -> {
             try {
-                List<Producto> productos = database.obtenerProductosPorCategoria(categoria);
-                result.postValue(productos);
+                result.postValue(catalogo.porCategoria(categoria));
             } catch (Exception e) {
                 errorLiveData.postValue("Error al obtener productos por categoría: " + e.getMessage());
                 result.postValue(null);
@@ -99,10 +110,7 @@ public class ProductoRepository implements IProductoRepository {
         MutableLiveData<List<Producto>> result = new MutableLiveData<>();
         executor.execute(() -> {
             try {
-                List<Producto> productos = database.obtenerTodosLosProductos();
-                // Filtrar solo los disponibles
-                productos.removeIf(producto -> !producto.isDisponible());
-                result.postValue(productos);
+                result.postValue(catalogo.disponibles());
             } catch (Exception e) {
                 errorLiveData.postValue("Error al obtener productos disponibles: " + e.getMessage());
                 result.postValue(null);
@@ -112,20 +120,18 @@ public class ProductoRepository implements IProductoRepository {
     }
     
     /**
-     * Obtiene un producto por ID
+     * Obtiene un producto por ID. Si la pantalla se cierra antes de que la
+     * lectura salga de la cola, no se ejecuta.
      */
     public LiveData<Producto> getProductoById(int productoId) {
-        MutableLiveData<Producto> result = new MutableLiveData<>();
-        executor.execute(() -> {
+        return new LiveDataCancelable<>(executor, senal -> {
             try {
-                Producto producto = database.obtenerProductoPorId(productoId);
-                result.postValue(producto);
-            } catch (Exception e) {
+                return catalogo.porId(productoId);
+            } catch (RuntimeException e) {
                 errorLiveData.postValue("Error al obtener producto: " + e.getMessage());
-                result.postValue(null);
+                return null;
             }
-        });
-        return result;
+        }, null);
     }
     
     /**
@@ -133,7 +139,7 @@ public class ProductoRepository implements IProductoRepository {
      */
     public void createProducto(Producto producto, ProductoCallback callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Validar datos del producto
                 if (!validarProducto(producto)) {
@@ -148,8 +154,6 @@ public class ProductoRepository implements IProductoRepository {
                     producto.setId(String.valueOf(id));
                     callback.onSuccess(producto);
                     successLiveData.postValue("Producto creado exitosamente");
-                    // Refrescar lista de productos
-                    refreshProductosList();
                 } else {
                     callback.onError("Error al crear producto");
                 }
@@ -167,7 +171,7 @@ public class ProductoRepository implements IProductoRepository {
      */
     public void updateProducto(Producto producto, ProductoCallback callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarProducto(producto)) {
                     callback.onError("Datos del producto inválidos");
@@ -179,8 +183,6 @@ public class ProductoRepository implements IProductoRepository {
                 if (rowsAffected > 0) {
                     callback.onSuccess(producto);
                     successLiveData.postValue("Producto actualizado exitosamente");
-                    // Refrescar lista de productos
-                    refreshProductosList();
                 } else {
                     callback.onError("No se pudo actualizar el producto");
                 }
@@ -198,14 +200,12 @@ public class ProductoRepository implements IProductoRepository {
      */
     public void eliminarProducto(int productoId, ProductoCallback callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rowsAffected = database.eliminarProducto(productoId);
                 if (rowsAffected > 0) {
                     callback.onSuccess(null);
                     successLiveData.postValue("Producto eliminado exitosamente");
-                    // Refrescar lista de productos
-                    refreshProductosList();
                 } else {
                     callback.onError("No se pudo eliminar el producto");
                 }
@@ -275,7 +275,7 @@ public class ProductoRepository implements IProductoRepository {
      */
     public Producto getProductoByIdSync(int productoId) {
         try {
-            return database.obtenerProductoPorId(productoId);
+            return catalogo.porId(productoId);
         } catch (Exception e) {
             return null;
         }
@@ -286,7 +286,7 @@ public class ProductoRepository implements IProductoRepository {
      */
     public List<Producto> getAllProductosSync() {
         try {
-            return database.obtenerTodosLosProductos();
+            return catalogo.todos();
         } catch (Exception e) {
             return null;
         }
@@ -297,7 +297,7 @@ public class ProductoRepository implements IProductoRepository {
      */
     public List<Producto> getProductosByCategoriaSync(String categoria) {
         try {
-            return database.obtenerProductosPorCategoria(categoria);
+            return catalogo.porCategoria(categoria);
         } catch (Exception e) {
             return null;
         }
@@ -316,19 +316,12 @@ public class ProductoRepository implements IProductoRepository {
     // ========== ESTADÍSTICAS ==========
     
     /**
-     * Obtiene el conteo total de productos
+     * Obtiene el conteo total de productos (flujo compartido, se relee al
+     * cambiar la tabla)
      */
     public LiveData<Integer> getCountProductos() {
-        MutableLiveData<Integer> result = new MutableLiveData<>();
-        executor.execute(() -> {
-            try {
-                int count = database.obtenerConteoProductos();
-                result.postValue(count);
-            } catch (Exception e) {
-                result.postValue(0);
-            }
-        });
-        return result;
+        return flujos.obtener("productos.conteo", database::obtenerConteoProductos,
+                RastreadorInvalidaciones.PRODUCTOS);
     }
     
     /**
@@ -345,12 +338,12 @@ public class ProductoRepository implements IProductoRepository {
     // ========== UTILIDADES PRIVADAS ==========
     
     /**
-     * Refresca la lista de productos internamente
+     * Refresca la lista de productos internamente. Es bloqueante: la lanza
+     * productosLiveData en el executor o se llama desde una tarea del executor.
      */
     private void refreshProductosList() {
         try {
-            List<Producto> productos = database.obtenerTodosLosProductos();
-            productosLiveData.postValue(productos);
+            productosLiveData.postValue(catalogo.todos());
         } catch (Exception e) {
             errorLiveData.postValue("Error al refrescar productos: " + e.getMessage());
         }
@@ -396,7 +389,7 @@ public class ProductoRepository implements IProductoRepository {
     public void getProductoById(Long idProducto, BaseRepository.RepositoryCallback<Producto> callback) {
         executor.execute(() -> {
             try {
-                Producto producto = database.obtenerProductoPorId(idProducto.intValue());
+                Producto producto = catalogo.porId(idProducto.intValue());
                 if (producto != null) {
                     callback.onSuccess(producto);
                 } else {
@@ -410,7 +403,7 @@ public class ProductoRepository implements IProductoRepository {
     
     @Override
     public void refreshProductos() {
-        refreshProductosList();
+        productosLiveData.recargar();
     }
     
     @Override
@@ -440,12 +433,10 @@ public class ProductoRepository implements IProductoRepository {
     public void searchProductos(String query, BaseRepository.RepositoryCallback<List<Producto>> callback) {
         executor.execute(() -> {
             try {
-                List<Producto> productos = database.obtenerTodosLosProductos();
-                // Filtrar productos que contengan el query en nombre o descripción
-                productos.removeIf(producto -> 
-                    !producto.getNombre().toLowerCase().contains(query.toLowerCase()) &&
-                    !producto.getDescripcion().toLowerCase().contains(query.toLowerCase())
-                );
+                // Nombre o descripción, por prefijo y sin tildes, sobre el catálogo en memoria
+                List<Producto> productos = query == null || query.trim().isEmpty()
+                        ? catalogo.todos()
+                        : catalogo.buscar(query, null, null, LIMITE_BUSQUEDA);
                 
                 searchResultsLiveData.postValue(productos);
                 callback.onSuccess(productos);
@@ -461,25 +452,19 @@ public class ProductoRepository implements IProductoRepository {
                                          BaseRepository.RepositoryCallback<List<Producto>> callback) {
         executor.execute(() -> {
             try {
-                List<Producto> productos = database.obtenerProductosPorCategoria(categoria);
-                
-                // Filtrar por disponibilidad si se especifica
-                if (disponible != null) {
-                    productos.removeIf(producto -> producto.isDisponible() != disponible);
-                }
-                
-                // Filtrar productos que contengan el query
-                if (query != null && !query.trim().isEmpty()) {
-                    productos.removeIf(producto -> 
-                        !producto.getNombre().toLowerCase().contains(query.toLowerCase()) &&
-                        !producto.getDescripcion().toLowerCase().contains(query.toLowerCase())
-                    );
-                }
+                // Categoría y disponibilidad salen de los índices del catálogo
+                boolean hayTexto = query != null && !query.trim().isEmpty();
+                List<Producto> productos = catalogo.buscar(query, categoria, disponible,
+                        hayTexto ? LIMITE_BUSQUEDA : Integer.MAX_VALUE);
                 
                 searchResultsLiveData.postValue(productos);
-                callback.onSuccess(productos);
+                if (callback != null) {
+                    callback.onSuccess(productos);
+                }
             } catch (Exception e) {
-                callback.onError("Error en búsqueda por categoría: " + e.getMessage());
+                if (callback != null) {
+                    callback.onError("Error en búsqueda por categoría: " + e.getMessage());
+                }
                 errorLiveData.postValue("Error en búsqueda por categoría: " + e.getMessage());
             }
         });
@@ -534,8 +519,6 @@ public class ProductoRepository implements IProductoRepository {
     // ========== LIMPIEZA ==========
     
     public void cleanup() {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
+        // El planificador es compartido: no se apaga con el repositorio
     }
 }
\ No newline at end of file
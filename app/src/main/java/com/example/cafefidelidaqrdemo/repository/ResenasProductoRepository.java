@@ -5,12 +5,15 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
+import com.example.cafefidelidaqrdemo.models.Pagina;
 import com.example.cafefidelidaqrdemo.models.ResenaProducto;
 import com.example.cafefidelidaqrdemo.models.PromedioCalificacion;
+import com.example.cafefidelidaqrdemo.repository.base.ConsultasCompartidas;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Repository local para gestionar reseñas de productos (SQLite)
@@ -19,11 +22,13 @@ public class ResenasProductoRepository {
 
     private static ResenasProductoRepository instance;
     private final CafeFidelidadDB database;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final ConsultasCompartidas consultas;
 
     // LiveData
-    private final MutableLiveData<List<ResenaProducto>> resenasLiveData = new MutableLiveData<>();
     private final MutableLiveData<PromedioCalificacion> promedioLiveData = new MutableLiveData<>();
+    private final MutableLiveData<Map<Integer, PromedioCalificacion>> promediosLiveData = new MutableLiveData<>();
     private final MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorLiveData = new MutableLiveData<>();
     private final MutableLiveData<String> successLiveData = new MutableLiveData<>();
@@ -37,11 +42,14 @@ public class ResenasProductoRepository {
 
     private ResenasProductoRepository(Context context) {
         this.database = CafeFidelidadDB.getInstance(context);
-        this.executor = Executors.newFixedThreadPool(3);
+        EjecutorTareas ejecutor = EjecutorTareas.getInstance();
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.consultas = ConsultasCompartidas.getInstance(context);
     }
 
-    public LiveData<List<ResenaProducto>> getResenasLiveData() { return resenasLiveData; }
     public LiveData<PromedioCalificacion> getPromedioLiveData() { return promedioLiveData; }
+    public LiveData<Map<Integer, PromedioCalificacion>> getPromediosLiveData() { return promediosLiveData; }
     public LiveData<Boolean> getIsLoadingLiveData() { return isLoadingLiveData; }
     public LiveData<String> getErrorLiveData() { return errorLiveData; }
     public LiveData<String> getSuccessLiveData() { return successLiveData; }
@@ -49,7 +57,7 @@ public class ResenasProductoRepository {
     // Crear reseña
     public void crearResena(ResenaProducto resena) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 long id = database.insertarResenaProducto(resena);
                 if (id > 0) {
@@ -65,25 +73,20 @@ public class ResenasProductoRepository {
         });
     }
 
-    // Listar reseñas por producto con paginación simple
-    public void listarResenasPorProducto(int productoId, int limit, int offset) {
-        isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
-            try {
-                List<ResenaProducto> lista = database.obtenerResenasProducto(productoId, limit, offset);
-                resenasLiveData.postValue(lista);
-            } catch (Exception e) {
-                errorLiveData.postValue(e.getMessage());
-            } finally {
-                isLoadingLiveData.postValue(false);
-            }
-        });
+    /**
+     * Página de reseñas paginada por clave (bloqueante, llamar desde un hilo de fondo).
+     *
+     * @param token token de la página anterior, o null para la primera
+     */
+    public Pagina<ResenaProducto> obtenerPaginaResenasSync(int productoId, String token, int tamano) {
+        return consultas.obtener("resenas_producto:" + productoId + ":" + token + ":" + tamano,
+                () -> database.obtenerPaginaResenasProducto(productoId, token, tamano), RastreadorInvalidaciones.RESENAS_PRODUCTOS);
     }
 
     // Actualizar reseña
     public void actualizarResena(ResenaProducto resena) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rows = database.actualizarResenaProducto(resena);
                 if (rows > 0) {
@@ -102,7 +105,7 @@ public class ResenasProductoRepository {
     // Eliminar reseña
     public void eliminarResena(int id) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rows = database.eliminarResenaProducto(id);
                 if (rows > 0) {
@@ -123,7 +126,8 @@ public class ResenasProductoRepository {
         isLoadingLiveData.postValue(true);
         executor.execute(() -> {
             try {
-                PromedioCalificacion promedio = database.obtenerPromedioCalificacionProducto(productoId);
+                PromedioCalificacion promedio = consultas.obtener("promedio_producto:" + productoId,
+                        () -> database.obtenerPromedioCalificacionProducto(productoId), RastreadorInvalidaciones.RESENAS_PRODUCTOS);
                 promedioLiveData.postValue(promedio);
             } catch (Exception e) {
                 errorLiveData.postValue(e.getMessage());
@@ -132,4 +136,23 @@ public class ResenasProductoRepository {
             }
         });
     }
+
+    /**
+     * Calificaciones de todos los productos con reseñas, indexadas por ID, para
+     * mostrarlas en un listado sin una consulta por fila.
+     */
+    public void obtenerPromedios() {
+        executor.execute(() -> {
+            try {
+                promediosLiveData.postValue(obtenerPromediosSync());
+            } catch (Exception e) {
+                errorLiveData.postValue(e.getMessage());
+            }
+        });
+    }
+
+    public Map<Integer, PromedioCalificacion> obtenerPromediosSync() {
+        return consultas.obtener("promedios_productos",
+                database::obtenerPromediosCalificacionProductos, RastreadorInvalidaciones.RESENAS_PRODUCTOS);
+    }
 }
\ No newline at end of file
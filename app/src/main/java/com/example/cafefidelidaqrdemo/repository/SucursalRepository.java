@@ -6,19 +6,27 @@ import androidx.lifecycle.MutableLiveData;
 import android.util.Log;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
+import com.example.cafefidelidaqrdemo.repository.base.ConsultasCompartidas;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataCancelable;
+import com.example.cafefidelidaqrdemo.utils.IndiceEspacial;
 
 import java.util.ArrayList;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 public class SucursalRepository {
     
     private static final String TAG = "SucursalRepository";
+    private static final int LIMITE_BUSQUEDA = 200;
+    private static SucursalRepository instance;
     private final CafeFidelidadDB database;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final ConsultasCompartidas consultas;
     
     // LiveData para observar cambios
     private final MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>(false);
@@ -26,8 +34,23 @@ public class SucursalRepository {
     private final MutableLiveData<List<Sucursal>> sucursalesLiveData = new MutableLiveData<>();
     
     public SucursalRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+    
+    public static synchronized SucursalRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new SucursalRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    public SucursalRepository(Context context, EjecutorTareas ejecutor) {
         this.database = CafeFidelidadDB.getInstance(context);
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.consultas = ConsultasCompartidas.getInstance(context);
+        // En frío, la lista se pinta con la copia en disco mientras carga la base
+        InstantaneaArranque.getInstance(context).precargarSucursales(sucursalesLiveData);
         loadSucursales();
     }
     
@@ -44,24 +67,67 @@ public class SucursalRepository {
         return sucursalesLiveData;
     }
     
-    public LiveData<Sucursal> getSucursalById(int id) {
-        MutableLiveData<Sucursal> sucursalLiveData = new MutableLiveData<>();
+    /**
+     * Busca sucursales por nombre o dirección (índice FTS, por prefijo y sin tildes).
+     */
+    public LiveData<List<Sucursal>> buscarSucursales(String query) {
+        MutableLiveData<List<Sucursal>> resultado = new MutableLiveData<>();
         executor.execute(() -> {
             try {
-                Sucursal sucursal = database.obtenerSucursalPorId(id);
-                sucursalLiveData.postValue(sucursal);
+                if (query == null || query.trim().isEmpty()) {
+                    resultado.postValue(database.obtenerTodasLasSucursales());
+                    return;
+                }
+                resultado.postValue(database.buscarSucursales(query, LIMITE_BUSQUEDA));
             } catch (Exception e) {
-                Log.e(TAG, "Error al obtener sucursal por ID", e);
-                errorLiveData.postValue("Error al obtener sucursal: " + e.getMessage());
+                Log.e(TAG, "Error al buscar sucursales", e);
+                errorLiveData.postValue("Error al buscar sucursales: " + e.getMessage());
+                resultado.postValue(new ArrayList<>());
+            }
+        });
+        return resultado;
+    }
+    
+    /**
+     * Sucursales a {@code radioKm} o menos del punto, de la más cercana a la más
+     * lejana. SQLite filtra por la caja que contiene el círculo (con índice) y
+     * solo esas pasan por la distancia exacta.
+     */
+    public LiveData<List<IndiceEspacial.Vecino<Sucursal>>> buscarSucursalesCercanas(double latitud, double longitud,
+                                                                                    double radioKm) {
+        MutableLiveData<List<IndiceEspacial.Vecino<Sucursal>>> resultado = new MutableLiveData<>();
+        executor.execute(() -> {
+            try {
+                double[] caja = IndiceEspacial.cajaLimite(latitud, longitud, radioKm);
+                List<Sucursal> enCaja = database.obtenerSucursalesEnCaja(caja[0], caja[1], caja[2], caja[3]);
+                resultado.postValue(IndiceEspacial.deSucursales(enCaja).dentroDeRadio(latitud, longitud, radioKm));
+            } catch (Exception e) {
+                Log.e(TAG, "Error al buscar sucursales cercanas", e);
+                errorLiveData.postValue("Error al buscar sucursales cercanas: " + e.getMessage());
+                resultado.postValue(new ArrayList<>());
             }
         });
-        return sucursalLiveData;
+        return resultado;
+    }
+    
+    /**
+     * Sucursal por ID. Si la pantalla se cierra antes de que la lectura salga
+     * de la cola, no se ejecuta.
+     */
+    public LiveData<Sucursal> getSucursalById(int id) {
+        return new LiveDataCancelable<>(executor,
+                senal -> consultas.obtener("sucursal:" + id,
+                        () -> database.obtenerSucursalPorId(id), RastreadorInvalidaciones.SUCURSALES),
+                e -> {
+                    Log.e(TAG, "Error al obtener sucursal por ID", e);
+                    errorLiveData.postValue("Error al obtener sucursal: " + e.getMessage());
+                });
     }
     
     // Métodos CRUD
     public void insertSucursal(Sucursal sucursal, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (sucursal == null) {
                     callback.onResult(false);
@@ -98,7 +164,7 @@ public class SucursalRepository {
     
     public void updateSucursal(Sucursal sucursal, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (sucursal == null || sucursal.getId() == null || sucursal.getId().isEmpty()) {
                     callback.onResult(false);
@@ -143,7 +209,7 @@ public class SucursalRepository {
     
     public void deleteSucursal(int sucursalId, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int result = database.eliminarSucursal(sucursalId);
                 boolean success = result > 0;
@@ -170,7 +236,8 @@ public class SucursalRepository {
         isLoadingLiveData.postValue(true);
         executor.execute(() -> {
             try {
-                Sucursal sucursal = database.obtenerSucursalPorId((int) id);
+                Sucursal sucursal = consultas.obtener("sucursal:" + id,
+                        () -> database.obtenerSucursalPorId((int) id), RastreadorInvalidaciones.SUCURSALES);
                 if (sucursal != null) {
                     callback.onSuccess(sucursal);
                 } else {
@@ -189,7 +256,10 @@ public class SucursalRepository {
     private void loadSucursales() {
         executor.execute(() -> {
             try {
-                List<Sucursal> sucursales = database.obtenerTodasLasSucursales();
+                // La lista de clientes solo muestra sucursales activas; es la misma
+                // consulta que guarda la instantánea de arranque
+                List<Sucursal> sucursales = consultas.obtener("sucursales.activas",
+                        database::obtenerSucursalesActivas, RastreadorInvalidaciones.SUCURSALES);
                 sucursalesLiveData.postValue(sucursales);
             } catch (Exception e) {
                 Log.e(TAG, "Error al cargar sucursales", e);
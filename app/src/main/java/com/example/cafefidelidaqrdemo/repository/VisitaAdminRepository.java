@@ -4,22 +4,23 @@ import android.content.Context;
 import android.util.Log;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
 import com.example.cafefidelidaqrdemo.models.Visita;
 import com.example.cafefidelidaqrdemo.network.ApiService;
 import com.example.cafefidelidaqrdemo.network.response.VisitaResponse;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.utils.DiaEpoch;
 import com.example.cafefidelidaqrdemo.utils.NetworkUtils;
 import com.example.cafefidelidaqrdemo.utils.QRValidator;
+import com.example.cafefidelidaqrdemo.workers.CompactacionVisitasWorker;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.security.MessageDigest;
@@ -40,7 +41,9 @@ public class VisitaAdminRepository {
     private final CafeFidelidadDB database;
     private final ApiService apiService;
     private final Context context;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final Executor fondo;
     private final MutableLiveData<String> _mensajeEstado = new MutableLiveData<>();
     private final MutableLiveData<List<Visita>> visitasLiveData = new MutableLiveData<>();
     private final MutableLiveData<List<Visita>> pendientesLiveData = new MutableLiveData<>();
@@ -48,10 +51,16 @@ public class VisitaAdminRepository {
     private final MutableLiveData<Integer> contadorHoyLiveData = new MutableLiveData<>();
     
     public VisitaAdminRepository(Context context, ApiService apiService) {
+        this(context, apiService, EjecutorTareas.getInstance());
+    }
+    
+    public VisitaAdminRepository(Context context, ApiService apiService, EjecutorTareas ejecutor) {
         this.database = CafeFidelidadDB.getInstance(context);
         this.apiService = apiService;
         this.context = context;
-        this.executor = Executors.newFixedThreadPool(2);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.fondo = ejecutor.fondo();
     }
     
     // LiveData para observar mensajes de estado
@@ -113,20 +122,8 @@ public class VisitaAdminRepository {
     public LiveData<Integer> contarVisitasHoy() {
         executor.execute(() -> {
             try {
-                // Obtener visitas de hoy (simplificado)
-                List<Visita> todasLasVisitas = database.obtenerTodasLasVisitas();
-                String fechaHoy = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-                
-                int count = 0;
-                for (Visita visita : todasLasVisitas) {
-                    // Convertir timestamp a fecha string para comparar
-                    String fechaVisita = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date(visita.getFechaVisita()));
-                    if (fechaVisita.equals(fechaHoy)) {
-                        count++;
-                    }
-                }
-                
-                contadorHoyLiveData.postValue(count);
+                // Conteo por epoch_day: recorre solo el rango de hoy en el índice
+                contadorHoyLiveData.postValue(database.contarVisitasDia(DiaEpoch.hoy()));
             } catch (Exception e) {
                 Log.e(TAG, "Error contando visitas de hoy", e);
                 contadorHoyLiveData.postValue(0);
@@ -139,7 +136,7 @@ public class VisitaAdminRepository {
      * Procesar QR escaneado
      */
     public void procesarQR(String qrContent, QRProcessCallback callback) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Validar formato del QR
                 QRData qrData = validarFormatoQR(qrContent);
@@ -290,22 +287,24 @@ public class VisitaAdminRepository {
     private void enviarVisitaAlServidor(Visita visita, QRProcessCallback callback) {
         // Nota: ApiService necesitaría ser actualizado para aceptar objetos Visita
         // Por ahora, simplificamos la implementación
-        executor.execute(() -> {
-            try {
-                // Simular envío al servidor
-                // En una implementación real, aquí iría la llamada a la API
-                
-                // Actualizar la visita como enviada (simplificado)
-                database.actualizarVisita(visita);
-                _mensajeEstado.postValue("Visita registrada exitosamente");
-                callback.onSuccess("Visita registrada", null);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error enviando visita al servidor", e);
-                _mensajeEstado.postValue("Error de conexión. Se reintentará automáticamente.");
-                callback.onError("Error de conexión: " + e.getMessage());
-            }
-        });
+        escritor.execute(() -> enviarVisitaAlServidorSync(visita, callback));
+    }
+    
+    private void enviarVisitaAlServidorSync(Visita visita, QRProcessCallback callback) {
+        try {
+            // Simular envío al servidor
+            // En una implementación real, aquí iría la llamada a la API
+            
+            // Actualizar la visita como enviada (simplificado)
+            database.actualizarVisita(visita);
+            _mensajeEstado.postValue("Visita registrada exitosamente");
+            callback.onSuccess("Visita registrada", null);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error enviando visita al servidor", e);
+            _mensajeEstado.postValue("Error de conexión. Se reintentará automáticamente.");
+            callback.onError("Error de conexión: " + e.getMessage());
+        }
     }
     
     /**
@@ -317,18 +316,13 @@ public class VisitaAdminRepository {
             return;
         }
         
-        executor.execute(() -> {
-            List<Visita> pendientes = database.obtenerTodasLasVisitas();
-            
-            if (pendientes.isEmpty()) {
-                _mensajeEstado.postValue("No hay visitas pendientes");
-                return;
-            }
+        fondo.execute(() -> {
+            _mensajeEstado.postValue("Sincronizando visitas...");
             
-            _mensajeEstado.postValue("Sincronizando " + pendientes.size() + " visitas...");
-            
-            for (Visita visita : pendientes) {
-                enviarVisitaAlServidor(visita, new QRProcessCallback() {
+            // Recorrido por streaming y envío en el mismo hilo: ni el historial ni
+            // las tareas pendientes se acumulan en memoria
+            int enviadas = database.recorrerVisitas(visita -> {
+                enviarVisitaAlServidorSync(visita, new QRProcessCallback() {
                     @Override
                     public void onSuccess(String mensaje, String progreso) {
                         Log.d(TAG, "Visita sincronizada: " + visita.getId());
@@ -339,7 +333,10 @@ public class VisitaAdminRepository {
                         Log.e(TAG, "Error sincronizando visita: " + visita.getId() + " - " + error);
                     }
                 });
-            }
+                return true;
+            });
+            
+            _mensajeEstado.postValue(enviadas == 0 ? "No hay visitas pendientes" : enviadas + " visitas sincronizadas");
         });
     }
     
@@ -347,21 +344,24 @@ public class VisitaAdminRepository {
      * Reintentar visitas con error
      */
     public void reintentarErrores() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             // Simplificado: reintentar sincronización de todas las visitas
             sincronizarPendientes();
         });
     }
     
     /**
-     * Limpiar datos antiguos
+     * Compacta las visitas anteriores al horizonte de retención en el resumen
+     * diario (ver {@link CompactacionVisitasWorker}). El WorkInfo devuelto trae
+     * el progreso: visitas compactadas y total.
      */
-    public void limpiarDatosAntiguos() {
-        executor.execute(() -> {
-            // Implementación simplificada
-            // En una versión completa, se eliminarían registros antiguos de la base de datos
-            Log.d(TAG, "Limpieza de datos antiguos - funcionalidad pendiente");
-        });
+    public LiveData<WorkInfo> limpiarDatosAntiguos(int diasRetencion) {
+        UUID trabajo = CompactacionVisitasWorker.ejecutarAhora(context, diasRetencion);
+        return WorkManager.getInstance(context).getWorkInfoByIdLiveData(trabajo);
+    }
+    
+    public LiveData<WorkInfo> limpiarDatosAntiguos() {
+        return limpiarDatosAntiguos(CompactacionVisitasWorker.DIAS_RETENCION_POR_DEFECTO);
     }
     
     /**
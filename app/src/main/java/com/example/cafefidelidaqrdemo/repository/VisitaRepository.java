@@ -7,25 +7,37 @@ import android.util.Log;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
 import com.example.cafefidelidaqrdemo.models.Visita;
+import com.example.cafefidelidaqrdemo.repository.base.CargadorPaginado;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
+import com.example.cafefidelidaqrdemo.repository.base.LiveDataCancelable;
+import com.example.cafefidelidaqrdemo.utils.DiaEpoch;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 public class VisitaRepository {
     
     private static final String TAG = "VisitaRepository";
+    private static final int TAMANO_PAGINA = 50;
     private final CafeFidelidadDB database;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
     
     // LiveData para observar cambios
     private final MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorLiveData = new MutableLiveData<>();
     private final MutableLiveData<List<Visita>> visitasLiveData = new MutableLiveData<>();
+    private final CargadorPaginado<Visita> paginadorVisitas;
     
     public VisitaRepository(Context context) {
+        this(context, EjecutorTareas.getInstance());
+    }
+    
+    public VisitaRepository(Context context, EjecutorTareas ejecutor) {
         this.database = CafeFidelidadDB.getInstance(context);
-        this.executor = Executors.newFixedThreadPool(4);
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
+        this.paginadorVisitas = new CargadorPaginado<>(database::obtenerPaginaVisitas, TAMANO_PAGINA, visitasLiveData);
         loadVisitas();
     }
     
@@ -38,22 +50,101 @@ public class VisitaRepository {
         return errorLiveData;
     }
     
+    /**
+     * Visitas cargadas hasta ahora, de la más reciente a la más antigua. Se llena
+     * por páginas: usar {@link #cargarMasVisitas()} al llegar al final de la lista.
+     */
     public LiveData<List<Visita>> getAllVisitas() {
         return visitasLiveData;
     }
     
+    public void cargarMasVisitas() {
+        executor.execute(() -> {
+            try {
+                paginadorVisitas.cargarSiguiente();
+            } catch (Exception e) {
+                Log.e(TAG, "Error al cargar más visitas", e);
+                errorLiveData.postValue("Error al cargar visitas: " + e.getMessage());
+            }
+        });
+    }
+    
+    public boolean hayMasVisitas() {
+        return paginadorVisitas.hayMas();
+    }
+    
+    /**
+     * Visitas del cliente. Si la pantalla deja de observar antes de que
+     * termine, la consulta se cancela.
+     */
     public LiveData<List<Visita>> getVisitasByCliente(int clienteId) {
-        MutableLiveData<List<Visita>> visitasClienteLiveData = new MutableLiveData<>();
+        return new LiveDataCancelable<>(executor,
+                senal -> database.obtenerVisitasPorCliente(clienteId, senal),
+                e -> {
+                    Log.e(TAG, "Error al obtener visitas por cliente", e);
+                    errorLiveData.postValue("Error al obtener visitas: " + e.getMessage());
+                });
+    }
+    
+    /**
+     * Visitas en [desde, hasta) (milisegundos), de la más reciente a la más antigua.
+     */
+    public LiveData<List<Visita>> getVisitasEntre(long desde, long hasta) {
+        MutableLiveData<List<Visita>> visitasRangoLiveData = new MutableLiveData<>();
+        executor.execute(() -> {
+            try {
+                visitasRangoLiveData.postValue(database.obtenerVisitasEntre(desde, hasta));
+            } catch (Exception e) {
+                Log.e(TAG, "Error al obtener visitas por rango", e);
+                errorLiveData.postValue("Error al obtener visitas: " + e.getMessage());
+            }
+        });
+        return visitasRangoLiveData;
+    }
+    
+    public LiveData<List<Visita>> getVisitasSucursalEntre(int sucursalId, long desde, long hasta) {
+        MutableLiveData<List<Visita>> visitasRangoLiveData = new MutableLiveData<>();
+        executor.execute(() -> {
+            try {
+                visitasRangoLiveData.postValue(database.obtenerVisitasSucursalEntre(sucursalId, desde, hasta));
+            } catch (Exception e) {
+                Log.e(TAG, "Error al obtener visitas de la sucursal por rango", e);
+                errorLiveData.postValue("Error al obtener visitas: " + e.getMessage());
+            }
+        });
+        return visitasRangoLiveData;
+    }
+    
+    /**
+     * Visitas del día local indicado (ver {@link DiaEpoch}).
+     */
+    public LiveData<List<Visita>> getVisitasDelDia(long dia) {
+        MutableLiveData<List<Visita>> visitasDiaLiveData = new MutableLiveData<>();
         executor.execute(() -> {
             try {
-                List<Visita> visitas = database.obtenerVisitasPorCliente(clienteId);
-                visitasClienteLiveData.postValue(visitas);
+                visitasDiaLiveData.postValue(database.obtenerVisitasDelDia(dia));
             } catch (Exception e) {
-                Log.e(TAG, "Error al obtener visitas por cliente", e);
+                Log.e(TAG, "Error al obtener visitas del día", e);
                 errorLiveData.postValue("Error al obtener visitas: " + e.getMessage());
             }
         });
-        return visitasClienteLiveData;
+        return visitasDiaLiveData;
+    }
+    
+    /**
+     * Saldo de sellos vigente del cliente (lectura O(1) del contador).
+     */
+    public LiveData<Integer> getSellosCliente(int clienteId) {
+        MutableLiveData<Integer> sellosLiveData = new MutableLiveData<>();
+        executor.execute(() -> {
+            try {
+                sellosLiveData.postValue(database.obtenerSellosCliente(clienteId));
+            } catch (Exception e) {
+                Log.e(TAG, "Error al obtener sellos del cliente", e);
+                errorLiveData.postValue("Error al obtener sellos: " + e.getMessage());
+            }
+        });
+        return sellosLiveData;
     }
     
     public LiveData<Visita> getVisitaById(int id) {
@@ -73,7 +164,7 @@ public class VisitaRepository {
     // Métodos CRUD
     public void insertVisita(Visita visita, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (visita == null) {
                     callback.onResult(false);
@@ -109,9 +200,36 @@ public class VisitaRepository {
         });
     }
     
+    /**
+     * Inserta un lote de visitas (p. ej. visitas registradas offline) en una sola
+     * transacción. El callback recibe el ID de cada visita o -1 si falló.
+     */
+    public void insertVisitas(List<Visita> visitas, OnResultCallback<long[]> callback) {
+        isLoadingLiveData.postValue(true);
+        escritor.execute(() -> {
+            try {
+                if (visitas == null || visitas.isEmpty()) {
+                    callback.onResult(new long[0]);
+                    return;
+                }
+
+                long[] ids = database.insertarVisitas(visitas);
+                loadVisitas();
+                errorLiveData.postValue(null);
+                callback.onResult(ids);
+            } catch (Exception e) {
+                Log.e(TAG, "Error al insertar lote de visitas", e);
+                errorLiveData.postValue("Error al insertar visitas: " + e.getMessage());
+                callback.onResult(null);
+            } finally {
+                isLoadingLiveData.postValue(false);
+            }
+        });
+    }
+
     public void updateVisita(Visita visita, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (visita == null || visita.getId() == null || visita.getId().isEmpty()) {
                     callback.onResult(false);
@@ -142,7 +260,7 @@ public class VisitaRepository {
     
     public void deleteVisita(int visitaId, OnResultCallback<Boolean> callback) {
         isLoadingLiveData.postValue(true);
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int result = database.eliminarVisita(visitaId);
                 boolean success = result > 0;
@@ -166,11 +284,12 @@ public class VisitaRepository {
     }
     
     // Métodos privados
+    // Relee las visitas ya cargadas (la primera página si aún no hay ninguna),
+    // así una escritura no devuelve el listado a la primera página
     private void loadVisitas() {
         executor.execute(() -> {
             try {
-                List<Visita> visitas = database.obtenerTodasLasVisitas();
-                visitasLiveData.postValue(visitas);
+                paginadorVisitas.refrescar();
             } catch (Exception e) {
                 Log.e(TAG, "Error al cargar visitas", e);
                 errorLiveData.postValue("Error al cargar visitas: " + e.getMessage());
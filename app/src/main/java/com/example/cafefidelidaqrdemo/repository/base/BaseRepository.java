@@ -3,8 +3,7 @@ package com.example.cafefidelidaqrdemo.repository.base;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * Clase base para todos los repositorios en la arquitectura MVVM
@@ -12,7 +11,9 @@ import java.util.concurrent.Executors;
  */
 public abstract class BaseRepository {
     
-    protected final ExecutorService executor;
+    // Carriles del planificador compartido: lecturas para la UI y escrituras en serie
+    protected final Executor executor;
+    protected final Executor escritor;
     
     // Estados comunes para todos los repositorios
     protected final MutableLiveData<Boolean> _isLoading = new MutableLiveData<>(false);
@@ -27,11 +28,12 @@ public abstract class BaseRepository {
     public LiveData<Boolean> getIsOffline() { return _isOffline; }
     
     protected BaseRepository() {
-        this.executor = Executors.newFixedThreadPool(4);
+        this(EjecutorTareas.getInstance());
     }
     
-    protected BaseRepository(int threadPoolSize) {
-        this.executor = Executors.newFixedThreadPool(threadPoolSize);
+    protected BaseRepository(EjecutorTareas ejecutor) {
+        this.executor = ejecutor.lecturas();
+        this.escritor = ejecutor.escrituras();
     }
     
     /**
@@ -86,12 +88,17 @@ public abstract class BaseRepository {
     }
     
     /**
-     * Limpia recursos del repositorio
+     * Ejecuta una escritura en background, en serie con las demás escrituras
+     */
+    protected void executeWrite(Runnable operation) {
+        escritor.execute(operation);
+    }
+    
+    /**
+     * Limpia recursos del repositorio. El planificador es compartido y no se
+     * apaga aquí.
      */
     public void cleanup() {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
     }
     
     /**
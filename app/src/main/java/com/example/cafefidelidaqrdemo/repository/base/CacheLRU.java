@@ -0,0 +1,104 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché en memoria de tamaño acotado: al llenarse descarta la entrada usada
+ * hace más tiempo, y cada entrada vence a los {@code ttlMs} de haberse
+ * guardado. Cuenta aciertos y fallos para medir si vale la pena.
+ *
+ * Es segura entre hilos. No guarda nulos: un fallo de búsqueda no se cachea.
+ */
+public class CacheLRU<K, V> {
+
+    private final int capacidad;
+    private volatile long ttlMs;
+    private final LinkedHashMap<K, Entrada<V>> entradas;
+
+    private long aciertos = 0;
+    private long fallos = 0;
+
+    public CacheLRU(int capacidad, long ttlMs) {
+        this.capacidad = capacidad;
+        this.ttlMs = ttlMs;
+        // accessOrder = true: cada get mueve la entrada al final
+        this.entradas = new LinkedHashMap<K, Entrada<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> eldest) {
+                return size() > CacheLRU.this.capacidad;
+            }
+        };
+    }
+
+    /**
+     * Valor vigente para la clave, o null si no está o ya venció.
+     */
+    public synchronized V obtener(K clave) {
+        Entrada<V> entrada = entradas.get(clave);
+        if (entrada == null || ahora() - entrada.guardado > ttlMs) {
+            if (entrada != null) {
+                entradas.remove(clave);
+            }
+            fallos++;
+            return null;
+        }
+        aciertos++;
+        return entrada.valor;
+    }
+
+    public synchronized void guardar(K clave, V valor) {
+        if (valor != null) {
+            entradas.put(clave, new Entrada<>(valor, ahora()));
+        }
+    }
+
+    public synchronized void quitar(K clave) {
+        entradas.remove(clave);
+    }
+
+    public synchronized void limpiar() {
+        entradas.clear();
+    }
+
+    public void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public synchronized long getAciertos() {
+        return aciertos;
+    }
+
+    public synchronized long getFallos() {
+        return fallos;
+    }
+
+    /**
+     * Fracción de búsquedas resueltas desde memoria (0 a 1).
+     */
+    public synchronized double getTasaAciertos() {
+        long total = aciertos + fallos;
+        return total == 0 ? 0 : (double) aciertos / total;
+    }
+
+    public synchronized int tamano() {
+        return entradas.size();
+    }
+
+    private static long ahora() {
+        // Reloj monótono: no salta si cambian la hora del dispositivo
+        return SystemClock.elapsedRealtime();
+    }
+
+    private static final class Entrada<V> {
+        final V valor;
+        final long guardado;
+
+        Entrada(V valor, long guardado) {
+            this.valor = valor;
+            this.guardado = guardado;
+        }
+    }
+}
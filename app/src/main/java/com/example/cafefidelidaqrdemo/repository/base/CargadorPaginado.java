@@ -0,0 +1,78 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.cafefidelidaqrdemo.models.Pagina;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acumula páginas de una consulta paginada por clave y publica la lista
+ * resultante en un LiveData. Los métodos son bloqueantes: deben llamarse
+ * desde el executor del repositorio o ViewModel que lo usa.
+ */
+public class CargadorPaginado<T> {
+
+    /**
+     * Fuente de páginas, normalmente un método obtenerPagina* de CafeFidelidadDB.
+     */
+    public interface FuentePaginas<T> {
+        Pagina<T> cargar(String token, int tamano);
+    }
+
+    private final FuentePaginas<T> fuente;
+    private final int tamanoPagina;
+    private final MutableLiveData<List<T>> destino;
+
+    private final List<T> cargados = new ArrayList<>();
+    private String siguienteToken;
+
+    public CargadorPaginado(FuentePaginas<T> fuente, int tamanoPagina, MutableLiveData<List<T>> destino) {
+        this.fuente = fuente;
+        this.tamanoPagina = tamanoPagina;
+        this.destino = destino;
+    }
+
+    /**
+     * Descarta lo acumulado y carga la primera página.
+     */
+    public synchronized void reiniciar() {
+        Pagina<T> pagina = fuente.cargar(null, tamanoPagina);
+        cargados.clear();
+        cargados.addAll(pagina.getItems());
+        siguienteToken = pagina.getSiguienteToken();
+        destino.postValue(new ArrayList<>(cargados));
+    }
+
+    /**
+     * Vuelve a leer desde el principio tantas filas como ya había cargadas (al
+     * menos una página), de modo que tras una escritura el listado se actualiza
+     * sin perder las páginas que el usuario ya recorrió.
+     */
+    public synchronized void refrescar() {
+        Pagina<T> pagina = fuente.cargar(null, Math.max(tamanoPagina, cargados.size()));
+        cargados.clear();
+        cargados.addAll(pagina.getItems());
+        siguienteToken = pagina.getSiguienteToken();
+        destino.postValue(new ArrayList<>(cargados));
+    }
+
+    /**
+     * Agrega la página siguiente. Devuelve false si ya no quedaban páginas.
+     */
+    public synchronized boolean cargarSiguiente() {
+        if (siguienteToken == null) {
+            return false;
+        }
+        Pagina<T> pagina = fuente.cargar(siguienteToken, tamanoPagina);
+        cargados.addAll(pagina.getItems());
+        siguienteToken = pagina.getSiguienteToken();
+        destino.postValue(new ArrayList<>(cargados));
+        return true;
+    }
+
+    public synchronized boolean hayMas() {
+        return siguienteToken != null;
+    }
+}
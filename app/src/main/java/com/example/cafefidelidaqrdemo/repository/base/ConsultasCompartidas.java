@@ -0,0 +1,142 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import android.content.Context;
+
+import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agrupa lecturas idénticas que llegan al mismo tiempo ("single flight"): si
+ * ya hay una consulta en curso con la misma clave, quien llega después espera
+ * ese resultado en lugar de volver a consultar SQLite.
+ *
+ * La clave debe identificar la consulta y sus parámetros (p. ej.
+ * {@code "producto:" + id}). Solo se comparte una consulta iniciada con las
+ * mismas versiones de tablas: si hubo una escritura mientras corría, el
+ * siguiente llamador lanza una consulta nueva y no recibe datos viejos.
+ *
+ * El resultado se entrega tal cual a todos los que esperaban: no debe
+ * modificarse (copiar la lista antes de filtrarla).
+ */
+public class ConsultasCompartidas {
+
+    public interface Consulta<T> {
+        T ejecutar();
+    }
+
+    private static ConsultasCompartidas instance;
+
+    private final RastreadorInvalidaciones rastreador;
+    private final Map<String, Vuelo> enVuelo = new HashMap<>();
+    private final AtomicLong ejecutadas = new AtomicLong();
+    private final AtomicLong unidas = new AtomicLong();
+
+    public static synchronized ConsultasCompartidas getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConsultasCompartidas(CafeFidelidadDB.getInstance(context).getInvalidaciones());
+        }
+        return instance;
+    }
+
+    ConsultasCompartidas(RastreadorInvalidaciones rastreador) {
+        this.rastreador = rastreador;
+    }
+
+    /**
+     * Ejecuta la consulta en el hilo actual, o espera la que ya está en curso
+     * con la misma clave. Bloqueante: llamar desde un hilo de fondo.
+     *
+     * @param tablas tablas que lee la consulta
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtener(String clave, Consulta<T> consulta, String... tablas) {
+        long version = rastreador.version(tablas);
+        Vuelo existente;
+        Vuelo propio = null;
+        synchronized (this) {
+            existente = enVuelo.get(clave);
+            if (existente == null || existente.version != version) {
+                existente = null;
+                propio = new Vuelo(version);
+                enVuelo.put(clave, propio);
+            }
+        }
+        if (existente != null) {
+            unidas.incrementAndGet();
+            return (T) existente.esperar();
+        }
+
+        ejecutadas.incrementAndGet();
+        try {
+            T resultado = consulta.ejecutar();
+            propio.completar(resultado, null);
+            return resultado;
+        } catch (RuntimeException e) {
+            propio.completar(null, e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                // Puede haber sido reemplazado por una consulta más nueva
+                if (enVuelo.get(clave) == propio) {
+                    enVuelo.remove(clave);
+                }
+            }
+        }
+    }
+
+    /**
+     * Consultas que efectivamente llegaron a SQLite.
+     */
+    public long getEjecutadas() {
+        return ejecutadas.get();
+    }
+
+    /**
+     * Llamadas que se resolvieron esperando una consulta ya en curso.
+     */
+    public long getUnidas() {
+        return unidas.get();
+    }
+
+    public String resumen() {
+        long total = ejecutadas.get() + unidas.get();
+        int ahorro = total == 0 ? 0 : (int) (unidas.get() * 100 / total);
+        return "consultas ejecutadas=" + ejecutadas.get() + ", unidas=" + unidas.get() + " (" + ahorro + "% ahorrado)";
+    }
+
+    private static final class Vuelo {
+        private final long version;
+        private final CountDownLatch listo = new CountDownLatch(1);
+        private Object resultado;
+        private RuntimeException error;
+
+        Vuelo(long version) {
+            this.version = version;
+        }
+
+        void completar(Object resultado, RuntimeException error) {
+            this.resultado = resultado;
+            this.error = error;
+            listo.countDown();
+        }
+
+        Object esperar() {
+            try {
+                listo.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Consulta interrumpida");
+            }
+            if (error != null) {
+                throw error;
+            }
+            return resultado;
+        }
+    }
+}
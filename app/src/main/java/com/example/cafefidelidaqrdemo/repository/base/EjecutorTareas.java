@@ -0,0 +1,160 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Planificador compartido por todo el proceso para el trabajo de datos. Usa un
+ * único pool acotado de hilos y reparte las tareas en tres carriles:
+ *
+ * <ul>
+ *   <li>{@link #lecturas()}: lecturas que la UI está esperando. Máxima prioridad
+ *   y en paralelo.</li>
+ *   <li>{@link #escrituras()}: escrituras pedidas por el usuario. Corren de a una
+ *   y en orden, porque SQLite admite un solo escritor; así ningún hilo del pool
+ *   queda bloqueado esperando el lock de escritura.</li>
+ *   <li>{@link #fondo()}: sincronización, exportaciones y mantenimiento, que
+ *   también escriben. Comparten la fila del escritor con menor prioridad: corren
+ *   de a una, nunca junto a una escritura, y solo cuando no queda ninguna
+ *   escritura del usuario esperando. Una tarea de fondo larga demora a las
+ *   escrituras que lleguen mientras corre, así que conviene partirla.</li>
+ * </ul>
+ *
+ * Los repositorios lo reciben por constructor; {@link #getInstance()} es la
+ * instancia por defecto. No se apaga nunca: quien lo usa no debe llamar shutdown.
+ */
+public final class EjecutorTareas {
+
+    // El orden define la prioridad: primero se atiende el de menor ordinal
+    enum Prioridad { LECTURA_UI, ESCRITURA, FONDO }
+
+    private static final long ESPERA_HILO_OCIOSO_SEG = 30;
+    private static EjecutorTareas instance;
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong secuencia = new AtomicLong();
+    private final Executor lecturas;
+    private final Executor escrituras;
+    private final Executor fondo;
+
+    public static synchronized EjecutorTareas getInstance() {
+        if (instance == null) {
+            int nucleos = Runtime.getRuntime().availableProcessors();
+            instance = new EjecutorTareas(Math.max(2, Math.min(4, nucleos)));
+        }
+        return instance;
+    }
+
+    EjecutorTareas(int hilos) {
+        pool = new ThreadPoolExecutor(hilos, hilos, ESPERA_HILO_OCIOSO_SEG, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new FabricaHilos());
+        // Sin trabajo, los hilos se liberan solos
+        pool.allowCoreThreadTimeOut(true);
+        lecturas = tarea -> enviar(Prioridad.LECTURA_UI, tarea);
+        CarrilEscritor escritor = new CarrilEscritor();
+        escrituras = tarea -> escritor.agregar(Prioridad.ESCRITURA, tarea);
+        fondo = tarea -> escritor.agregar(Prioridad.FONDO, tarea);
+    }
+
+    public Executor lecturas() {
+        return lecturas;
+    }
+
+    public Executor escrituras() {
+        return escrituras;
+    }
+
+    public Executor fondo() {
+        return fondo;
+    }
+
+    private void enviar(Prioridad prioridad, Runnable tarea) {
+        pool.execute(new TareaPriorizada(tarea, prioridad, secuencia.getAndIncrement()));
+    }
+
+    /**
+     * Tarea en la cola del pool: por prioridad y, dentro de la misma prioridad,
+     * en orden de llegada.
+     */
+    private static final class TareaPriorizada implements Runnable, Comparable<TareaPriorizada> {
+        private final Runnable tarea;
+        private final Prioridad prioridad;
+        private final long orden;
+
+        TareaPriorizada(Runnable tarea, Prioridad prioridad, long orden) {
+            this.tarea = tarea;
+            this.prioridad = prioridad;
+            this.orden = orden;
+        }
+
+        @Override
+        public void run() {
+            tarea.run();
+        }
+
+        @Override
+        public int compareTo(TareaPriorizada otra) {
+            int porPrioridad = prioridad.compareTo(otra.prioridad);
+            return porPrioridad != 0 ? porPrioridad : Long.compare(orden, otra.orden);
+        }
+    }
+
+    /**
+     * Fila única del escritor sobre el pool compartido: ejecuta de a una tarea,
+     * nunca ocupa más de un hilo. Al terminar cada tarea elige la siguiente
+     * escritura del usuario y, si no hay, la siguiente de fondo; cada cola se
+     * atiende en orden de llegada.
+     */
+    private final class CarrilEscritor {
+        private final ArrayDeque<Runnable> escriturasPendientes = new ArrayDeque<>();
+        private final ArrayDeque<Runnable> fondoPendiente = new ArrayDeque<>();
+        private boolean activo = false;
+
+        synchronized void agregar(Prioridad prioridad, Runnable tarea) {
+            (prioridad == Prioridad.ESCRITURA ? escriturasPendientes : fondoPendiente).add(tarea);
+            if (!activo) {
+                activo = true;
+                programarSiguiente();
+            }
+        }
+
+        private synchronized void programarSiguiente() {
+            Prioridad prioridad = Prioridad.ESCRITURA;
+            Runnable siguiente = escriturasPendientes.poll();
+            if (siguiente == null) {
+                prioridad = Prioridad.FONDO;
+                siguiente = fondoPendiente.poll();
+            }
+            if (siguiente == null) {
+                activo = false;
+                return;
+            }
+            Runnable tarea = siguiente;
+            enviar(prioridad, () -> {
+                try {
+                    tarea.run();
+                } finally {
+                    programarSiguiente();
+                }
+            });
+        }
+    }
+
+    private static final class FabricaHilos implements ThreadFactory {
+        private final AtomicInteger numero = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread hilo = new Thread(r, "datos-" + numero.getAndIncrement());
+            // Por debajo del hilo principal para no competir con el renderizado
+            hilo.setPriority(Thread.NORM_PRIORITY - 1);
+            return hilo;
+        }
+    }
+}
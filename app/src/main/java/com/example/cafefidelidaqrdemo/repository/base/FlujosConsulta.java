@@ -0,0 +1,111 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Registro de consultas observables compartidas por clave. Pedir dos veces la
+ * misma clave devuelve el mismo {@link LiveDataTablas}: la consulta corre al
+ * aparecer el primer observador, los siguientes reciben el último valor sin
+ * volver a leer y se relee solo cuando cambian las tablas indicadas.
+ *
+ * Cuando el flujo se queda sin observadores se libera tras
+ * {@link #GRACIA_MS}, de modo que un fragmento recreado por rotación vuelve a
+ * encontrar el mismo flujo (y su valor) sin consultar.
+ *
+ * La clave identifica la consulta y su tipo de resultado; el valor se comparte
+ * entre todos los observadores y no debe modificarse.
+ */
+public class FlujosConsulta {
+
+    private static final String TAG = "FlujosConsulta";
+    static final long GRACIA_MS = 5000;
+
+    private static FlujosConsulta instance;
+
+    private final RastreadorInvalidaciones rastreador;
+    private final Executor executor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Flujo<?>> flujos = new HashMap<>();
+
+    public static synchronized FlujosConsulta getInstance(Context context) {
+        if (instance == null) {
+            instance = new FlujosConsulta(CafeFidelidadDB.getInstance(context).getInvalidaciones(),
+                    EjecutorTareas.getInstance().lecturas());
+        }
+        return instance;
+    }
+
+    FlujosConsulta(RastreadorInvalidaciones rastreador, Executor executor) {
+        this.rastreador = rastreador;
+        this.executor = executor;
+    }
+
+    /**
+     * Flujo para la clave, creándolo si no existe. La consulta corre en el
+     * executor de lecturas; si falla se registra el error y se conserva el
+     * último valor.
+     *
+     * @param tablas tablas que lee la consulta
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> LiveDataTablas<T> obtener(String clave, ConsultasCompartidas.Consulta<T> consulta,
+                                                     String... tablas) {
+        Flujo<T> flujo = (Flujo<T>) flujos.get(clave);
+        if (flujo == null) {
+            flujo = new Flujo<>(clave, consulta, tablas);
+            flujos.put(clave, flujo);
+            // Si nadie llega a observarlo, no queda retenido en el registro
+            handler.postDelayed(flujo.liberar, GRACIA_MS);
+        }
+        return flujo;
+    }
+
+    private synchronized void liberarSiSinUso(Flujo<?> flujo) {
+        if (!flujo.hasActiveObservers() && flujos.get(flujo.clave) == flujo) {
+            flujos.remove(flujo.clave);
+        }
+    }
+
+    private final class Flujo<T> extends LiveDataTablas<T> {
+        private final String clave;
+        private final ConsultasCompartidas.Consulta<T> consulta;
+        private final Runnable liberar = () -> liberarSiSinUso(this);
+
+        Flujo(String clave, ConsultasCompartidas.Consulta<T> consulta, String... tablas) {
+            super(rastreador, executor, tablas);
+            this.clave = clave;
+            this.consulta = consulta;
+        }
+
+        @Override
+        protected void cargar() {
+            try {
+                postValue(consulta.ejecutar());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error al cargar " + clave, e);
+            }
+        }
+
+        @Override
+        protected void onActive() {
+            handler.removeCallbacks(liberar);
+            super.onActive();
+        }
+
+        @Override
+        protected void onInactive() {
+            super.onInactive();
+            handler.postDelayed(liberar, GRACIA_MS);
+        }
+    }
+}
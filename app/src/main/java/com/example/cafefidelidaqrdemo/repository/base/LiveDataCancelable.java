@@ -0,0 +1,102 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Lectura única atada a sus observadores. La consulta se encola al aparecer el
+ * primer observador activo y, si el último se va antes de que termine, se
+ * cancela: si seguía en cola se descarta sin tocar la base, y si ya corría se
+ * cancela su {@link CancellationSignal} para cortar el cursor.
+ *
+ * Si vuelve a haber observadores y el valor nunca llegó, la consulta se lanza
+ * de nuevo. Una vez entregado el resultado no se vuelve a consultar.
+ */
+public class LiveDataCancelable<T> extends MutableLiveData<T> {
+
+    public interface Consulta<T> {
+        /**
+         * @param senal pasarla a la consulta de SQLite para que pueda cortarse
+         */
+        T ejecutar(CancellationSignal senal);
+    }
+
+    public interface AlFallar {
+        void onError(Exception e);
+    }
+
+    private final Executor executor;
+    private final Consulta<T> consulta;
+    private final AlFallar alFallar;
+
+    private CancellationSignal enCurso;
+    private boolean entregado = false;
+
+    public LiveDataCancelable(Executor executor, Consulta<T> consulta, AlFallar alFallar) {
+        this.executor = executor;
+        this.consulta = consulta;
+        this.alFallar = alFallar;
+    }
+
+    @Override
+    protected void onActive() {
+        lanzar();
+    }
+
+    @Override
+    protected void onInactive() {
+        cancelar();
+    }
+
+    /**
+     * Cancela la consulta pendiente, si la hay. No afecta un valor ya entregado.
+     */
+    public synchronized void cancelar() {
+        if (enCurso != null) {
+            enCurso.cancel();
+            enCurso = null;
+        }
+    }
+
+    private synchronized void lanzar() {
+        if (entregado || enCurso != null) {
+            return;
+        }
+        CancellationSignal senal = new CancellationSignal();
+        enCurso = senal;
+        executor.execute(() -> ejecutar(senal));
+    }
+
+    private void ejecutar(CancellationSignal senal) {
+        // Cancelada mientras esperaba en cola: no se llega a abrir el cursor
+        if (senal.isCanceled()) {
+            return;
+        }
+        try {
+            T resultado = consulta.ejecutar(senal);
+            synchronized (this) {
+                if (senal.isCanceled()) {
+                    return;
+                }
+                entregado = true;
+                enCurso = null;
+            }
+            postValue(resultado);
+        } catch (OperationCanceledException e) {
+            // Nadie espera el resultado
+        } catch (Exception e) {
+            synchronized (this) {
+                if (enCurso == senal) {
+                    enCurso = null;
+                }
+            }
+            if (!senal.isCanceled() && alFallar != null) {
+                alFallar.onError(e);
+            }
+        }
+    }
+}
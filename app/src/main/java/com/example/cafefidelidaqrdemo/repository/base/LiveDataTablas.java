@@ -0,0 +1,89 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.cafefidelidaqrdemo.database.RastreadorInvalidaciones;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LiveData que se recarga solo cuando cambian las tablas de las que depende y
+ * solo mientras tiene observadores activos. Si una tabla cambió mientras nadie
+ * observaba, la recarga se hace al volver a activarse; si nada cambió, se
+ * conserva el último valor sin consultar.
+ *
+ * La recarga corre en el executor indicado y debe publicar el resultado con
+ * {@link #postValue(Object)} (por ejemplo vía un {@link CargadorPaginado} que
+ * use esta instancia como destino). Varias invalidaciones seguidas producen a
+ * lo sumo una recarga en cola.
+ */
+public class LiveDataTablas<T> extends MutableLiveData<T> implements RastreadorInvalidaciones.Observador {
+
+    private final RastreadorInvalidaciones rastreador;
+    private final Executor executor;
+    private final Runnable recarga;
+    private final String[] tablas;
+
+    private final AtomicBoolean recargaEnCola = new AtomicBoolean(false);
+    // -1: nunca cargado
+    private volatile long versionCargada = -1;
+
+    public LiveDataTablas(RastreadorInvalidaciones rastreador, Executor executor, Runnable recarga, String... tablas) {
+        this.rastreador = rastreador;
+        this.executor = executor;
+        this.recarga = recarga;
+        this.tablas = tablas;
+    }
+
+    /**
+     * Para subclases que sobrescriben {@link #cargar()} en lugar de pasar la recarga.
+     */
+    protected LiveDataTablas(RastreadorInvalidaciones rastreador, Executor executor, String... tablas) {
+        this(rastreador, executor, null, tablas);
+    }
+
+    @Override
+    protected void onActive() {
+        rastreador.agregarObservador(this, tablas);
+        if (versionCargada != rastreador.version(tablas)) {
+            recargar();
+        }
+    }
+
+    @Override
+    protected void onInactive() {
+        rastreador.quitarObservador(this);
+    }
+
+    @Override
+    public void onInvalidado(Set<String> tablasModificadas) {
+        if (hasActiveObservers()) {
+            recargar();
+        }
+    }
+
+    /**
+     * Encola una recarga aunque no haya cambios registrados (refresco manual).
+     */
+    public void recargar() {
+        if (!recargaEnCola.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            recargaEnCola.set(false);
+            // La versión se toma antes de leer: un cambio durante la lectura
+            // vuelve a invalidar y no se pierde
+            versionCargada = rastreador.version(tablas);
+            cargar();
+        });
+    }
+
+    /**
+     * Lee los datos y los publica. Corre en el executor.
+     */
+    protected void cargar() {
+        recarga.run();
+    }
+}
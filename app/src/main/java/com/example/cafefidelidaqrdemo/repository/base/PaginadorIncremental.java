@@ -0,0 +1,178 @@
+package com.example.cafefidelidaqrdemo.repository.base;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.cafefidelidaqrdemo.models.Pagina;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Paginación por clave con precarga de una página y emisión incremental.
+ *
+ * En lugar de republicar la lista completa en cada página, emite un {@link Lote}
+ * que indica qué rango se agregó, para que el adapter solo enlace las filas nuevas.
+ * Mientras el usuario lee la página actual, la siguiente ya se carga en segundo plano.
+ *
+ * Los métodos públicos deben llamarse desde el hilo principal; el estado solo se
+ * modifica ahí, por lo que no necesita sincronización.
+ */
+public class PaginadorIncremental<T> {
+
+    /**
+     * Se ejecuta en segundo plano con cada página antes de entregarla (p. ej. para
+     * resolver nombres de usuario que las filas necesitan al enlazarse).
+     */
+    public interface PreparadorPagina<T> {
+        void preparar(List<T> items);
+    }
+
+    /**
+     * Filas agregadas al listado: {@code todos.subList(inicio, inicio + cantidad)}.
+     * Un lote con inicio 0 reemplaza lo que el adapter tuviera.
+     */
+    public static class Lote<T> {
+        private final List<T> todos;
+        private final int inicio;
+        private final int cantidad;
+
+        Lote(List<T> todos, int inicio, int cantidad) {
+            this.todos = todos;
+            this.inicio = inicio;
+            this.cantidad = cantidad;
+        }
+
+        public List<T> getTodos() { return todos; }
+
+        public List<T> getNuevos() { return todos.subList(inicio, inicio + cantidad); }
+
+        public int getInicio() { return inicio; }
+
+        public int getCantidad() { return cantidad; }
+    }
+
+    private final int tamanoPagina;
+    private final PreparadorPagina<T> preparador;
+    private final Executor executor = EjecutorTareas.getInstance().lecturas();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final MutableLiveData<Lote<T>> lotes = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> hayMas = new MutableLiveData<>(false);
+    private final MutableLiveData<Boolean> cargando = new MutableLiveData<>(false);
+    private final MutableLiveData<String> error = new MutableLiveData<>();
+
+    // Estado del hilo principal
+    private List<T> acumulados = new ArrayList<>();
+    private CargadorPaginado.FuentePaginas<T> fuente;
+    private int generacion = 0;
+    private Pagina<T> precargada;
+    private boolean pidiendo = false;
+    private boolean entregarAlLlegar = false;
+
+    public PaginadorIncremental(int tamanoPagina, PreparadorPagina<T> preparador) {
+        this.tamanoPagina = tamanoPagina;
+        this.preparador = preparador;
+    }
+
+    public LiveData<Lote<T>> getLotes() { return lotes; }
+    public LiveData<Boolean> getHayMas() { return hayMas; }
+    public LiveData<Boolean> getCargando() { return cargando; }
+    public LiveData<String> getError() { return error; }
+
+    /**
+     * Vacía el listado y empieza a cargar desde la primera página de la fuente.
+     * Las respuestas pendientes de una fuente anterior se descartan.
+     */
+    public void reiniciar(CargadorPaginado.FuentePaginas<T> nuevaFuente) {
+        generacion++;
+        fuente = nuevaFuente;
+        acumulados = new ArrayList<>();
+        precargada = null;
+        hayMas.setValue(false);
+        lotes.setValue(new Lote<>(Collections.unmodifiableList(acumulados), 0, 0));
+        entregarAlLlegar = true;
+        cargando.setValue(true);
+        pedir(null);
+    }
+
+    /**
+     * Agrega la página siguiente: inmediatamente si ya está precargada, o en
+     * cuanto llegue si la precarga sigue en curso.
+     */
+    public void cargarMas() {
+        if (precargada != null) {
+            Pagina<T> pagina = precargada;
+            precargada = null;
+            entregar(pagina);
+        } else if (pidiendo && !entregarAlLlegar) {
+            entregarAlLlegar = true;
+            cargando.setValue(true);
+        }
+    }
+
+    /**
+     * Descarta las respuestas pendientes; las páginas en vuelo terminan en el
+     * planificador compartido y se ignoran al llegar.
+     */
+    public void cerrar() {
+        generacion++;
+    }
+
+    private void pedir(String token) {
+        final int gen = generacion;
+        final CargadorPaginado.FuentePaginas<T> origen = fuente;
+        pidiendo = true;
+        executor.execute(() -> {
+            try {
+                Pagina<T> pagina = origen.cargar(token, tamanoPagina);
+                if (preparador != null) {
+                    preparador.preparar(pagina.getItems());
+                }
+                mainHandler.post(() -> recibir(gen, pagina));
+            } catch (Exception e) {
+                mainHandler.post(() -> fallar(gen, e));
+            }
+        });
+    }
+
+    private void recibir(int gen, Pagina<T> pagina) {
+        if (gen != generacion) {
+            return;
+        }
+        pidiendo = false;
+        if (entregarAlLlegar) {
+            entregarAlLlegar = false;
+            cargando.setValue(false);
+            entregar(pagina);
+        } else {
+            precargada = pagina;
+        }
+    }
+
+    private void fallar(int gen, Exception e) {
+        if (gen != generacion) {
+            return;
+        }
+        pidiendo = false;
+        entregarAlLlegar = false;
+        cargando.setValue(false);
+        error.setValue(e.getMessage());
+    }
+
+    private void entregar(Pagina<T> pagina) {
+        int inicio = acumulados.size();
+        acumulados.addAll(pagina.getItems());
+        lotes.setValue(new Lote<>(Collections.unmodifiableList(acumulados), inicio, pagina.getItems().size()));
+        hayMas.setValue(pagina.hayMas());
+        if (pagina.hayMas()) {
+            // Precarga de la página siguiente mientras se muestra esta
+            pedir(pagina.getSiguienteToken());
+        }
+    }
+}
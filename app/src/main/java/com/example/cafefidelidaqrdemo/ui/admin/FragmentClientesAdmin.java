@@ -18,6 +18,7 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cafefidelidaqrdemo.R;
 import com.example.cafefidelidaqrdemo.models.Cliente;
@@ -119,10 +120,24 @@ public class FragmentClientesAdmin extends Fragment {
             }
         });
         
-        binding.recyclerViewClientes.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        binding.recyclerViewClientes.setLayoutManager(layoutManager);
         binding.recyclerViewClientes.setAdapter(adapter);
         binding.recyclerViewClientes.addItemDecoration(
                 new DividerItemDecoration(getContext(), DividerItemDecoration.VERTICAL));
+        // Pedir la siguiente página cuando quedan pocos elementos por mostrar
+        binding.recyclerViewClientes.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) {
+                    return;
+                }
+                int ultimoVisible = layoutManager.findLastVisibleItemPosition();
+                if (ultimoVisible >= layoutManager.getItemCount() - 10) {
+                    viewModel.cargarMasClientes();
+                }
+            }
+        });
     }
     
     private void setupUI() {
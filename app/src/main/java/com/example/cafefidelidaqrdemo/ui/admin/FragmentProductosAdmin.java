@@ -452,8 +452,10 @@ public class FragmentProductosAdmin extends Fragment {
                 .setTitle("Confirmar acción")
                 .setMessage(mensaje)
                 .setPositiveButton("Sí", (dialog, which) -> {
-                    producto.setDisponible(!producto.isDisponible());
-                    viewModel.actualizarProducto(producto);
+                    // Copia: el producto viene de la lista compartida y no debe modificarse
+                    Producto actualizado = new Producto(producto);
+                    actualizado.setDisponible(!producto.isDisponible());
+                    viewModel.actualizarProducto(actualizado);
                 })
                 .setNegativeButton("No", null)
                 .show();
@@ -486,12 +488,14 @@ public class FragmentProductosAdmin extends Fragment {
     }
     
     private void toggleDisponibilidadProducto(Producto producto) {
-        // Cambiar el estado de disponibilidad del producto
+        // Cambiar el estado de disponibilidad sobre una copia: el producto viene de
+        // la lista compartida, que se refresca sola al invalidarse la tabla
         boolean nuevoEstado = !producto.isDisponible();
-        producto.setDisponible(nuevoEstado);
+        Producto actualizado = new Producto(producto);
+        actualizado.setDisponible(nuevoEstado);
         
         // Actualizar en el ViewModel
-        viewModel.actualizarProducto(producto);
+        viewModel.actualizarProducto(actualizado);
         
         String mensaje = nuevoEstado ? "Producto marcado como disponible" : "Producto marcado como no disponible";
         Toast.makeText(getContext(), mensaje, Toast.LENGTH_SHORT).show();
@@ -19,8 +19,6 @@ import com.example.cafefidelidaqrdemo.R;
 import com.example.cafefidelidaqrdemo.databinding.FragmentResenasAdminBinding;
 import com.example.cafefidelidaqrdemo.models.Producto;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
-import com.example.cafefidelidaqrdemo.models.ResenaProducto;
-import com.example.cafefidelidaqrdemo.models.ResenaSucursal;
 import com.example.cafefidelidaqrdemo.ui.admin.adapters.ResenasProductoAdminAdapter;
 import com.example.cafefidelidaqrdemo.ui.admin.adapters.ResenasSucursalAdminAdapter;
 import com.example.cafefidelidaqrdemo.ui.admin.viewmodels.ResenasAdminViewModel;
@@ -28,7 +26,6 @@ import com.google.android.material.tabs.TabLayout;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class FragmentResenasAdmin extends Fragment {
 
@@ -119,6 +116,9 @@ public class FragmentResenasAdmin extends Fragment {
     private void setupLists() {
         productoAdapter = new ResenasProductoAdminAdapter(new ArrayList<>());
         sucursalAdapter = new ResenasSucursalAdminAdapter(new ArrayList<>());
+        // Nombres de usuarios para títulos (el ViewModel los resuelve antes de cada página)
+        productoAdapter.setUserNames(viewModel.getNombresUsuarios());
+        sucursalAdapter.setUserNames(viewModel.getNombresUsuarios());
         binding.recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         binding.recyclerView.setAdapter(productoAdapter);
 
@@ -255,26 +255,27 @@ public class FragmentResenasAdmin extends Fragment {
             }
         });
 
-        // Reseñas por producto
-        viewModel.getResenasProducto().observe(getViewLifecycleOwner(), resenas -> {
-            List<ResenaProducto> list = resenas != null ? resenas : new ArrayList<>();
-            productoAdapter.updateData(list);
-            binding.emptyView.setVisibility(list.isEmpty() ? View.VISIBLE : View.GONE);
+        // Reseñas por producto: solo se enlazan las filas de la página nueva. Si el
+        // adapter no está justo al inicio del lote (vista recreada), se repone todo.
+        viewModel.getResenasProducto().observe(getViewLifecycleOwner(), lote -> {
+            if (lote == null) return;
+            if (lote.getInicio() > 0 && lote.getInicio() == productoAdapter.getItemCount()) {
+                productoAdapter.appendData(lote.getNuevos());
+            } else {
+                productoAdapter.updateData(lote.getTodos());
+            }
+            binding.emptyView.setVisibility(lote.getTodos().isEmpty() ? View.VISIBLE : View.GONE);
         });
 
         // Reseñas por sucursal
-        viewModel.getResenasSucursal().observe(getViewLifecycleOwner(), resenas -> {
-            List<ResenaSucursal> list = resenas != null ? resenas : new ArrayList<>();
-            sucursalAdapter.updateData(list);
-            binding.emptyView.setVisibility(list.isEmpty() ? View.VISIBLE : View.GONE);
-        });
-
-        // Nombres de usuarios para títulos
-        viewModel.getNombresUsuarios().observe(getViewLifecycleOwner(), map -> {
-            if (map != null) {
-                productoAdapter.setUserNames(map);
-                sucursalAdapter.setUserNames(map);
+        viewModel.getResenasSucursal().observe(getViewLifecycleOwner(), lote -> {
+            if (lote == null) return;
+            if (lote.getInicio() > 0 && lote.getInicio() == sucursalAdapter.getItemCount()) {
+                sucursalAdapter.appendData(lote.getNuevos());
+            } else {
+                sucursalAdapter.updateData(lote.getTodos());
             }
+            binding.emptyView.setVisibility(lote.getTodos().isEmpty() ? View.VISIBLE : View.GONE);
         });
 
         // Loading y errores
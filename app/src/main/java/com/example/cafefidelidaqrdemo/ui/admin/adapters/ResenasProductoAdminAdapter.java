@@ -28,10 +28,17 @@ public class ResenasProductoAdminAdapter extends RecyclerView.Adapter<ResenasPro
     }
 
     public void updateData(List<ResenaProducto> newData) {
-        this.data = newData;
+        this.data = new java.util.ArrayList<>(newData);
         notifyDataSetChanged();
     }
 
+    // Agrega una página al final y solo notifica el rango insertado
+    public void appendData(List<ResenaProducto> nuevas) {
+        int inicio = data.size();
+        data.addAll(nuevas);
+        notifyItemRangeInserted(inicio, nuevas.size());
+    }
+
     public void setUserNames(java.util.Map<Integer, String> names) {
         this.userNames = names != null ? names : new java.util.HashMap<>();
         notifyDataSetChanged();
@@ -25,7 +25,14 @@ public class ResenasSucursalAdminAdapter extends RecyclerView.Adapter<ResenasSuc
 
     public ResenasSucursalAdminAdapter(List<ResenaSucursal> data) { this.data = data; }
 
-    public void updateData(List<ResenaSucursal> newData) { this.data = newData; notifyDataSetChanged(); }
+    public void updateData(List<ResenaSucursal> newData) { this.data = new java.util.ArrayList<>(newData); notifyDataSetChanged(); }
+
+    // Agrega una página al final y solo notifica el rango insertado
+    public void appendData(List<ResenaSucursal> nuevas) {
+        int inicio = data.size();
+        data.addAll(nuevas);
+        notifyItemRangeInserted(inicio, nuevas.size());
+    }
 
     public void setUserNames(java.util.Map<Integer, String> names) {
         this.userNames = names != null ? names : new java.util.HashMap<>();
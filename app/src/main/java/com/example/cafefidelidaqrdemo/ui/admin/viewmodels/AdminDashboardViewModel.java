@@ -8,12 +8,13 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Transformations;
 
+import com.example.cafefidelidaqrdemo.models.DashboardStats;
 import com.example.cafefidelidaqrdemo.repository.AdminRepository;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * ViewModel para el dashboard principal de administración
@@ -22,7 +23,8 @@ import java.util.concurrent.Executors;
 public class AdminDashboardViewModel extends AndroidViewModel {
     
     private final AdminRepository adminRepository;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor fondo;
     
     // Estados de carga y mensajes
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
@@ -33,7 +35,7 @@ public class AdminDashboardViewModel extends AndroidViewModel {
     private final MutableLiveData<DashboardStats> dashboardStats = new MutableLiveData<>();
     private final MutableLiveData<List<RecentActivity>> recentActivities = new MutableLiveData<>();
     
-    // Datos observables desde el repositorio
+    // Contadores derivados de la foto de estadísticas (una consulta por refresco)
     private final LiveData<Integer> countProductosActivos;
     private final LiveData<Integer> countProductosInactivos;
     private final LiveData<Integer> countSucursalesActivas;
@@ -45,15 +47,17 @@ public class AdminDashboardViewModel extends AndroidViewModel {
         super(application);
         
         adminRepository = new AdminRepository(application);
-        executor = Executors.newFixedThreadPool(3);
+        EjecutorTareas ejecutor = EjecutorTareas.getInstance();
+        executor = ejecutor.lecturas();
+        fondo = ejecutor.fondo();
         
         // Inicializar LiveData observables
-        countProductosActivos = adminRepository.getCountProductosActivos();
-        countProductosInactivos = adminRepository.getCountProductosInactivos();
-        countSucursalesActivas = adminRepository.getCountSucursalesActivas();
-        countSucursalesInactivas = adminRepository.getCountSucursalesInactivas();
-        countBeneficiosActivos = adminRepository.getCountBeneficiosActivos();
-        countBeneficiosInactivos = adminRepository.getCountBeneficiosInactivos();
+        countProductosActivos = Transformations.map(dashboardStats, stats -> stats.productosActivos);
+        countProductosInactivos = Transformations.map(dashboardStats, stats -> stats.productosInactivos);
+        countSucursalesActivas = Transformations.map(dashboardStats, stats -> stats.sucursalesActivas);
+        countSucursalesInactivas = Transformations.map(dashboardStats, stats -> stats.sucursalesInactivas);
+        countBeneficiosActivos = Transformations.map(dashboardStats, stats -> stats.beneficiosActivos);
+        countBeneficiosInactivos = Transformations.map(dashboardStats, stats -> stats.beneficiosInactivos);
         
         // Cargar datos iniciales
         cargarDashboardStats();
@@ -107,24 +111,15 @@ public class AdminDashboardViewModel extends AndroidViewModel {
     
     // LiveData calculados
     public LiveData<Integer> getTotalProductos() {
-        return Transformations.map(countProductosActivos, activos -> {
-            Integer inactivos = countProductosInactivos.getValue();
-            return activos + (inactivos != null ? inactivos : 0);
-        });
+        return Transformations.map(dashboardStats, stats -> stats.totalProductos);
     }
     
     public LiveData<Integer> getTotalSucursales() {
-        return Transformations.map(countSucursalesActivas, activas -> {
-            Integer inactivas = countSucursalesInactivas.getValue();
-            return activas + (inactivas != null ? inactivas : 0);
-        });
+        return Transformations.map(dashboardStats, stats -> stats.totalSucursales);
     }
     
     public LiveData<Integer> getTotalBeneficios() {
-        return Transformations.map(countBeneficiosActivos, activos -> {
-            Integer inactivos = countBeneficiosInactivos.getValue();
-            return activos + (inactivos != null ? inactivos : 0);
-        });
+        return Transformations.map(dashboardStats, stats -> stats.totalBeneficios);
     }
     
     /**
@@ -135,34 +130,8 @@ public class AdminDashboardViewModel extends AndroidViewModel {
         
         executor.execute(() -> {
             try {
-                DashboardStats stats = new DashboardStats();
-                
-                // Obtener estadísticas de productos
-                stats.totalProductos = adminRepository.getCountProductosActivosSync() + 
-                                     adminRepository.getCountProductosInactivosSync();
-                stats.productosActivos = adminRepository.getCountProductosActivosSync();
-                stats.productosInactivos = adminRepository.getCountProductosInactivosSync();
-                
-                // Obtener estadísticas de sucursales
-                stats.totalSucursales = adminRepository.getCountSucursalesActivasSync() + 
-                                      adminRepository.getCountSucursalesInactivasSync();
-                stats.sucursalesActivas = adminRepository.getCountSucursalesActivasSync();
-                stats.sucursalesInactivas = adminRepository.getCountSucursalesInactivasSync();
-                
-                // Obtener estadísticas de beneficios
-                stats.totalBeneficios = adminRepository.getCountBeneficiosActivosSync() + 
-                                      adminRepository.getCountBeneficiosInactivosSync();
-                stats.beneficiosActivos = adminRepository.getCountBeneficiosActivosSync();
-                stats.beneficiosInactivos = adminRepository.getCountBeneficiosInactivosSync();
-                
-                // Calcular porcentajes
-                stats.porcentajeProductosActivos = stats.totalProductos > 0 ? 
-                    (stats.productosActivos * 100.0f) / stats.totalProductos : 0;
-                stats.porcentajeSucursalesActivas = stats.totalSucursales > 0 ? 
-                    (stats.sucursalesActivas * 100.0f) / stats.totalSucursales : 0;
-                stats.porcentajeBeneficiosActivos = stats.totalBeneficios > 0 ? 
-                    (stats.beneficiosActivos * 100.0f) / stats.totalBeneficios : 0;
-                
+                // Una sola consulta agregada para todos los contadores
+                DashboardStats stats = adminRepository.getDashboardStatsSync();
                 dashboardStats.postValue(stats);
                 
             } catch (Exception e) {
@@ -246,7 +215,7 @@ public class AdminDashboardViewModel extends AndroidViewModel {
     public void sincronizarConServidor() {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 adminRepository.sincronizarTodosLosDatos();
                 
@@ -270,7 +239,7 @@ public class AdminDashboardViewModel extends AndroidViewModel {
     public void exportarDatos() {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 adminRepository.exportarProductos();
                 successMessage.postValue("Datos exportados exitosamente");
@@ -289,7 +258,7 @@ public class AdminDashboardViewModel extends AndroidViewModel {
     public void limpiarDatosLocales() {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 adminRepository.limpiarDatosLocales();
                 
@@ -341,36 +310,6 @@ public class AdminDashboardViewModel extends AndroidViewModel {
         successMessage.setValue(null);
     }
     
-    @Override
-    protected void onCleared() {
-        super.onCleared();
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
-    }
-    
-    /**
-     * Clase para encapsular estadísticas del dashboard
-     */
-    public static class DashboardStats {
-        public int totalProductos;
-        public int productosActivos;
-        public int productosInactivos;
-        public float porcentajeProductosActivos;
-        
-        public int totalSucursales;
-        public int sucursalesActivas;
-        public int sucursalesInactivas;
-        public float porcentajeSucursalesActivas;
-        
-        public int totalBeneficios;
-        public int beneficiosActivos;
-        public int beneficiosInactivos;
-        public float porcentajeBeneficiosActivos;
-        
-        public long ultimaActualizacion = System.currentTimeMillis();
-    }
-    
     /**
      * Clase para representar actividades recientes
      */
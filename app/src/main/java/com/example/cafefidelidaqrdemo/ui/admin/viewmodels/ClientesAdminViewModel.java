@@ -9,25 +9,38 @@ import androidx.lifecycle.MutableLiveData;
 
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
 import com.example.cafefidelidaqrdemo.models.Cliente;
+import com.example.cafefidelidaqrdemo.repository.base.CargadorPaginado;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ClientesAdminViewModel extends AndroidViewModel {
     private static final String TAG = "ClientesAdminViewModel";
+    private static final int TAMANO_PAGINA = 50;
+    private static final int LIMITE_BUSQUEDA = 200;
     private CafeFidelidadDB database;
-    private ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
     
     private MutableLiveData<List<Cliente>> clientesLiveData = new MutableLiveData<>();
     private MutableLiveData<Boolean> isLoadingLiveData = new MutableLiveData<>();
     private MutableLiveData<String> errorLiveData = new MutableLiveData<>();
     private MutableLiveData<String> successLiveData = new MutableLiveData<>();
+    private CargadorPaginado<Cliente> paginadorClientes;
+    // Mientras se muestran resultados de búsqueda o filtros no se agregan páginas
+    private volatile boolean listadoPaginado = false;
+    // Evita encolar varias páginas mientras el scroll dispara eventos seguidos
+    private final AtomicBoolean cargandoPagina = new AtomicBoolean(false);
 
     public ClientesAdminViewModel(@NonNull Application application) {
         super(application);
         database = CafeFidelidadDB.getInstance(application);
-        executor = Executors.newFixedThreadPool(2);
+        EjecutorTareas ejecutor = EjecutorTareas.getInstance();
+        executor = ejecutor.lecturas();
+        escritor = ejecutor.escrituras();
+        paginadorClientes = new CargadorPaginado<>(database::obtenerPaginaClientes, TAMANO_PAGINA, clientesLiveData);
         cargarClientes();
     }
 
@@ -47,12 +60,15 @@ public class ClientesAdminViewModel extends AndroidViewModel {
         return successLiveData;
     }
 
+    /**
+     * Carga la primera página de clientes ordenados por nombre.
+     */
     public void cargarClientes() {
-        isLoadingLiveData.setValue(true);
+        listadoPaginado = true;
+        isLoadingLiveData.postValue(true);
         executor.execute(() -> {
             try {
-                List<Cliente> clientes = database.obtenerTodosLosClientes();
-                clientesLiveData.postValue(clientes);
+                paginadorClientes.reiniciar();
             } catch (Exception e) {
                 errorLiveData.postValue("Error al cargar clientes: " + e.getMessage());
             } finally {
@@ -61,7 +77,28 @@ public class ClientesAdminViewModel extends AndroidViewModel {
         });
     }
 
+    /**
+     * Agrega la siguiente página al listado; se llama al hacer scroll al final.
+     */
+    public void cargarMasClientes() {
+        if (!listadoPaginado || !paginadorClientes.hayMas() || !cargandoPagina.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                if (listadoPaginado) {
+                    paginadorClientes.cargarSiguiente();
+                }
+            } catch (Exception e) {
+                errorLiveData.postValue("Error al cargar clientes: " + e.getMessage());
+            } finally {
+                cargandoPagina.set(false);
+            }
+        });
+    }
+
     public void cargarClientesActivos() {
+        listadoPaginado = false;
         isLoadingLiveData.setValue(true);
         executor.execute(() -> {
             try {
@@ -77,7 +114,7 @@ public class ClientesAdminViewModel extends AndroidViewModel {
 
     public void agregarCliente(Cliente cliente) {
         Log.d(TAG, "Iniciando agregarCliente para: " + cliente.getNombre());
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 Log.d(TAG, "Ejecutando inserción en hilo de fondo");
                 long id = database.insertarCliente(cliente);
@@ -98,7 +135,7 @@ public class ClientesAdminViewModel extends AndroidViewModel {
     }
 
     public void actualizarCliente(Cliente cliente) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rowsAffected = database.actualizarCliente(cliente);
                 if (rowsAffected > 0) {
@@ -114,7 +151,7 @@ public class ClientesAdminViewModel extends AndroidViewModel {
     }
 
     public void eliminarCliente(int clienteId) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 int rowsAffected = database.eliminarCliente(clienteId);
                 if (rowsAffected > 0) {
@@ -140,18 +177,13 @@ public class ClientesAdminViewModel extends AndroidViewModel {
             return;
         }
 
+        listadoPaginado = false;
         isLoadingLiveData.setValue(true);
         executor.execute(() -> {
             try {
-                List<Cliente> todosLosClientes = database.obtenerTodosLosClientes();
-                List<Cliente> clientesFiltrados = todosLosClientes.stream()
-                        .filter(cliente -> 
-                            cliente.getNombre().toLowerCase().contains(query.toLowerCase()) ||
-                            cliente.getEmail().toLowerCase().contains(query.toLowerCase()) ||
-                            (cliente.getTelefono() != null && cliente.getTelefono().contains(query))
-                        )
-                        .collect(java.util.stream.Collectors.toList());
-                
+                // Nombre, email o teléfono por prefijo de palabra (índice FTS); solo
+                // dígitos: comienzo o final del teléfono (índices sobre sus dígitos)
+                List<Cliente> clientesFiltrados = database.buscarClientes(query, LIMITE_BUSQUEDA);
                 clientesLiveData.postValue(clientesFiltrados);
             } catch (Exception e) {
                 errorLiveData.postValue("Error al buscar clientes: " + e.getMessage());
@@ -160,12 +192,4 @@ public class ClientesAdminViewModel extends AndroidViewModel {
             }
         });
     }
-
-    @Override
-    protected void onCleared() {
-        super.onCleared();
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
-    }
 }
\ No newline at end of file
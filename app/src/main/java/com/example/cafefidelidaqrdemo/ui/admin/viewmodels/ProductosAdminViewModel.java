@@ -9,11 +9,11 @@ import androidx.lifecycle.MutableLiveData;
 
 import com.example.cafefidelidaqrdemo.repository.AdminRepository;
 import com.example.cafefidelidaqrdemo.models.Producto;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * ViewModel para la gestión CRUD de productos
@@ -22,7 +22,9 @@ import java.util.concurrent.Executors;
 public class ProductosAdminViewModel extends AndroidViewModel {
     
     private final AdminRepository adminRepository;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final Executor fondo;
     
     // Estados de carga y mensajes
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
@@ -47,7 +49,10 @@ public class ProductosAdminViewModel extends AndroidViewModel {
         super(application);
         
         adminRepository = new AdminRepository(application);
-        executor = Executors.newFixedThreadPool(3);
+        EjecutorTareas ejecutor = EjecutorTareas.getInstance();
+        executor = ejecutor.lecturas();
+        escritor = ejecutor.escrituras();
+        fondo = ejecutor.fondo();
         
         // Inicializar LiveData observables
         allProductos = adminRepository.getAllProductos();
@@ -116,7 +121,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
         
         isCreating.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Note: Validaciones de duplicados no implementadas en AdminRepository
                 
@@ -151,7 +156,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
         
         isUpdating.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Verificar que el producto existe
                 if (producto.getId() == null || producto.getId().isEmpty()) {
@@ -259,7 +264,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
      * Actualiza el stock de un producto
      */
     public void actualizarStock(long productoId, int nuevoStock, String motivo) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (nuevoStock < 0) {
                     errorMessage.postValue("El stock no puede ser negativo");
@@ -279,7 +284,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
      * Actualiza el precio de un producto
      */
     public void actualizarPrecio(long productoId, double nuevoPrecio, String motivo) {
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (nuevoPrecio < 0) {
                     errorMessage.postValue("El precio no puede ser negativo");
@@ -299,7 +304,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
      * Actualiza todos los productos desde el servidor
      */
     public void actualizarProductos() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 // Note: sincronizarProductos no implementado en AdminRepository
                 successMessage.postValue("Funcionalidad de sincronización no disponible");
@@ -314,7 +319,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
      * Exporta la lista de productos
      */
     public void exportarProductos() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 adminRepository.exportarProductos();
                 successMessage.postValue("Productos exportados exitosamente");
@@ -329,7 +334,7 @@ public class ProductosAdminViewModel extends AndroidViewModel {
      * Sincroniza con el servidor
      */
     public void sincronizarConServidor() {
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 // Note: sincronizarProductosConServidor no implementado en AdminRepository
                 successMessage.postValue("Funcionalidad de sincronización con servidor no disponible");
@@ -398,12 +403,4 @@ public class ProductosAdminViewModel extends AndroidViewModel {
     public void clearSuccessMessage() {
         successMessage.setValue(null);
     }
-    
-    @Override
-    protected void onCleared() {
-        super.onCleared();
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
-    }
-}
\ No newline at end of file
+    }
\ No newline at end of file
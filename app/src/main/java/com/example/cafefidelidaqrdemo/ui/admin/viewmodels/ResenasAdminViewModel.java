@@ -5,6 +5,7 @@ import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.cafefidelidaqrdemo.models.Producto;
@@ -15,10 +16,14 @@ import com.example.cafefidelidaqrdemo.repository.AdminRepository;
 import com.example.cafefidelidaqrdemo.repository.ResenasProductoRepository;
 import com.example.cafefidelidaqrdemo.repository.ResenasSucursalRepository;
 import com.example.cafefidelidaqrdemo.repository.ClienteRepository;
+import com.example.cafefidelidaqrdemo.repository.base.PaginadorIncremental;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ResenasAdminViewModel extends AndroidViewModel {
 
@@ -27,25 +32,19 @@ public class ResenasAdminViewModel extends AndroidViewModel {
     private final ResenasSucursalRepository resenasSucursalRepository;
     private final ClienteRepository clienteRepository;
 
-    private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
-    private final MutableLiveData<String> errorMessage = new MutableLiveData<>(null);
+    private final MediatorLiveData<Boolean> isLoading = new MediatorLiveData<>();
+    private final MediatorLiveData<String> errorMessage = new MediatorLiveData<>();
 
     private final MutableLiveData<Integer> selectedProductoId = new MutableLiveData<>(-1);
     private final MutableLiveData<Integer> selectedSucursalId = new MutableLiveData<>(-1);
-    private final MutableLiveData<Map<Integer, String>> nombresUsuarios = new MutableLiveData<>(new HashMap<>());
+    // Se completa en segundo plano antes de entregar cada página, así las filas
+    // nuevas ya encuentran el nombre al enlazarse
+    private final Map<Integer, String> nombresUsuarios = new ConcurrentHashMap<>();
 
-    // Paginación
+    // Paginación por (fecha_creacion, id) con precarga de la página siguiente
     private static final int PAGE_SIZE = 20;
-    private int productoOffset = 0;
-    private int sucursalOffset = 0;
-    private boolean loadingMoreProducto = false;
-    private boolean loadingMoreSucursal = false;
-    private final MutableLiveData<Boolean> hasMoreProducto = new MutableLiveData<>(false);
-    private final MutableLiveData<Boolean> hasMoreSucursal = new MutableLiveData<>(false);
-
-    // Listas acumuladas para la UI
-    private final MutableLiveData<java.util.List<ResenaProducto>> resenasProductoPaged = new MutableLiveData<>(new java.util.ArrayList<>());
-    private final MutableLiveData<java.util.List<ResenaSucursal>> resenasSucursalPaged = new MutableLiveData<>(new java.util.ArrayList<>());
+    private final PaginadorIncremental<ResenaProducto> paginadorProducto;
+    private final PaginadorIncremental<ResenaSucursal> paginadorSucursal;
 
     public ResenasAdminViewModel(@NonNull Application application) {
         super(application);
@@ -54,90 +53,83 @@ public class ResenasAdminViewModel extends AndroidViewModel {
         resenasSucursalRepository = ResenasSucursalRepository.getInstance(application.getApplicationContext());
         clienteRepository = ClienteRepository.getInstance(application.getApplicationContext());
 
+        paginadorProducto = new PaginadorIncremental<>(PAGE_SIZE, resenas -> {
+            Set<Integer> ids = new HashSet<>();
+            for (ResenaProducto r : resenas) {
+                ids.add(r.getUsuarioId());
+            }
+            resolverNombresUsuarios(ids);
+        });
+        paginadorSucursal = new PaginadorIncremental<>(PAGE_SIZE, resenas -> {
+            Set<Integer> ids = new HashSet<>();
+            for (ResenaSucursal r : resenas) {
+                ids.add(r.getUsuarioId());
+            }
+            resolverNombresUsuarios(ids);
+        });
+
+        isLoading.setValue(false);
+        isLoading.addSource(paginadorProducto.getCargando(), cargando -> actualizarCargando());
+        isLoading.addSource(paginadorSucursal.getCargando(), cargando -> actualizarCargando());
+        errorMessage.addSource(paginadorProducto.getError(), errorMessage::setValue);
+        errorMessage.addSource(paginadorSucursal.getError(), errorMessage::setValue);
+
         selectedProductoId.observeForever(id -> {
             if (id != null && id > 0) {
-                isLoading.postValue(true);
-                productoOffset = 0;
-                loadingMoreProducto = false;
-                resenasProductoPaged.postValue(new java.util.ArrayList<>());
-                resenasProductoRepository.listarResenasPorProducto(id, PAGE_SIZE, productoOffset);
-                isLoading.postValue(false);
+                paginadorProducto.reiniciar((token, tamano) ->
+                        resenasProductoRepository.obtenerPaginaResenasSync(id, token, tamano));
             }
         });
         selectedSucursalId.observeForever(id -> {
             if (id != null && id > 0) {
-                isLoading.postValue(true);
-                sucursalOffset = 0;
-                loadingMoreSucursal = false;
-                resenasSucursalPaged.postValue(new java.util.ArrayList<>());
-                resenasSucursalRepository.listarResenasPorSucursal(id, PAGE_SIZE, sucursalOffset);
-                isLoading.postValue(false);
+                paginadorSucursal.reiniciar((token, tamano) ->
+                        resenasSucursalRepository.obtenerPaginaResenasSync(id, token, tamano));
             }
         });
+    }
 
-        // Resolver nombres de usuarios en cuanto cambien las listas y manejar paginación
-        resenasProductoRepository.getResenasLiveData().observeForever(list -> {
-            if (list != null) {
-                // Merge/replace en acumulado
-                java.util.List<ResenaProducto> current = resenasProductoPaged.getValue();
-                if (current == null) current = new java.util.ArrayList<>();
-                if (loadingMoreProducto) {
-                    current.addAll(list);
-                } else {
-                    current = new java.util.ArrayList<>(list);
-                }
-                resenasProductoPaged.postValue(current);
-                hasMoreProducto.postValue(list.size() == PAGE_SIZE);
-
-                Map<Integer, String> map = new HashMap<>();
-                for (ResenaProducto r : current) {
-                    int uid = r.getUsuarioId();
-                    if (uid > 0 && !map.containsKey(uid)) {
-                        com.example.cafefidelidaqrdemo.models.Cliente c = clienteRepository.getClienteByIdSync(uid);
-                        map.put(uid, c != null && c.getNombre() != null && !c.getNombre().isEmpty() ? c.getNombre() : ("Usuario #" + uid));
-                    }
-                }
-                nombresUsuarios.postValue(map);
+    // Una consulta por página, solo con los autores que todavía no tienen nombre.
+    // Solo se guardan los nombres encontrados: el adapter muestra "Usuario #id"
+    // para el resto, y en la página siguiente se vuelven a pedir
+    private void resolverNombresUsuarios(Set<Integer> ids) {
+        Set<Integer> nuevos = new HashSet<>();
+        for (Integer uid : ids) {
+            if (uid > 0 && !nombresUsuarios.containsKey(uid)) {
+                nuevos.add(uid);
             }
-        });
-        resenasSucursalRepository.getResenasLiveData().observeForever(list -> {
-            if (list != null) {
-                // Merge/replace en acumulado
-                java.util.List<ResenaSucursal> current = resenasSucursalPaged.getValue();
-                if (current == null) current = new java.util.ArrayList<>();
-                if (loadingMoreSucursal) {
-                    current.addAll(list);
-                } else {
-                    current = new java.util.ArrayList<>(list);
-                }
-                resenasSucursalPaged.postValue(current);
-                hasMoreSucursal.postValue(list.size() == PAGE_SIZE);
-
-                Map<Integer, String> map = new HashMap<>();
-                for (ResenaSucursal r : current) {
-                    int uid = r.getUsuarioId();
-                    if (uid > 0 && !map.containsKey(uid)) {
-                        com.example.cafefidelidaqrdemo.models.Cliente c = clienteRepository.getClienteByIdSync(uid);
-                        map.put(uid, c != null && c.getNombre() != null && !c.getNombre().isEmpty() ? c.getNombre() : ("Usuario #" + uid));
-                    }
-                }
-                nombresUsuarios.postValue(map);
+        }
+        if (nuevos.isEmpty()) {
+            return;
+        }
+        Map<Integer, String> encontrados = clienteRepository.obtenerNombresClientes(nuevos);
+        for (Map.Entry<Integer, String> entrada : encontrados.entrySet()) {
+            String nombre = entrada.getValue();
+            if (nombre != null && !nombre.isEmpty()) {
+                nombresUsuarios.put(entrada.getKey(), nombre);
             }
-        });
+        }
+    }
+
+    private void actualizarCargando() {
+        isLoading.setValue(Boolean.TRUE.equals(paginadorProducto.getCargando().getValue())
+                || Boolean.TRUE.equals(paginadorSucursal.getCargando().getValue()));
     }
 
     public LiveData<List<Producto>> getAllProductos() { return adminRepository.getAllProductos(); }
     public LiveData<List<Sucursal>> getAllSucursales() { return adminRepository.getAllSucursales(); }
 
-    public LiveData<List<ResenaProducto>> getResenasProducto() { return resenasProductoPaged; }
-    public LiveData<List<ResenaSucursal>> getResenasSucursal() { return resenasSucursalPaged; }
-    public LiveData<Boolean> getHasMoreProducto() { return hasMoreProducto; }
-    public LiveData<Boolean> getHasMoreSucursal() { return hasMoreSucursal; }
-    public LiveData<Map<Integer, String>> getNombresUsuarios() { return nombresUsuarios; }
+    /**
+     * Filas agregadas en cada página; el adapter solo debe enlazar {@code getNuevos()}.
+     */
+    public LiveData<PaginadorIncremental.Lote<ResenaProducto>> getResenasProducto() { return paginadorProducto.getLotes(); }
+    public LiveData<PaginadorIncremental.Lote<ResenaSucursal>> getResenasSucursal() { return paginadorSucursal.getLotes(); }
+    public LiveData<Boolean> getHasMoreProducto() { return paginadorProducto.getHayMas(); }
+    public LiveData<Boolean> getHasMoreSucursal() { return paginadorSucursal.getHayMas(); }
+    public Map<Integer, String> getNombresUsuarios() { return Collections.unmodifiableMap(nombresUsuarios); }
 
     public LiveData<Boolean> getIsLoading() { return isLoading; }
     public LiveData<String> getErrorMessage() { return errorMessage; }
-    public void clearErrorMessage() { errorMessage.postValue(null); }
+    public void clearErrorMessage() { errorMessage.setValue(null); }
 
     public void setSelectedProductoId(int id) { selectedProductoId.postValue(id); }
     public void setSelectedSucursalId(int id) { selectedSucursalId.postValue(id); }
@@ -146,44 +138,31 @@ public class ResenasAdminViewModel extends AndroidViewModel {
     public void refreshProductoResenas() {
         Integer id = selectedProductoId.getValue();
         if (id != null && id > 0) {
-            isLoading.postValue(true);
-            productoOffset = 0;
-            loadingMoreProducto = false;
-            resenasProductoPaged.postValue(new java.util.ArrayList<>());
-            resenasProductoRepository.listarResenasPorProducto(id, PAGE_SIZE, productoOffset);
-            isLoading.postValue(false);
+            paginadorProducto.reiniciar((token, tamano) ->
+                    resenasProductoRepository.obtenerPaginaResenasSync(id, token, tamano));
         }
     }
 
     public void refreshSucursalResenas() {
         Integer id = selectedSucursalId.getValue();
         if (id != null && id > 0) {
-            isLoading.postValue(true);
-            sucursalOffset = 0;
-            loadingMoreSucursal = false;
-            resenasSucursalPaged.postValue(new java.util.ArrayList<>());
-            resenasSucursalRepository.listarResenasPorSucursal(id, PAGE_SIZE, sucursalOffset);
-            isLoading.postValue(false);
+            paginadorSucursal.reiniciar((token, tamano) ->
+                    resenasSucursalRepository.obtenerPaginaResenasSync(id, token, tamano));
         }
     }
 
     public void loadMoreProducto() {
-        Integer id = selectedProductoId.getValue();
-        Boolean more = hasMoreProducto.getValue();
-        if (id != null && id > 0 && Boolean.TRUE.equals(more)) {
-            loadingMoreProducto = true;
-            productoOffset += PAGE_SIZE;
-            resenasProductoRepository.listarResenasPorProducto(id, PAGE_SIZE, productoOffset);
-        }
+        paginadorProducto.cargarMas();
     }
 
     public void loadMoreSucursal() {
-        Integer id = selectedSucursalId.getValue();
-        Boolean more = hasMoreSucursal.getValue();
-        if (id != null && id > 0 && Boolean.TRUE.equals(more)) {
-            loadingMoreSucursal = true;
-            sucursalOffset += PAGE_SIZE;
-            resenasSucursalRepository.listarResenasPorSucursal(id, PAGE_SIZE, sucursalOffset);
-        }
+        paginadorSucursal.cargarMas();
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        paginadorProducto.cerrar();
+        paginadorSucursal.cerrar();
     }
 }
@@ -11,11 +11,11 @@ import androidx.lifecycle.Transformations;
 
 import com.example.cafefidelidaqrdemo.repository.AdminRepository;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 /**
@@ -25,7 +25,9 @@ import java.util.regex.Pattern;
 public class SucursalesAdminViewModel extends AndroidViewModel {
     
     private final AdminRepository adminRepository;
-    private final ExecutorService executor;
+    private final Executor executor;
+    private final Executor escritor;
+    private final Executor fondo;
     
     // Estados de carga y mensajes
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
@@ -68,7 +70,10 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
         super(application);
         
         adminRepository = new AdminRepository(application);
-        executor = Executors.newFixedThreadPool(3);
+        EjecutorTareas ejecutor = EjecutorTareas.getInstance();
+        executor = ejecutor.lecturas();
+        escritor = ejecutor.escrituras();
+        fondo = ejecutor.fondo();
         
         // Observar el isLoading del repositorio para evitar duplicación
         adminRepository.getIsLoading().observeForever(value -> isLoading.setValue(value));
@@ -150,7 +155,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
         
         isCreating.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Verificación de proximidad de sucursales no disponible por el momento
                 
@@ -185,7 +190,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
         
         isUpdating.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Verificar control de versión
                 // Validación de existencia de sucursal no disponible por el momento
@@ -227,7 +232,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void activarSucursal(long sucursalId) {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 successMessage.postValue("Funcionalidad de activar sucursal no disponible");
                 
@@ -245,7 +250,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void desactivarSucursal(long sucursalId, String motivo) {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 successMessage.postValue("Funcionalidad de desactivar sucursal no disponible");
                 
@@ -264,7 +269,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
         isDeleting.setValue(true);
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 // Funcionalidad de eliminación no disponible por el momento
                 errorMessage.postValue("Funcionalidad de eliminación no disponible");
@@ -320,7 +325,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void actualizarCapacidad(long sucursalId, int nuevaCapacidad, String motivo) {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (nuevaCapacidad <= 0) {
                     errorMessage.postValue("La capacidad debe ser mayor a 0");
@@ -351,7 +356,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
                                   String diasOperacion, String motivo) {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarHorario(horarioApertura) || !validarHorario(horarioCierre)) {
                     errorMessage.postValue("Formato de horario inválido (use HH:MM)");
@@ -383,7 +388,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
                                    String direccion, String motivo) {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        escritor.execute(() -> {
             try {
                 if (!validarCoordenadas(latitud, longitud)) {
                     errorMessage.postValue("Coordenadas inválidas");
@@ -413,7 +418,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void actualizarSucursales() {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 // adminRepository.sincronizarSucursales();
                 successMessage.postValue("Sucursales actualizadas desde el servidor");
@@ -432,7 +437,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void exportarSucursales() {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 // adminRepository.exportarSucursales();
                 successMessage.postValue("Sucursales exportadas exitosamente");
@@ -451,7 +456,7 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void sincronizarConServidor() {
         isLoading.setValue(true);
         
-        executor.execute(() -> {
+        fondo.execute(() -> {
             try {
                 // adminRepository.sincronizarSucursalesConServidor();
                 successMessage.postValue("Sincronización completada");
@@ -589,12 +594,4 @@ public class SucursalesAdminViewModel extends AndroidViewModel {
     public void clearSuccessMessage() {
         successMessage.setValue(null);
     }
-    
-    @Override
-    protected void onCleared() {
-        super.onCleared();
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
     }
-}
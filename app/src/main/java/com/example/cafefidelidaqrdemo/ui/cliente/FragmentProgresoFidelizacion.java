@@ -22,11 +22,9 @@ import com.example.cafefidelidaqrdemo.adapters.BeneficiosDisponiblesAdapter;
 import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
 import com.example.cafefidelidaqrdemo.managers.BeneficioManager;
 import com.example.cafefidelidaqrdemo.models.Beneficio;
-import com.example.cafefidelidaqrdemo.models.Visita;
 import com.example.cafefidelidaqrdemo.viewmodels.MisBeneficiosViewModel;
 
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Fragment actualizado con sistema de sellos digitales (tarjeta virtual de fidelización)
@@ -92,11 +90,9 @@ public class FragmentProgresoFidelizacion extends Fragment {
      */
     private void actualizarProgreso() {
         int clienteId = 1; // Temporal hasta implementar sesión real
-        List<Visita> visitasCliente = db.obtenerVisitasPorCliente(clienteId);
-
-        int sellosActuales = visitasCliente.size();
-        boolean beneficioDisponible = beneficioManager.verificarBeneficioPorSellos(visitasCliente, TOTAL_SELLOS);
-        int faltantes = beneficioManager.obtenerSellosRestantes(visitasCliente, TOTAL_SELLOS);
+        int sellosActuales = db.obtenerSellosCliente(clienteId);
+        boolean beneficioDisponible = beneficioManager.verificarBeneficioPorSellos(sellosActuales, TOTAL_SELLOS);
+        int faltantes = beneficioManager.obtenerSellosRestantes(sellosActuales, TOTAL_SELLOS);
 
         // Actualizar textos
         textProgresoNumero.setText(sellosActuales + "/" + TOTAL_SELLOS);
@@ -134,20 +130,25 @@ public class FragmentProgresoFidelizacion extends Fragment {
      */
     private void realizarCanje() {
         int clienteId = 1; // Temporal
-        List<Visita> visitasCliente = db.obtenerVisitasPorCliente(clienteId);
+        int sellosActuales = db.obtenerSellosCliente(clienteId);
 
-        boolean beneficioDisponible = beneficioManager.verificarBeneficioPorSellos(visitasCliente, TOTAL_SELLOS);
+        boolean beneficioDisponible = beneficioManager.verificarBeneficioPorSellos(sellosActuales, TOTAL_SELLOS);
         if (beneficioDisponible) {
-            Toast.makeText(getContext(), "🎉 ¡Café gratis canjeado con éxito!", Toast.LENGTH_SHORT).show();
-
-            // Registrar canje en la base de datos
-            beneficioManager.registrarCanjePorSellos(clienteId, TOTAL_SELLOS);
-
-            // Reiniciar visitas después del canje
-            db.reiniciarVisitasCliente(clienteId);
-
-            // Refrescar progreso visual
-            actualizarProgreso();
+            btnCanjear.setEnabled(false);
+
+            // Registrar canje y descontar sellos en una sola transacción
+            beneficioManager.registrarCanjePorSellos(clienteId, TOTAL_SELLOS, exito -> {
+                if (!isAdded()) return;
+                requireActivity().runOnUiThread(() -> {
+                    if (!isAdded()) return;
+                    Toast.makeText(getContext(), exito
+                            ? "🎉 ¡Café gratis canjeado con éxito!"
+                            : "⚠️ Aún no completas los sellos necesarios", Toast.LENGTH_SHORT).show();
+
+                    // Refrescar progreso visual
+                    actualizarProgreso();
+                });
+            });
         } else {
             Toast.makeText(getContext(), "⚠️ Aún no completas los sellos necesarios", Toast.LENGTH_SHORT).show();
         }
@@ -0,0 +1,49 @@
+package com.example.cafefidelidaqrdemo.utils;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Día calendario local expresado como días desde 1970-01-01 ("epoch day").
+ * Es el valor que se guarda en la columna epoch_day de visitas y canjes, de modo
+ * que contar o agrupar por día sea un recorrido de índice en lugar de formatear
+ * cada fecha.
+ *
+ * El día se calcula con la zona horaria del dispositivo al momento de escribir.
+ */
+public final class DiaEpoch {
+
+    private static final long MILLIS_POR_DIA = 24L * 60 * 60 * 1000;
+
+    private DiaEpoch() {}
+
+    public static long deMillis(long millis) {
+        return deMillis(millis, TimeZone.getDefault());
+    }
+
+    public static long deMillis(long millis, TimeZone zona) {
+        return Math.floorDiv(millis + zona.getOffset(millis), MILLIS_POR_DIA);
+    }
+
+    public static long hoy() {
+        return deMillis(System.currentTimeMillis());
+    }
+
+    /**
+     * Primer instante (en milisegundos) del día local indicado.
+     */
+    public static long inicioEnMillis(long dia) {
+        return inicioEnMillis(dia, TimeZone.getDefault());
+    }
+
+    public static long inicioEnMillis(long dia, TimeZone zona) {
+        // Vía Calendar para respetar los días cuya medianoche no existe por un
+        // cambio de horario (el día empieza entonces a la 01:00)
+        Calendar fecha = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        fecha.setTimeInMillis(dia * MILLIS_POR_DIA);
+        Calendar inicio = Calendar.getInstance(zona);
+        inicio.clear();
+        inicio.set(fecha.get(Calendar.YEAR), fecha.get(Calendar.MONTH), fecha.get(Calendar.DAY_OF_MONTH));
+        return inicio.getTimeInMillis();
+    }
+}
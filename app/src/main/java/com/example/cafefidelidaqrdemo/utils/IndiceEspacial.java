@@ -0,0 +1,322 @@
+package com.example.cafefidelidaqrdemo.utils;
+
+import com.example.cafefidelidaqrdemo.models.Sucursal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Índice espacial en grilla fija de latitud/longitud para responder "las K más
+ * cercanas" y "todas dentro de X km" sin calcular la distancia a cada punto ni
+ * ordenar la lista completa.
+ *
+ * Las consultas recorren solo las celdas alrededor del punto, en anillos, y se
+ * detienen cuando ninguna celda sin visitar puede tener algo más cerca. Antes
+ * de la distancia exacta (haversine) se descarta con la aproximación
+ * equirectangular, mucho más barata.
+ *
+ * Es inmutable: si cambian los puntos se arma uno nuevo. No contempla el
+ * antimeridiano (longitudes cerca de ±180).
+ */
+public class IndiceEspacial<T> {
+
+    public interface Ubicacion<T> {
+        double latitud(T elemento);
+        double longitud(T elemento);
+    }
+
+    /**
+     * Elemento encontrado y su distancia al punto consultado.
+     */
+    public static final class Vecino<T> {
+        private final T elemento;
+        private final double distanciaKm;
+
+        Vecino(T elemento, double distanciaKm) {
+            this.elemento = elemento;
+            this.distanciaKm = distanciaKm;
+        }
+
+        public T getElemento() {
+            return elemento;
+        }
+
+        public double getDistanciaKm() {
+            return distanciaKm;
+        }
+    }
+
+    public static final double RADIO_TIERRA_KM = 6371.0;
+    static final double KM_POR_GRADO = RADIO_TIERRA_KM * Math.PI / 180;
+    /** Unos 2,2 km de lado en latitud: pocas sucursales por celda en una ciudad. */
+    public static final double CELDA_GRADOS = 0.02;
+    // La aproximación equirectangular se aleja de haversine bastante menos que
+    // esto en distancias de ciudad; el margen evita descartar un punto válido
+    private static final double MARGEN_APROXIMACION = 0.05;
+    // Pidiendo al menos 1/4 de los puntos, medir todos y ordenar cuesta menos que los anillos
+    private static final int FRACCION_ORDEN_COMPLETO = 4;
+
+    private final double celdaGrados;
+    private final List<T> elementos;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Long, int[]> celdas;
+    private int filaMin = Integer.MAX_VALUE;
+    private int filaMax = Integer.MIN_VALUE;
+    private int columnaMin = Integer.MAX_VALUE;
+    private int columnaMax = Integer.MIN_VALUE;
+
+    public IndiceEspacial(List<T> elementos, Ubicacion<T> ubicacion) {
+        this(elementos, ubicacion, CELDA_GRADOS);
+    }
+
+    public IndiceEspacial(List<T> elementos, Ubicacion<T> ubicacion, double celdaGrados) {
+        this.celdaGrados = celdaGrados;
+        this.elementos = new ArrayList<>(elementos);
+        int total = this.elementos.size();
+        latitudes = new double[total];
+        longitudes = new double[total];
+
+        Map<Long, List<Integer>> agrupados = new HashMap<>();
+        for (int i = 0; i < total; i++) {
+            T elemento = this.elementos.get(i);
+            latitudes[i] = ubicacion.latitud(elemento);
+            longitudes[i] = ubicacion.longitud(elemento);
+            int fila = fila(latitudes[i]);
+            int columna = columna(longitudes[i]);
+            filaMin = Math.min(filaMin, fila);
+            filaMax = Math.max(filaMax, fila);
+            columnaMin = Math.min(columnaMin, columna);
+            columnaMax = Math.max(columnaMax, columna);
+            List<Integer> enCelda = agrupados.get(clave(fila, columna));
+            if (enCelda == null) {
+                enCelda = new ArrayList<>();
+                agrupados.put(clave(fila, columna), enCelda);
+            }
+            enCelda.add(i);
+        }
+
+        // Arreglos de enteros: recorrer una celda no crea objetos
+        celdas = new HashMap<>(agrupados.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entrada : agrupados.entrySet()) {
+            List<Integer> indices = entrada.getValue();
+            int[] arreglo = new int[indices.size()];
+            for (int i = 0; i < arreglo.length; i++) {
+                arreglo[i] = indices.get(i);
+            }
+            celdas.put(entrada.getKey(), arreglo);
+        }
+    }
+
+    /**
+     * Índice de sucursales por su latitud/longitud.
+     */
+    public static IndiceEspacial<Sucursal> deSucursales(List<Sucursal> sucursales) {
+        return new IndiceEspacial<>(sucursales, new Ubicacion<Sucursal>() {
+            @Override
+            public double latitud(Sucursal sucursal) {
+                return sucursal.getLatitud();
+            }
+
+            @Override
+            public double longitud(Sucursal sucursal) {
+                return sucursal.getLongitud();
+            }
+        });
+    }
+
+    public int tamano() {
+        return elementos.size();
+    }
+
+    /**
+     * Los {@code k} elementos más cercanos al punto, del más cercano al más lejano.
+     * Si {@code k} es una parte grande del total, o los anillos vacíos hasta un
+     * punto lejano (p. ej. uno con coordenadas 0,0) cuestan más que medir todos,
+     * se mide cada elemento y se ordena.
+     */
+    public List<Vecino<T>> masCercanos(double latitud, double longitud, int k) {
+        if (k <= 0 || elementos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int total = elementos.size();
+        if ((long) k * FRACCION_ORDEN_COMPLETO >= total) {
+            return todosOrdenados(latitud, longitud, k);
+        }
+        // Max-heap por distancia: en la cabeza está el peor de los k mejores
+        PriorityQueue<Vecino<T>> mejores = new PriorityQueue<>(Math.min(k, elementos.size()),
+                (a, b) -> Double.compare(b.distanciaKm, a.distanciaKm));
+        int filaCentro = fila(latitud);
+        int columnaCentro = columna(longitud);
+        int anillosMax = Math.max(
+                Math.max(Math.abs(filaCentro - filaMin), Math.abs(filaMax - filaCentro)),
+                Math.max(Math.abs(columnaCentro - columnaMin), Math.abs(columnaMax - columnaCentro)));
+
+        // Celdas consultadas y elementos vistos: acotan el recorrido cuando hay
+        // puntos aislados lejos del resto
+        int celdasConsultadas = 0;
+        int vistos = 0;
+        for (int anillo = 0; anillo <= anillosMax && vistos < total; anillo++) {
+            // Lo que falta visitar está al menos a esta distancia
+            if (mejores.size() == k && mejores.peek().distanciaKm <= distanciaMinimaDesdeAnillo(latitud, anillo)) {
+                break;
+            }
+            // El próximo anillo tiene 8 * anillo celdas; si ya se consultaron más
+            // celdas que elementos hay, medirlos todos sale más barato
+            if (celdasConsultadas + 8L * anillo > 2L * total + 32) {
+                return todosOrdenados(latitud, longitud, k);
+            }
+            for (int fila = filaCentro - anillo; fila <= filaCentro + anillo; fila++) {
+                boolean bordeFila = fila == filaCentro - anillo || fila == filaCentro + anillo;
+                // En filas intermedias del anillo solo cuentan las dos columnas del borde
+                int paso = bordeFila ? 1 : Math.max(1, 2 * anillo);
+                for (int columna = columnaCentro - anillo; columna <= columnaCentro + anillo; columna += paso) {
+                    celdasConsultadas++;
+                    int[] enCelda = celdas.get(clave(fila, columna));
+                    if (enCelda == null) {
+                        continue;
+                    }
+                    for (int i : enCelda) {
+                        considerar(mejores, k, i, latitud, longitud);
+                    }
+                    vistos += enCelda.length;
+                }
+            }
+        }
+
+        List<Vecino<T>> resultado = new ArrayList<>(mejores);
+        Collections.sort(resultado, (a, b) -> Double.compare(a.distanciaKm, b.distanciaKm));
+        return resultado;
+    }
+
+    /**
+     * Elementos a {@code radioKm} o menos del punto, del más cercano al más lejano.
+     */
+    public List<Vecino<T>> dentroDeRadio(double latitud, double longitud, double radioKm) {
+        List<Vecino<T>> resultado = new ArrayList<>();
+        if (elementos.isEmpty() || radioKm < 0) {
+            return resultado;
+        }
+        double[] caja = cajaLimite(latitud, longitud, radioKm);
+        int desdeFila = Math.max(filaMin, fila(caja[0]));
+        int hastaFila = Math.min(filaMax, fila(caja[1]));
+        int desdeColumna = Math.max(columnaMin, columna(caja[2]));
+        int hastaColumna = Math.min(columnaMax, columna(caja[3]));
+        double limite = radioKm * (1 + MARGEN_APROXIMACION);
+
+        for (int fila = desdeFila; fila <= hastaFila; fila++) {
+            for (int columna = desdeColumna; columna <= hastaColumna; columna++) {
+                int[] enCelda = celdas.get(clave(fila, columna));
+                if (enCelda == null) {
+                    continue;
+                }
+                for (int i : enCelda) {
+                    if (distanciaAproximadaKm(latitud, longitud, latitudes[i], longitudes[i]) > limite) {
+                        continue;
+                    }
+                    double distancia = distanciaKm(latitud, longitud, latitudes[i], longitudes[i]);
+                    if (distancia <= radioKm) {
+                        resultado.add(new Vecino<>(elementos.get(i), distancia));
+                    }
+                }
+            }
+        }
+        Collections.sort(resultado, (a, b) -> Double.compare(a.distanciaKm, b.distanciaKm));
+        return resultado;
+    }
+
+    /**
+     * Distancia exacta a cada elemento, ordenada; los primeros {@code k}.
+     */
+    private List<Vecino<T>> todosOrdenados(double latitud, double longitud, int k) {
+        List<Vecino<T>> resultado = new ArrayList<>(elementos.size());
+        for (int i = 0; i < elementos.size(); i++) {
+            resultado.add(new Vecino<>(elementos.get(i), distanciaKm(latitud, longitud, latitudes[i], longitudes[i])));
+        }
+        Collections.sort(resultado, (a, b) -> Double.compare(a.distanciaKm, b.distanciaKm));
+        return k < resultado.size() ? new ArrayList<>(resultado.subList(0, k)) : resultado;
+    }
+
+    private void considerar(PriorityQueue<Vecino<T>> mejores, int k, int i, double latitud, double longitud) {
+        if (mejores.size() == k) {
+            double peor = mejores.peek().distanciaKm;
+            if (distanciaAproximadaKm(latitud, longitud, latitudes[i], longitudes[i]) > peor * (1 + MARGEN_APROXIMACION)) {
+                return;
+            }
+            double distancia = distanciaKm(latitud, longitud, latitudes[i], longitudes[i]);
+            if (distancia < peor) {
+                mejores.poll();
+                mejores.add(new Vecino<>(elementos.get(i), distancia));
+            }
+            return;
+        }
+        mejores.add(new Vecino<>(elementos.get(i), distanciaKm(latitud, longitud, latitudes[i], longitudes[i])));
+    }
+
+    /**
+     * Cota inferior de la distancia desde el punto a cualquier celda del
+     * {@code anillo} o más allá: el punto puede estar en el borde de su celda,
+     * así que se descuenta una.
+     */
+    private double distanciaMinimaDesdeAnillo(double latitud, int anillo) {
+        // La celda es más angosta en longitud cuanto más lejos del ecuador
+        double latitudExtrema = Math.min(90, Math.abs(latitud) + (anillo + 1) * celdaGrados);
+        double kmPorGradoLongitud = KM_POR_GRADO * Math.cos(Math.toRadians(latitudExtrema));
+        return Math.max(0, anillo - 1) * celdaGrados * Math.min(KM_POR_GRADO, kmPorGradoLongitud);
+    }
+
+    private int fila(double latitud) {
+        return (int) Math.floor(latitud / celdaGrados);
+    }
+
+    private int columna(double longitud) {
+        return (int) Math.floor(longitud / celdaGrados);
+    }
+
+    private static long clave(int fila, int columna) {
+        return ((long) fila << 32) | (columna & 0xffffffffL);
+    }
+
+    // ========== GEOMETRÍA ==========
+
+    /**
+     * Distancia exacta sobre la esfera (haversine), en km.
+     */
+    public static double distanciaKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return RADIO_TIERRA_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Aproximación equirectangular: sin trigonometría por punto salvo un coseno.
+     * Buena para descartar; para mostrar usar {@link #distanciaKm}.
+     */
+    public static double distanciaAproximadaKm(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return RADIO_TIERRA_KM * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Rectángulo que contiene el círculo de {@code radioKm} alrededor del punto:
+     * {latMin, latMax, lonMin, lonMax}. Sirve para filtrar en SQL con BETWEEN
+     * antes de calcular la distancia exacta.
+     */
+    public static double[] cajaLimite(double latitud, double longitud, double radioKm) {
+        double deltaLat = radioKm / KM_POR_GRADO;
+        double latMin = Math.max(-90, latitud - deltaLat);
+        double latMax = Math.min(90, latitud + deltaLat);
+        double cos = Math.cos(Math.toRadians(Math.max(Math.abs(latMin), Math.abs(latMax))));
+        // Cerca de los polos el círculo abarca todas las longitudes
+        double deltaLon = cos < 1e-6 ? 180 : Math.min(180, radioKm / (KM_POR_GRADO * cos));
+        return new double[]{latMin, latMax, longitud - deltaLon, longitud + deltaLon};
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.cafefidelidaqrdemo.utils;
+
+import com.example.cafefidelidaqrdemo.models.Sucursal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detecta en qué sucursal está el usuario a partir de una secuencia de
+ * posiciones. Cada sucursal es un círculo de {@code radioMetros}; al entrar o
+ * salir del círculo de la más cercana se emite un {@link Evento}.
+ *
+ * Para que cada posición cueste poco:
+ * <ul>
+ *   <li>Las posiciones a menos de {@code movimientoMinimoMetros} de la última
+ *   procesada se ignoran (el GPS quieto igual reporta).</li>
+ *   <li>Las candidatas se buscan en el {@link IndiceEspacial} una vez por celda
+ *   de grilla y se guardan; mientras el usuario siga en la misma celda solo se
+ *   mide la distancia a esas pocas.</li>
+ * </ul>
+ *
+ * Para salir hay que alejarse un poco más que el radio de entrada, así una
+ * posición que oscila en el borde no genera entradas y salidas seguidas.
+ *
+ * No usa APIs de Android: se prueba con recorridos grabados en tests de JVM.
+ * No es seguro entre hilos; procesar las posiciones desde un solo hilo.
+ */
+public class MotorGeocercas {
+
+    public enum TipoEvento { ENTRADA, SALIDA }
+
+    public static final class Evento {
+        private final TipoEvento tipo;
+        private final Sucursal sucursal;
+        private final double distanciaMetros;
+        private final long tiempoMs;
+
+        Evento(TipoEvento tipo, Sucursal sucursal, double distanciaMetros, long tiempoMs) {
+            this.tipo = tipo;
+            this.sucursal = sucursal;
+            this.distanciaMetros = distanciaMetros;
+            this.tiempoMs = tiempoMs;
+        }
+
+        public TipoEvento getTipo() {
+            return tipo;
+        }
+
+        public Sucursal getSucursal() {
+            return sucursal;
+        }
+
+        public double getDistanciaMetros() {
+            return distanciaMetros;
+        }
+
+        public long getTiempoMs() {
+            return tiempoMs;
+        }
+
+        @Override
+        public String toString() {
+            return tipo + " " + sucursal.getId() + " (" + Math.round(distanciaMetros) + " m)";
+        }
+    }
+
+    public static final double RADIO_POR_DEFECTO_METROS = 80;
+    public static final double MOVIMIENTO_MINIMO_POR_DEFECTO_METROS = 15;
+    /** Posiciones menos precisas que esto no se usan para decidir. */
+    public static final double PRECISION_MAXIMA_METROS = 100;
+    // Para salir hay que estar un 25% más lejos que el radio de entrada
+    static final double FACTOR_SALIDA = 1.25;
+    // Celda de ~550 m: varias posiciones seguidas caen en la misma
+    static final double CELDA_GRADOS = 0.005;
+
+    private final IndiceEspacial<Sucursal> indice;
+    private final double radioMetros;
+    private final double radioSalidaMetros;
+    private final double movimientoMinimoMetros;
+
+    private boolean hayUltimaPosicion = false;
+    private double ultimaLatitud;
+    private double ultimaLongitud;
+
+    private long celdaCandidatas;
+    private List<Sucursal> candidatas;
+
+    private Sucursal actual;
+
+    private long procesadas = 0;
+    private long omitidas = 0;
+    private long consultasIndice = 0;
+
+    public MotorGeocercas(List<Sucursal> sucursales) {
+        this(sucursales, RADIO_POR_DEFECTO_METROS, MOVIMIENTO_MINIMO_POR_DEFECTO_METROS);
+    }
+
+    public MotorGeocercas(List<Sucursal> sucursales, double radioMetros, double movimientoMinimoMetros) {
+        this.indice = IndiceEspacial.deSucursales(sucursales);
+        this.radioMetros = radioMetros;
+        this.radioSalidaMetros = radioMetros * FACTOR_SALIDA;
+        this.movimientoMinimoMetros = movimientoMinimoMetros;
+    }
+
+    /**
+     * Procesa una posición y devuelve los eventos que produjo, en orden: como
+     * mucho la salida de la sucursal anterior y la entrada a la nueva.
+     *
+     * @param precisionMetros radio de incertidumbre reportado; 0 si no se conoce
+     */
+    public List<Evento> procesar(double latitud, double longitud, double precisionMetros, long tiempoMs) {
+        if (precisionMetros > PRECISION_MAXIMA_METROS) {
+            omitidas++;
+            return Collections.emptyList();
+        }
+        if (hayUltimaPosicion && IndiceEspacial.distanciaAproximadaKm(ultimaLatitud, ultimaLongitud,
+                latitud, longitud) * 1000 < movimientoMinimoMetros) {
+            omitidas++;
+            return Collections.emptyList();
+        }
+        hayUltimaPosicion = true;
+        ultimaLatitud = latitud;
+        ultimaLongitud = longitud;
+        procesadas++;
+
+        // La más cercana entre las candidatas de la celda
+        Sucursal masCercana = null;
+        double distanciaMasCercana = Double.MAX_VALUE;
+        for (Sucursal sucursal : candidatasPara(latitud, longitud)) {
+            double distancia = IndiceEspacial.distanciaKm(latitud, longitud,
+                    sucursal.getLatitud(), sucursal.getLongitud()) * 1000;
+            if (distancia < distanciaMasCercana) {
+                masCercana = sucursal;
+                distanciaMasCercana = distancia;
+            }
+        }
+
+        List<Evento> eventos = new ArrayList<>(2);
+        if (actual != null) {
+            double distanciaActual = IndiceEspacial.distanciaKm(latitud, longitud,
+                    actual.getLatitud(), actual.getLongitud()) * 1000;
+            boolean fuera = distanciaActual > radioSalidaMetros;
+            // Ya fuera del radio de entrada y dentro del de otra: se pasa a esa
+            boolean enOtra = masCercana != actual && distanciaMasCercana <= radioMetros
+                    && distanciaActual > radioMetros;
+            if (!fuera && !enOtra) {
+                return eventos;
+            }
+            eventos.add(new Evento(TipoEvento.SALIDA, actual, distanciaActual, tiempoMs));
+            actual = null;
+        }
+        if (masCercana != null && distanciaMasCercana <= radioMetros) {
+            actual = masCercana;
+            eventos.add(new Evento(TipoEvento.ENTRADA, masCercana, distanciaMasCercana, tiempoMs));
+        }
+        return eventos;
+    }
+
+    /**
+     * Sucursales que pueden estar a menos del radio de salida de cualquier
+     * punto de la celda. Se consulta el índice solo al cambiar de celda.
+     */
+    private List<Sucursal> candidatasPara(double latitud, double longitud) {
+        int fila = (int) Math.floor(latitud / CELDA_GRADOS);
+        int columna = (int) Math.floor(longitud / CELDA_GRADOS);
+        long celda = ((long) fila << 32) | (columna & 0xffffffffL);
+        if (candidatas != null && celda == celdaCandidatas) {
+            return candidatas;
+        }
+        consultasIndice++;
+        double centroLatitud = (fila + 0.5) * CELDA_GRADOS;
+        double centroLongitud = (columna + 0.5) * CELDA_GRADOS;
+        // Media diagonal de la celda (en latitud es el lado más largo) más el radio de salida
+        double mediaDiagonalKm = CELDA_GRADOS * IndiceEspacial.KM_POR_GRADO * Math.sqrt(2) / 2;
+        List<Sucursal> encontradas = new ArrayList<>();
+        for (IndiceEspacial.Vecino<Sucursal> vecino : indice.dentroDeRadio(centroLatitud, centroLongitud,
+                mediaDiagonalKm + radioSalidaMetros / 1000)) {
+            encontradas.add(vecino.getElemento());
+        }
+        celdaCandidatas = celda;
+        candidatas = encontradas;
+        return candidatas;
+    }
+
+    /**
+     * Sucursal en la que está el usuario, o null. Sirve para preseleccionarla
+     * al registrar una visita con QR.
+     */
+    public Sucursal getSucursalActual() {
+        return actual;
+    }
+
+    public long getProcesadas() {
+        return procesadas;
+    }
+
+    /**
+     * Posiciones descartadas por imprecisas o por no haberse movido lo suficiente.
+     */
+    public long getOmitidas() {
+        return omitidas;
+    }
+
+    /**
+     * Veces que hubo que consultar el índice (cambios de celda).
+     */
+    public long getConsultasIndice() {
+        return consultasIndice;
+    }
+}
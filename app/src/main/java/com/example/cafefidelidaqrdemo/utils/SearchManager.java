@@ -6,6 +6,9 @@ import android.location.Location;
 import com.example.cafefidelidaqrdemo.models.Sucursal;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Gestor de búsquedas simplificado
@@ -13,6 +16,10 @@ import java.util.ArrayList;
  */
 public class SearchManager {
     
+    // Índice de la última lista usada; se rearma cuando llega otra lista
+    private List<Sucursal> sucursalesIndexadas;
+    private IndiceEspacial<Sucursal> indice;
+    
     /**
      * Clase para representar sucursal con distancia
      */
@@ -43,7 +50,9 @@ public class SearchManager {
     }
     
     /**
-     * Busca sucursales por nombre
+     * Busca sucursales por nombre o dirección sobre una lista ya cargada, con las
+     * mismas reglas que el índice FTS (prefijo de palabra, sin tildes). Para buscar
+     * directo en la base usar {@code SucursalRepository.buscarSucursales}.
      */
     public List<Sucursal> searchByName(List<Sucursal> sucursales, String query) {
         List<Sucursal> results = new ArrayList<>();
@@ -51,10 +60,9 @@ public class SearchManager {
             return sucursales;
         }
         
-        String lowerQuery = query.toLowerCase().trim();
+        List<String> palabras = TextoBusqueda.palabras(query);
         for (Sucursal sucursal : sucursales) {
-            if (sucursal.getNombre().toLowerCase().contains(lowerQuery) ||
-                sucursal.getDireccion().toLowerCase().contains(lowerQuery)) {
+            if (TextoBusqueda.coincide(palabras, sucursal.getNombre(), sucursal.getDireccion())) {
                 results.add(sucursal);
             }
         }
@@ -65,34 +73,54 @@ public class SearchManager {
      * Calcula distancia básica entre dos puntos
      */
     public double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Radio de la Tierra en km
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c; // Distancia en km
+        return IndiceEspacial.distanciaKm(lat1, lon1, lat2, lon2); // Distancia en km
     }
     
     /**
-     * Ordena sucursales por distancia
+     * Ordena sucursales por distancia. Se piden todas, así que el índice no
+     * ahorra nada: se mide cada una y se ordena la lista.
      */
     public List<SucursalWithDistance> sortByDistance(List<Sucursal> sucursales, 
                                                     double userLat, double userLon) {
-        List<SucursalWithDistance> results = new ArrayList<>();
-        
+        List<SucursalWithDistance> results = new ArrayList<>(sucursales.size());
         for (Sucursal sucursal : sucursales) {
-            double distance = calculateDistance(userLat, userLon, 
-                                              sucursal.getLatitud(), sucursal.getLongitud());
-            results.add(new SucursalWithDistance(sucursal, distance));
+            results.add(new SucursalWithDistance(sucursal, IndiceEspacial.distanciaKm(userLat, userLon,
+                    sucursal.getLatitud(), sucursal.getLongitud())));
+        }
+        Collections.sort(results, (a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return results;
+    }
+    
+    /**
+     * Las {@code k} sucursales más cercanas, de la más cercana a la más lejana.
+     * Solo mira las celdas del índice alrededor del punto.
+     */
+    public List<SucursalWithDistance> nearest(List<Sucursal> sucursales, double userLat, double userLon, int k) {
+        return toWithDistance(indicePara(sucursales).masCercanos(userLat, userLon, k));
+    }
+    
+    /**
+     * Sucursales a {@code maxDistanceKm} o menos, de la más cercana a la más lejana.
+     */
+    public List<SucursalWithDistance> withinRadius(List<Sucursal> sucursales, double userLat, double userLon,
+                                                   double maxDistanceKm) {
+        return toWithDistance(indicePara(sucursales).dentroDeRadio(userLat, userLon, maxDistanceKm));
+    }
+    
+    private synchronized IndiceEspacial<Sucursal> indicePara(List<Sucursal> sucursales) {
+        // Misma instancia de lista = mismos datos (las listas de LiveData no se modifican)
+        if (indice == null || sucursalesIndexadas != sucursales) {
+            indice = IndiceEspacial.deSucursales(sucursales);
+            sucursalesIndexadas = sucursales;
+        }
+        return indice;
+    }
+    
+    private static List<SucursalWithDistance> toWithDistance(List<IndiceEspacial.Vecino<Sucursal>> vecinos) {
+        List<SucursalWithDistance> results = new ArrayList<>(vecinos.size());
+        for (IndiceEspacial.Vecino<Sucursal> vecino : vecinos) {
+            results.add(new SucursalWithDistance(vecino.getElemento(), vecino.getDistanciaKm()));
         }
-        
-        // Ordenar por distancia
-        results.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
-        
         return results;
     }
     
@@ -108,6 +136,40 @@ public class SearchManager {
         
         MutableLiveData<List<SucursalWithDistance>> result = new MutableLiveData<>();
         
+        // Con ubicación y radio, el índice descarta de entrada las lejanas (ya vienen ordenadas)
+        if (userLocation != null && maxDistance != null) {
+            List<SucursalWithDistance> cercanas = withinRadius(sucursales,
+                    userLocation.getLatitude(), userLocation.getLongitude(), maxDistance);
+            if (query != null && !query.trim().isEmpty()) {
+                List<String> palabras = TextoBusqueda.palabras(query);
+                List<SucursalWithDistance> coincidentes = new ArrayList<>();
+                for (SucursalWithDistance item : cercanas) {
+                    Sucursal sucursal = item.getSucursal();
+                    if (TextoBusqueda.coincide(palabras, sucursal.getNombre(), sucursal.getDireccion())) {
+                        coincidentes.add(item);
+                    }
+                }
+                cercanas = coincidentes;
+            }
+            if (sortByDistance == null || !sortByDistance) {
+                // Se respeta el orden original de la lista
+                List<SucursalWithDistance> enOrden = new ArrayList<>(cercanas.size());
+                Map<Sucursal, SucursalWithDistance> porSucursal = new IdentityHashMap<>();
+                for (SucursalWithDistance item : cercanas) {
+                    porSucursal.put(item.getSucursal(), item);
+                }
+                for (Sucursal sucursal : sucursales) {
+                    SucursalWithDistance item = porSucursal.get(sucursal);
+                    if (item != null) {
+                        enOrden.add(item);
+                    }
+                }
+                cercanas = enOrden;
+            }
+            result.setValue(cercanas);
+            return result;
+        }
+        
         // Filtrar por query si existe
         List<Sucursal> filtered = sucursales;
         if (query != null && !query.trim().isEmpty()) {
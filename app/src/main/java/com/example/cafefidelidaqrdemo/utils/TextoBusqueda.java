@@ -0,0 +1,85 @@
+package com.example.cafefidelidaqrdemo.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalización de texto para búsquedas: minúsculas, sin tildes y separado en
+ * palabras. Sigue las mismas reglas que el tokenizador unicode61 de los índices
+ * FTS, de modo que filtrar en memoria y consultar la base dan el mismo resultado.
+ */
+public final class TextoBusqueda {
+
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private TextoBusqueda() {}
+
+    /**
+     * "Café Añejo" -> "cafe anejo"
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinTildes = MARCAS_DIACRITICAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinTildes.toLowerCase(Locale.ROOT);
+    }
+
+    public static List<String> palabras(String texto) {
+        List<String> palabras = new ArrayList<>();
+        for (String palabra : SEPARADORES.split(normalizar(texto))) {
+            if (!palabra.isEmpty()) {
+                palabras.add(palabra);
+            }
+        }
+        return palabras;
+    }
+
+    /**
+     * Expresión MATCH con cada palabra como prefijo ("caf lat" -> "caf* lat*").
+     * Solo quedan letras y dígitos, así que el texto del usuario no puede
+     * inyectar operadores FTS. Devuelve null si no hay nada que buscar.
+     */
+    public static String consultaFts(String texto) {
+        List<String> palabras = palabras(texto);
+        if (palabras.isEmpty()) {
+            return null;
+        }
+        StringBuilder consulta = new StringBuilder();
+        for (String palabra : palabras) {
+            if (consulta.length() > 0) {
+                consulta.append(' ');
+            }
+            consulta.append(palabra).append('*');
+        }
+        return consulta.toString();
+    }
+
+    /**
+     * Equivalente en memoria de {@link #consultaFts}: cada palabra de la consulta
+     * debe ser prefijo de alguna palabra de los campos.
+     */
+    public static boolean coincide(List<String> palabrasConsulta, String... campos) {
+        List<String> palabrasCampos = new ArrayList<>();
+        for (String campo : campos) {
+            palabrasCampos.addAll(palabras(campo));
+        }
+        for (String buscada : palabrasConsulta) {
+            boolean encontrada = false;
+            for (String palabra : palabrasCampos) {
+                if (palabra.startsWith(buscada)) {
+                    encontrada = true;
+                    break;
+                }
+            }
+            if (!encontrada) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -8,10 +8,10 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import com.example.cafefidelidaqrdemo.models.Cliente;
 import com.example.cafefidelidaqrdemo.repository.ClienteRepository;
+import com.example.cafefidelidaqrdemo.repository.base.EjecutorTareas;
 import com.example.cafefidelidaqrdemo.utils.QRGenerator;
 import com.example.cafefidelidaqrdemo.utils.SessionManager;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 /**
  * ViewModel para manejar la generación y gestión del QR personal del cliente
@@ -20,7 +20,7 @@ public class ClienteQRViewModel extends AndroidViewModel {
     
     private final ClienteRepository clienteRepository;
     private final SessionManager sessionManager;
-    private final ExecutorService executor;
+    private final Executor executor;
     
     private final MutableLiveData<Bitmap> _qrBitmap = new MutableLiveData<>();
     public final LiveData<Bitmap> qrBitmap = _qrBitmap;
@@ -36,9 +36,9 @@ public class ClienteQRViewModel extends AndroidViewModel {
     
     public ClienteQRViewModel(@NonNull Application application) {
         super(application);
-        this.clienteRepository = new ClienteRepository(application);
+        this.clienteRepository = ClienteRepository.getInstance(application);
         this.sessionManager = new SessionManager(application);
-        this.executor = Executors.newFixedThreadPool(2);
+        this.executor = EjecutorTareas.getInstance().lecturas();
         
         loadClienteData();
     }
@@ -197,12 +197,4 @@ public class ClienteQRViewModel extends AndroidViewModel {
     public void clearError() {
         _error.setValue(null);
     }
-    
-    @Override
-    protected void onCleared() {
-        super.onCleared();
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
-        }
-    }
-}
\ No newline at end of file
+}
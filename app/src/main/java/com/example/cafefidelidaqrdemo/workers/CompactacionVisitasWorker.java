@@ -0,0 +1,122 @@
+package com.example.cafefidelidaqrdemo.workers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.cafefidelidaqrdemo.database.CafeFidelidadDB;
+import com.example.cafefidelidaqrdemo.utils.DiaEpoch;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacta las visitas más antiguas que el horizonte de retención: las resume por
+ * cliente, sucursal y día y borra las filas originales en lotes, cada uno en su
+ * propia transacción. Los saldos de sellos y los conteos por día no cambian.
+ *
+ * Publica el progreso con {@link #PROGRESO_COMPACTADAS} y {@link #PROGRESO_TOTAL}.
+ */
+public class CompactacionVisitasWorker extends Worker {
+
+    private static final String TAG = "CompactacionVisitas";
+    private static final String NOMBRE_PERIODICO = "compactacion_visitas";
+    private static final String NOMBRE_MANUAL = "compactacion_visitas_manual";
+
+    public static final String ENTRADA_DIAS_RETENCION = "dias_retencion";
+    public static final String PROGRESO_COMPACTADAS = "compactadas";
+    public static final String PROGRESO_TOTAL = "total";
+
+    public static final int DIAS_RETENCION_POR_DEFECTO = 365;
+    private static final int TAMANO_LOTE = 500;
+
+    public CompactacionVisitasWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Programa la compactación semanal (si ya está programada, se conserva).
+     */
+    public static void programar(Context context, int diasRetencion) {
+        Constraints restricciones = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .setRequiresDeviceIdle(true)
+                .build();
+        PeriodicWorkRequest solicitud = new PeriodicWorkRequest.Builder(CompactacionVisitasWorker.class, 7, TimeUnit.DAYS)
+                .setConstraints(restricciones)
+                .setInputData(entrada(diasRetencion))
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(NOMBRE_PERIODICO, ExistingPeriodicWorkPolicy.KEEP, solicitud);
+    }
+
+    /**
+     * Ejecuta la compactación ahora. Con el ID devuelto se puede observar el
+     * progreso vía {@code WorkManager.getWorkInfoByIdLiveData}.
+     *
+     * Si ya hay una manual en cola o corriendo, esta se encadena detrás (con su
+     * propio horizonte) en vez de descartarse, así el ID siempre corresponde a
+     * un trabajo real.
+     */
+    public static UUID ejecutarAhora(Context context, int diasRetencion) {
+        OneTimeWorkRequest solicitud = new OneTimeWorkRequest.Builder(CompactacionVisitasWorker.class)
+                .setInputData(entrada(diasRetencion))
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(NOMBRE_MANUAL, ExistingWorkPolicy.APPEND_OR_REPLACE, solicitud);
+        return solicitud.getId();
+    }
+
+    private static Data entrada(int diasRetencion) {
+        return new Data.Builder().putInt(ENTRADA_DIAS_RETENCION, diasRetencion).build();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        // Al menos un día: hoy nunca se compacta
+        int diasRetencion = Math.max(1, getInputData().getInt(ENTRADA_DIAS_RETENCION, DIAS_RETENCION_POR_DEFECTO));
+        long diaLimite = DiaEpoch.hoy() - diasRetencion;
+        CafeFidelidadDB database = CafeFidelidadDB.getInstance(getApplicationContext());
+
+        try {
+            int total = database.contarVisitasACompactar(diaLimite);
+            int compactadas = 0;
+            publicarProgreso(compactadas, total);
+            while (!isStopped()) {
+                int lote = database.compactarLoteVisitas(diaLimite, TAMANO_LOTE);
+                if (lote == 0) {
+                    break;
+                }
+                compactadas += lote;
+                publicarProgreso(compactadas, total);
+            }
+            Log.d(TAG, "Compactación terminada: " + compactadas + " de " + total + " visitas");
+            return Result.success(new Data.Builder()
+                    .putInt(PROGRESO_COMPACTADAS, compactadas)
+                    .putInt(PROGRESO_TOTAL, total)
+                    .build());
+        } catch (Exception e) {
+            // Los lotes ya confirmados quedan compactados; el resto se reintenta
+            Log.e(TAG, "Error al compactar visitas", e);
+            return Result.retry();
+        }
+    }
+
+    private void publicarProgreso(int compactadas, int total) {
+        setProgressAsync(new Data.Builder()
+                .putInt(PROGRESO_COMPACTADAS, compactadas)
+                .putInt(PROGRESO_TOTAL, total)
+                .build());
+    }
+}
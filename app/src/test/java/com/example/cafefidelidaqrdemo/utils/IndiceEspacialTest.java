@@ -0,0 +1,91 @@
+package com.example.cafefidelidaqrdemo.utils;
+
+import com.example.cafefidelidaqrdemo.models.Sucursal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Las consultas del índice deben coincidir con medir todas las sucursales y
+ * ordenar, también con una sucursal aislada lejos del resto.
+ */
+public class IndiceEspacialTest {
+
+    private static final double LATITUD = -33.4372;
+    private static final double LONGITUD = -70.6506;
+
+    @Test
+    public void masCercanos_coincideConOrdenarTodas() {
+        List<Sucursal> sucursales = sucursalesEnSantiago(500, new Random(3));
+        IndiceEspacial<Sucursal> indice = IndiceEspacial.deSucursales(sucursales);
+
+        for (int k : new int[]{1, 5, 20, 124, 125, 500, 800}) {
+            assertIguales(ordenarTodas(sucursales, k), indice.masCercanos(LATITUD, LONGITUD, k));
+        }
+    }
+
+    @Test
+    public void masCercanos_conSucursalSinCoordenadas_laDejaAlFinal() {
+        List<Sucursal> sucursales = sucursalesEnSantiago(50, new Random(5));
+        // Sin coordenadas cargadas: queda en 0,0, a miles de km
+        sucursales.add(new Sucursal("0", "Sin ubicación", "", "", 0, 0));
+        IndiceEspacial<Sucursal> indice = IndiceEspacial.deSucursales(sucursales);
+
+        for (int k : new int[]{3, 10, 12, 13, 50, 51}) {
+            assertIguales(ordenarTodas(sucursales, k), indice.masCercanos(LATITUD, LONGITUD, k));
+        }
+        List<IndiceEspacial.Vecino<Sucursal>> todas = indice.masCercanos(LATITUD, LONGITUD, 51);
+        assertEquals("0", todas.get(50).getElemento().getId());
+    }
+
+    @Test
+    public void dentroDeRadio_coincideConFiltrarTodas() {
+        List<Sucursal> sucursales = sucursalesEnSantiago(300, new Random(11));
+        IndiceEspacial<Sucursal> indice = IndiceEspacial.deSucursales(sucursales);
+
+        List<IndiceEspacial.Vecino<Sucursal>> esperadas = new ArrayList<>();
+        for (IndiceEspacial.Vecino<Sucursal> vecino : ordenarTodas(sucursales, sucursales.size())) {
+            if (vecino.getDistanciaKm() <= 3) {
+                esperadas.add(vecino);
+            }
+        }
+        assertIguales(esperadas, indice.dentroDeRadio(LATITUD, LONGITUD, 3));
+    }
+
+    // ========== UTILIDADES ==========
+
+    private static List<Sucursal> sucursalesEnSantiago(int cantidad, Random random) {
+        List<Sucursal> sucursales = new ArrayList<>();
+        for (int i = 1; i <= cantidad; i++) {
+            // Unos 20 km alrededor del centro
+            sucursales.add(new Sucursal(String.valueOf(i), "Sucursal " + i, "", "",
+                    LATITUD + (random.nextDouble() - 0.5) * 0.18,
+                    LONGITUD + (random.nextDouble() - 0.5) * 0.22));
+        }
+        return sucursales;
+    }
+
+    private static List<IndiceEspacial.Vecino<Sucursal>> ordenarTodas(List<Sucursal> sucursales, int k) {
+        List<IndiceEspacial.Vecino<Sucursal>> todas = new ArrayList<>();
+        for (Sucursal sucursal : sucursales) {
+            todas.add(new IndiceEspacial.Vecino<>(sucursal, IndiceEspacial.distanciaKm(LATITUD, LONGITUD,
+                    sucursal.getLatitud(), sucursal.getLongitud())));
+        }
+        Collections.sort(todas, (a, b) -> Double.compare(a.getDistanciaKm(), b.getDistanciaKm()));
+        return todas.subList(0, Math.min(k, todas.size()));
+    }
+
+    private static void assertIguales(List<IndiceEspacial.Vecino<Sucursal>> esperadas,
+                                      List<IndiceEspacial.Vecino<Sucursal>> obtenidas) {
+        assertEquals(esperadas.size(), obtenidas.size());
+        for (int i = 0; i < esperadas.size(); i++) {
+            assertEquals(esperadas.get(i).getDistanciaKm(), obtenidas.get(i).getDistanciaKm(), 1e-9);
+        }
+    }
+}
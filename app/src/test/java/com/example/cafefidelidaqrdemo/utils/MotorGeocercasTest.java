@@ -0,0 +1,182 @@
+package com.example.cafefidelidaqrdemo.utils;
+
+import com.example.cafefidelidaqrdemo.models.Sucursal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recorridos grabados (posiciones cada segundo) contra sucursales fijas en
+ * Santiago. Las distancias se expresan en metros hacia el norte y el este de
+ * la sucursal de referencia.
+ */
+public class MotorGeocercasTest {
+
+    private static final double METROS_POR_GRADO = IndiceEspacial.KM_POR_GRADO * 1000;
+
+    private static final Sucursal CENTRO = sucursal("1", -33.4372, -70.6506);
+    private static final Sucursal PROVIDENCIA = sucursal("2", -33.4250, -70.6150);
+    // 170 m al este del Centro
+    private static final Sucursal CENTRO_ESTE = sucursal("3", -33.4372, -70.6506 + grados(170, -33.4372));
+
+    @Test
+    public void recorridoQueCruzaUnaSucursal_entraYSaleUnaVez() {
+        MotorGeocercas motor = new MotorGeocercas(Arrays.asList(CENTRO, PROVIDENCIA));
+
+        // De 500 m al norte a 500 m al sur, pasando por la puerta
+        List<MotorGeocercas.Evento> eventos = reproducir(motor, recta(CENTRO, 500, 0, -500, 0, 20));
+
+        assertEquals("[ENTRADA 1, SALIDA 1]", resumen(eventos));
+        assertTrue(eventos.get(0).getDistanciaMetros() <= MotorGeocercas.RADIO_POR_DEFECTO_METROS);
+        assertTrue(eventos.get(1).getDistanciaMetros()
+                > MotorGeocercas.RADIO_POR_DEFECTO_METROS * MotorGeocercas.FACTOR_SALIDA);
+        assertNull(motor.getSucursalActual());
+    }
+
+    @Test
+    public void caminarEntreSucursalesVecinas_saleDeUnaYEntraALaOtra() {
+        MotorGeocercas motor = new MotorGeocercas(Arrays.asList(CENTRO, CENTRO_ESTE, PROVIDENCIA));
+
+        List<MotorGeocercas.Evento> eventos = reproducir(motor, recta(CENTRO, 0, 0, 0, 170, 10));
+
+        assertEquals("[ENTRADA 1, SALIDA 1, ENTRADA 3]", resumen(eventos));
+        assertSame(CENTRO_ESTE, motor.getSucursalActual());
+    }
+
+    @Test
+    public void posicionQueOscilaEnElBorde_noRepiteEventos() {
+        MotorGeocercas motor = new MotorGeocercas(Arrays.asList(CENTRO, PROVIDENCIA));
+
+        // Entre 60 y 95 m: dentro del radio de entrada y sin pasar el de salida
+        List<double[]> fijos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            fijos.add(posicion(CENTRO, i % 2 == 0 ? 60 : 95, 0));
+        }
+        List<MotorGeocercas.Evento> eventos = reproducir(motor, fijos);
+
+        assertEquals("[ENTRADA 1]", resumen(eventos));
+        assertSame(CENTRO, motor.getSucursalActual());
+    }
+
+    @Test
+    public void usuarioQuieto_seOmitenLasPosicionesRepetidas() {
+        MotorGeocercas motor = new MotorGeocercas(Arrays.asList(CENTRO, PROVIDENCIA));
+
+        // Ruido de GPS de unos pocos metros alrededor de la sucursal
+        Random ruido = new Random(7);
+        List<double[]> fijos = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            fijos.add(posicion(CENTRO, ruido.nextDouble() * 8 - 4, ruido.nextDouble() * 8 - 4));
+        }
+        List<MotorGeocercas.Evento> eventos = reproducir(motor, fijos);
+
+        assertEquals("[ENTRADA 1]", resumen(eventos));
+        assertEquals(1, motor.getProcesadas());
+        assertEquals(29, motor.getOmitidas());
+    }
+
+    @Test
+    public void posicionImprecisa_noCambiaElEstado() {
+        MotorGeocercas motor = new MotorGeocercas(Arrays.asList(CENTRO, PROVIDENCIA));
+        double[] enLaPuerta = posicion(CENTRO, 10, 0);
+
+        List<MotorGeocercas.Evento> eventos = motor.procesar(enLaPuerta[0], enLaPuerta[1],
+                MotorGeocercas.PRECISION_MAXIMA_METROS + 50, 0);
+
+        assertTrue(eventos.isEmpty());
+        assertNull(motor.getSucursalActual());
+        assertEquals(1, motor.getOmitidas());
+    }
+
+    @Test
+    public void dentroDeUnaCelda_noVuelveAConsultarElIndice() {
+        MotorGeocercas motor = new MotorGeocercas(Arrays.asList(CENTRO, CENTRO_ESTE, PROVIDENCIA));
+
+        // Vueltas de 200 m alrededor de la sucursal: ~60 posiciones en pocas celdas
+        List<double[]> fijos = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            double angulo = 2 * Math.PI * i / 30;
+            fijos.add(posicion(CENTRO, 100 * Math.sin(angulo), 100 * Math.cos(angulo)));
+        }
+        reproducir(motor, fijos);
+
+        assertEquals(60, motor.getProcesadas());
+        assertTrue("consultas al índice: " + motor.getConsultasIndice(), motor.getConsultasIndice() <= 8);
+    }
+
+    @Test
+    public void conMilesDeSucursales_detectaLaMasCercana() {
+        // Grilla de 60 x 60 sucursales separadas ~300 m
+        List<Sucursal> sucursales = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            for (int j = 0; j < 60; j++) {
+                sucursales.add(sucursal(i + "-" + j, -33.5 + i * 0.0027, -70.7 + j * 0.0032));
+            }
+        }
+        MotorGeocercas motor = new MotorGeocercas(sucursales);
+        Sucursal destino = sucursales.get(31 * 60 + 17);
+
+        List<MotorGeocercas.Evento> eventos = reproducir(motor, recta(destino, -120, -40, 0, 0, 20));
+
+        assertEquals("[ENTRADA 31-17]", resumen(eventos));
+        assertSame(destino, motor.getSucursalActual());
+    }
+
+    // ========== UTILIDADES ==========
+
+    private static List<MotorGeocercas.Evento> reproducir(MotorGeocercas motor, List<double[]> fijos) {
+        List<MotorGeocercas.Evento> eventos = new ArrayList<>();
+        long tiempo = 1_700_000_000_000L;
+        for (double[] fijo : fijos) {
+            eventos.addAll(motor.procesar(fijo[0], fijo[1], 10, tiempo));
+            tiempo += 1000;
+        }
+        return eventos;
+    }
+
+    /**
+     * Posiciones cada {@code pasoMetros} entre dos puntos relativos a la sucursal.
+     */
+    private static List<double[]> recta(Sucursal referencia, double norteDesde, double esteDesde,
+                                        double norteHasta, double esteHasta, double pasoMetros) {
+        double largo = Math.hypot(norteHasta - norteDesde, esteHasta - esteDesde);
+        int pasos = (int) Math.ceil(largo / pasoMetros);
+        List<double[]> fijos = new ArrayList<>();
+        for (int i = 0; i <= pasos; i++) {
+            double t = (double) i / pasos;
+            fijos.add(posicion(referencia, norteDesde + (norteHasta - norteDesde) * t,
+                    esteDesde + (esteHasta - esteDesde) * t));
+        }
+        return fijos;
+    }
+
+    private static double[] posicion(Sucursal referencia, double norteMetros, double esteMetros) {
+        return new double[]{referencia.getLatitud() + norteMetros / METROS_POR_GRADO,
+                referencia.getLongitud() + grados(esteMetros, referencia.getLatitud())};
+    }
+
+    private static double grados(double esteMetros, double latitud) {
+        return esteMetros / (METROS_POR_GRADO * Math.cos(Math.toRadians(latitud)));
+    }
+
+    private static Sucursal sucursal(String id, double latitud, double longitud) {
+        return new Sucursal(id, "Sucursal " + id, "Dirección " + id, "", latitud, longitud);
+    }
+
+    private static String resumen(List<MotorGeocercas.Evento> eventos) {
+        List<String> partes = new ArrayList<>();
+        for (MotorGeocercas.Evento evento : eventos) {
+            partes.add(evento.getTipo() + " " + evento.getSucursal().getId());
+        }
+        return partes.toString();
+    }
+}